@@ -0,0 +1,90 @@
+#!/usr/bin/env bash
+# Side-by-side load comparison of the platform and virtual thread execution modes.
+#
+# Boots the packaged jar once per mode against a throwaway copy of database.db and drives the
+# redirect and shorten endpoints with CONCURRENCY parallel clients, then prints throughput and
+# latency percentiles per mode plus the /health/threads pinning report. The virtual run also starts with
+# -Djdk.tracePinnedThreads=short; the frames that held a monitor while a virtual thread blocked are counted.
+#
+# Usage: mvn -DskipTests package && JAVA=/path/to/jdk-21/bin/java scripts/compare-thread-modes.sh
+# Needs Java 21+ for the virtual run (on older JVMs both runs use platform threads), curl and python3.
+set -euo pipefail
+
+JAVA=${JAVA:-java}
+JAR=${JAR:-target/url_shortener-1.0-SNAPSHOT.jar}
+PORT=${PORT:-8091}
+API_KEY=${API_KEY:-API_KEY_12345}
+REQUESTS=${REQUESTS:-5000}
+CONCURRENCY=${CONCURRENCY:-200}
+BASE="http://localhost:${PORT}"
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+wait_for_start() {
+  for _ in $(seq 1 60); do
+    curl -s -o /dev/null "$BASE/health/threads" && return 0
+    sleep 1
+  done
+  echo "Application did not start" >&2
+  return 1
+}
+
+# Prints requests/s, p50, p99 and error count for one file of curl timings; args: file start end
+summarize() {
+  python3 - "$@" <<'EOF'
+import sys
+timings, elapsed = sys.argv[1], float(sys.argv[3]) - float(sys.argv[2])
+rows = [line.split() for line in open(timings) if line.strip()]
+latencies = sorted(float(t) * 1000 for _, t in rows)
+errors = sum(1 for code, _ in rows if not code.startswith(("2", "3")))
+pct = lambda p: latencies[min(len(latencies) - 1, int(p * len(latencies)))]
+print(f"{len(rows) / elapsed:8.0f} req/s  p50 {pct(0.50):7.1f} ms  p99 {pct(0.99):7.1f} ms  errors {errors}")
+EOF
+}
+
+load() {
+  local name=$1 method=$2 url=$3 body=${4:-}
+  local timings="$WORK_DIR/$name.txt"
+  local start end
+  start=$(date +%s.%N)
+  seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} curl -s -o /dev/null -X "$method" \
+    -H "X-API-KEY: $API_KEY" -H "Content-Type: application/json" ${body:+--data "$body"} \
+    -w "%{http_code} %{time_total}\n" "$url" > "$timings"
+  end=$(date +%s.%N)
+  printf "  %-9s " "$name"
+  summarize "$timings" "$start" "$end"
+}
+
+run_mode() {
+  local mode=$1 virtual=$2 trace=()
+  [ "$virtual" = true ] && trace=(-Djdk.tracePinnedThreads=short)
+  cp database.db "$WORK_DIR/bench.db"
+  "$JAVA" "${trace[@]}" -jar "$JAR" --server.port="$PORT" --spring.datasource.url="jdbc:sqlite:$WORK_DIR/bench.db" \
+    --shortcode.allocator.key="${SHORTCODE_ALLOCATOR_KEY:-$(date +%s%N)}" --sentry.dsn= --spring.jpa.show-sql=false --spring.threads.virtual.enabled="$virtual" --ratelimit.limit-multiplier=1000 \
+    > "$WORK_DIR/$mode.log" 2>&1 &
+  local pid=$!
+  wait_for_start
+
+  local code
+  code=$(curl -s -H "X-API-KEY: $API_KEY" -H "Content-Type: application/json" \
+    --data '{"url":"https://example.com/compare"}' "$BASE/api/urls/shorten" | sed -E 's/.*"shortCode" *: *"([^"]+)".*/\1/')
+
+  echo "== $mode threads"
+  load redirect GET "$BASE/api/urls/redirect?code=$code"
+  load shorten POST "$BASE/api/urls/shorten" '{"url":"https://example.com/load"}'
+  echo "  /health/threads: $(curl -s "$BASE/health/threads")"
+
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+
+  if [ "$virtual" = true ]; then
+    echo "  jdk.tracePinnedThreads, frames holding a monitor while pinned:"
+    grep -h "<== monitors" "$WORK_DIR/$mode.log" | sed -E 's/^[[:space:]]+//' | sort | uniq -c | sort -rn | head -10 \
+      | sed 's/^/   /' || true
+    [ -n "$(grep -l "<== monitors" "$WORK_DIR/$mode.log")" ] || echo "    (none)"
+  fi
+}
+
+echo "Java: $("$JAVA" -version 2>&1 | head -1), $(nproc) CPU(s), $REQUESTS requests per endpoint, $CONCURRENCY clients"
+run_mode platform false
+run_mode virtual true
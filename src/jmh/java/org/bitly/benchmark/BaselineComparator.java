@@ -0,0 +1,85 @@
+package org.bitly.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files benchmark by benchmark (name + params): the primary score and the
+ * normalized allocation rate from the GC profiler. A result is a regression when it is worse than the
+ * baseline by more than the threshold and by more than the combined score errors.
+ */
+public final class BaselineComparator {
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    private BaselineComparator() {
+    }
+
+    public static int compare(Path baselineFile, Path resultFile, double threshold, PrintStream out) throws IOException {
+        Map<String, JsonNode> baseline = load(baselineFile);
+        Map<String, JsonNode> current = load(resultFile);
+
+        int regressions = 0;
+        out.printf("%n%-85s %14s %14s %9s %12s %12s%n", "Benchmark", "Baseline", "Current", "Change", "B/op base", "B/op now");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode base = baseline.get(entry.getKey());
+            if (base == null) {
+                out.printf("%-85s %14s %14.3f %9s%n", entry.getKey(), "-", score(now), "new");
+                continue;
+            }
+
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double change = (score(now) - score(base)) / score(base);
+            double worse = higherIsBetter ? -change : change;
+            double noise = scoreError(now) + scoreError(base);
+            boolean slower = worse > threshold && Math.abs(score(now) - score(base)) > noise;
+
+            double allocBase = allocation(base);
+            double allocNow = allocation(now);
+            boolean allocates = allocBase >= 0 && allocNow > allocBase * (1 + threshold) && allocNow - allocBase > 16;
+
+            if (slower || allocates) {
+                regressions++;
+            }
+            out.printf("%-85s %14.3f %14.3f %+8.1f%% %12.1f %12.1f%s%n", entry.getKey(), score(base), score(now),
+                    change * 100, allocBase, allocNow, slower || allocates ? "  REGRESSION" : "");
+        }
+        out.printf("%d regression(s) beyond %.0f%%%n", regressions, threshold * 100);
+        return regressions;
+    }
+
+    // Keyed by benchmark name plus sorted params, e.g. "...serializeBatchResponse{size=100}"
+    private static Map<String, JsonNode> load(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            String name = run.path("benchmark").asText().replace("org.bitly.benchmark.", "");
+            Map<String, String> params = new TreeMap<>();
+            run.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            results.put(params.isEmpty() ? name : name + params, run);
+        }
+        return results;
+    }
+
+    private static double score(JsonNode run) {
+        return run.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static double scoreError(JsonNode run) {
+        double error = run.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static double allocation(JsonNode run) {
+        JsonNode secondary = run.path("secondaryMetrics");
+        JsonNode alloc = secondary.has(ALLOC_NORM) ? secondary.get(ALLOC_NORM) : secondary.get("·" + ALLOC_NORM);
+        return alloc != null ? alloc.path("score").asDouble() : -1;
+    }
+}
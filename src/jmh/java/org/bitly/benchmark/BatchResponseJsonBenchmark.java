@@ -0,0 +1,46 @@
+package org.bitly.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Serialization of the /api/urls/shorten/batch response body with the ObjectMapper configuration Spring MVC uses.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchResponseJsonBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private List<Map<String, String>> response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        response = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            response.add(i % 10 == 0
+                    ? Map.of("originalUrl", "https://example.com/page/" + i,
+                            "error", "Custom short code 'custom" + i + "' is already taken")
+                    : Map.of("originalUrl", "https://example.com/page/" + i,
+                            "shortCode", "aB3x" + (i % 100),
+                            "expiry_date", "Never",
+                            "password_protected", "No"));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeBatchResponse() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,138 @@
+package org.bitly.benchmark;
+
+import org.bitly.Main;
+import org.bitly.entity.User;
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UserRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The full application context for benchmarks that need real wiring: a temporary SQLite file instead of
+ * database.db, a private embedded Redis server (no persistence) on a free port, an ephemeral HTTP port and
+ * application logging at WARN so log output does not dominate the measurements. Rate limits are
+ * scaled up by {@code ratelimit.limit-multiplier} rather than turned off.
+ */
+public final class BenchmarkApplication implements AutoCloseable {
+
+    public static final String API_KEY = "BENCH_API_KEY";
+
+    private final Path database;
+    private final RedisServer redis;
+    private final ConfigurableApplicationContext context;
+    private User user;
+
+    private BenchmarkApplication(Path database, RedisServer redis, ConfigurableApplicationContext context) {
+        this.database = database;
+        this.redis = redis;
+        this.context = context;
+    }
+
+    // Extra arguments come last, so they override the defaults below
+    public static BenchmarkApplication start(String... extraArgs) {
+        Path database;
+        RedisServer redis;
+        int redisPort;
+        try {
+            database = Files.createTempFile("url-shortener-bench", ".db");
+            redisPort = freePort();
+            redis = RedisServer.newRedisServer()
+                    .bind("127.0.0.1")
+                    .port(redisPort)
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build();
+            redis.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Command-line arguments, so they take precedence over application.properties
+        List<String> args = new ArrayList<>(List.of("--spring.datasource.url=jdbc:sqlite:" + database,
+                "--spring.main.allow-bean-definition-overriding=true",
+                "--spring.jpa.show-sql=false",
+                "--server.port=0",
+                "--spring.redis.host=127.0.0.1",
+                "--spring.redis.port=" + redisPort,
+                "--sentry.dsn=",
+                "--shortcode.filter.snapshot-path=",
+                "--shortcode.allocator.key=" + ThreadLocalRandom.current().nextLong(),
+                // Rate limiting stays on (Lua and leased paths are measured), but a single client and key would be
+                // throttled by the real per-IP and per-key limits long before it saturates the app
+                "--ratelimit.limit-multiplier=1000",
+                "--logging.level.root=WARN"));
+        args.addAll(List.of(extraArgs));
+        ConfigurableApplicationContext context;
+        try {
+            context = new SpringApplicationBuilder(Main.class).run(args.toArray(String[]::new));
+        } catch (RuntimeException e) {
+            stop(redis);
+            throw e;
+        }
+
+        BenchmarkApplication app = new BenchmarkApplication(database, redis, context);
+        app.seedUser();
+        return app;
+    }
+
+    private void seedUser() {
+        // The read pool is query-only once the application is up, so the row goes in through the writer
+        getBean(SqliteWriteQueue.class).execute(jdbc -> jdbc.update(
+                "INSERT INTO users (email, name, api_key, tier, created_at) VALUES (?, ?, ?, ?, ?)",
+                "bench@example.com", "bench", API_KEY, "enterprise", Timestamp.valueOf(LocalDateTime.now())));
+        this.user = getBean(UserRepository.class).findByApiKey(API_KEY).orElseThrow();
+    }
+
+    public User user() {
+        return user;
+    }
+
+    // The ephemeral port the embedded server listens on
+    public int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public <T> T getBean(String name, Class<T> type) {
+        return context.getBean(name, type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            stop(redis);
+            Files.deleteIfExists(database);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void stop(RedisServer redis) {
+        try {
+            redis.stop();
+        } catch (IOException e) {
+            System.err.println("Could not stop embedded Redis: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.bitly.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Entry point of the benchmark profile. Accepts the usual JMH command line (benchmark regex, -f, -wi, ...),
+ * always adds the GC profiler for allocation rates, writes JSON results and compares them with a stored baseline.
+ * <p>
+ * System properties:
+ * {@code jmh.result} (default target/jmh-result.json),
+ * {@code jmh.baseline} (default src/jmh/baseline.json; skipped if missing),
+ * {@code jmh.regression-threshold} (relative, default 0.10),
+ * {@code jmh.update-baseline} (copy this run's results over the baseline).
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Path result = Path.of(System.getProperty("jmh.result", "target/jmh-result.json"));
+        Path baseline = Path.of(System.getProperty("jmh.baseline", "src/jmh/baseline.json"));
+        double threshold = Double.parseDouble(System.getProperty("jmh.regression-threshold", "0.10"));
+        boolean updateBaseline = Boolean.getBoolean("jmh.update-baseline");
+
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.toString())
+                .build();
+        new Runner(options).run();
+
+        int regressions = 0;
+        if (Files.exists(baseline)) {
+            regressions = BaselineComparator.compare(baseline, result, threshold, System.out);
+        } else {
+            System.out.println("No baseline at " + baseline + "; run with -Djmh.update-baseline=true to store one");
+        }
+        if (updateBaseline) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Stored baseline at " + baseline);
+        } else if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.bitly.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The interceptors WebConfig registers, resolved through the real handler mapping for each path,
+ * run as the DispatcherServlet runs them: preHandle in order, afterCompletion in reverse. No controller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorChainBenchmark {
+
+    @Param({"GET /api/urls/redirect", "POST /api/urls/shorten", "POST /api/urls/shorten/batch"})
+    public String endpoint;
+
+    private BenchmarkApplication app;
+    private RequestMappingHandlerMapping handlerMapping;
+    private String method;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = BenchmarkApplication.start();
+        handlerMapping = app.getBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        method = endpoint.substring(0, endpoint.indexOf(' '));
+        path = endpoint.substring(endpoint.indexOf(' ') + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    public int interceptorChain() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.addHeader("X-API-KEY", BenchmarkApplication.API_KEY);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HandlerExecutionChain chain = handlerMapping.getHandler(request);
+        List<HandlerInterceptor> interceptors = chain.getInterceptorList();
+        int passed = 0;
+        while (passed < interceptors.size()
+                && interceptors.get(passed).preHandle(request, response, chain.getHandler())) {
+            passed++;
+        }
+        for (int i = Math.min(passed, interceptors.size() - 1); i >= 0; i--) {
+            interceptors.get(i).afterCompletion(request, response, chain.getHandler(), null);
+        }
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,337 @@
+package org.bitly.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bitly.benchmark.LoadWorkload.Operation;
+import org.bitly.service.RedirectTokenService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator: requests are sent at a constant arrival rate whatever the server's response times,
+ * like independent users, instead of by a fixed set of threads that each wait for their previous response.
+ * Latency is measured from each request's scheduled send time, so when the server (or this client) stalls, the
+ * requests that should have gone out during the stall are charged for it; see {@link LoadReport}.
+ * <p>
+ * Without {@code target=} it starts the application in this JVM through {@link BenchmarkApplication} (temporary
+ * SQLite file, embedded Redis server). Before the run it seeds {@code codes} links and {@code protected-codes}
+ * password-protected links through the batch endpoint, in chunks of {@value #SEED_CHUNK} under their own
+ * {@code seed-timeout-ms} (BCrypt makes protected chunks slow). Arguments are {@code key=value}:
+ * <pre>
+ * target=http://host:port  api-key=...        (default: in-process application and its enterprise key)
+ * rate=200 duration=30 warmup=5             (requests per second, seconds)
+ * mix=redirect-hit:70,redirect-miss:10,protected:5,shorten:10,batch:5
+ * codes=10000 zipf=0.99 protected-codes=100 batch-size=10 protected-tokens=true
+ * max-in-flight=2000 timeout-ms=10000 seed-timeout-ms=120000 seed=42
+ * result=target/load-result.json baseline=src/jmh/load-baseline.json threshold=0.10 update-baseline=false
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String PROTECTED_PASSWORD = "load-test-password";
+    private static final int SEED_CHUNK = 100;
+
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String api;
+    private final String apiKey;
+    private final Duration timeout;
+    private final Duration seedTimeout;
+    private final String urlPrefix = "https://example.com/load/" + Long.toString(System.currentTimeMillis(), 36) + "/";
+    private final AtomicLong urlCounter = new AtomicLong();
+    private final Map<String, String> redirectTokens = new ConcurrentHashMap<>();
+
+    LoadGenerator(String baseUrl, String apiKey, Duration timeout, Duration seedTimeout) {
+        this.api = baseUrl + "/api/urls";
+        this.apiKey = apiKey;
+        this.timeout = timeout;
+        this.seedTimeout = seedTimeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String target = options.get("target");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        LoadWorkload workload = LoadWorkload.parse(options.getOrDefault("mix",
+                "redirect-hit:70,redirect-miss:10,protected:5,shorten:10,batch:5"));
+        int codes = Integer.parseInt(options.getOrDefault("codes", "10000"));
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "0.99"));
+        int protectedCodes = workload.includes(Operation.PROTECTED)
+                ? Integer.parseInt(options.getOrDefault("protected-codes", "100")) : 0;
+        int batchSize = Integer.parseInt(options.getOrDefault("batch-size", "10"));
+        boolean protectedTokens = Boolean.parseBoolean(options.getOrDefault("protected-tokens", "true"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "2000"));
+        Duration timeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("timeout-ms", "10000")));
+        Duration seedTimeout = Duration.ofMillis(Long.parseLong(options.getOrDefault("seed-timeout-ms", "120000")));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Path result = Path.of(options.getOrDefault("result", "target/load-result.json"));
+        Path baseline = Path.of(options.getOrDefault("baseline", "src/jmh/load-baseline.json"));
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.10"));
+        boolean updateBaseline = Boolean.parseBoolean(options.getOrDefault("update-baseline", "false"));
+        if (workload.includes(Operation.REDIRECT_HIT) && codes < 1 || protectedCodes < 0
+                || workload.includes(Operation.PROTECTED) && protectedCodes < 1) {
+            throw new IllegalArgumentException("redirect-hit needs codes >= 1 and protected needs protected-codes >= 1");
+        }
+
+        int status = 0;
+        BenchmarkApplication app = null;
+        String baseUrl = target;
+        String apiKey = options.get("api-key");
+        if (target == null) {
+            // The redirect endpoint logs every miss at WARN
+            app = BenchmarkApplication.start("--logging.level.org.bitly.controller.UrlShortenerController=ERROR");
+            baseUrl = "http://localhost:" + app.port();
+            apiKey = BenchmarkApplication.API_KEY;
+        } else if (apiKey == null) {
+            throw new IllegalArgumentException("api-key= is required with target=");
+        }
+
+        try {
+            LoadGenerator generator = new LoadGenerator(baseUrl, apiKey, timeout, seedTimeout);
+            System.out.printf("Seeding %d links and %d protected links at %s%n", codes, protectedCodes, baseUrl);
+            List<String> plain = generator.seed(codes, null);
+            List<String> secured = generator.seed(protectedCodes, PROTECTED_PASSWORD);
+
+            Map<String, Object> config = new LinkedHashMap<>();
+            config.put("target", target != null ? target : "in-process (temporary SQLite, embedded Redis)");
+            config.put("rate", rate);
+            config.put("duration", durationSeconds);
+            config.put("warmup", warmupSeconds);
+            config.put("mix", workload.toString());
+            config.put("codes", codes);
+            config.put("zipf", zipf);
+            config.put("protectedCodes", protectedCodes);
+            config.put("protectedTokens", protectedTokens);
+            config.put("batchSize", batchSize);
+            config.put("seed", seed);
+            LoadReport report = new LoadReport(config);
+
+            System.out.printf("Running %.0f req/s for %d s after %d s of warmup%n", rate, durationSeconds, warmupSeconds);
+            generator.run(report, workload, new SplittableRandom(seed), rate, warmupSeconds, durationSeconds,
+                    plain, new ZipfianGenerator(Math.max(1, plain.size()), zipf), secured, batchSize, protectedTokens, maxInFlight);
+
+            report.print(System.out, durationSeconds);
+            Files.createDirectories(result.toAbsolutePath().getParent());
+            report.write(result, durationSeconds);
+
+            int regressions = 0;
+            if (Files.exists(baseline)) {
+                regressions = LoadReport.compare(baseline, result, threshold, System.out);
+            } else {
+                System.out.println("No baseline at " + baseline + "; run with update-baseline=true to store one");
+            }
+            if (updateBaseline) {
+                Files.createDirectories(baseline.toAbsolutePath().getParent());
+                Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("Stored baseline at " + baseline);
+            } else if (regressions > 0) {
+                status = 1;
+            }
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+        // Also stops the HttpClient's threads
+        System.exit(status);
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Arguments are key=value, got '" + arg + "'");
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    // Creates links through the batch endpoint, or one by one if the key may not use it (non-enterprise plans)
+    List<String> seed(int count, String password) throws IOException, InterruptedException {
+        List<String> shortCodes = new ArrayList<>(count);
+        boolean batch = true;
+        while (shortCodes.size() < count) {
+            int size = Math.min(SEED_CHUNK, count - shortCodes.size());
+            if (batch) {
+                HttpResponse<String> response = client.send(seeding(batchRequest(size, password)), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) {
+                    for (JsonNode item : mapper.readTree(response.body())) {
+                        if (item.hasNonNull("shortCode")) {
+                            shortCodes.add(item.get("shortCode").asText());
+                        }
+                    }
+                    continue;
+                }
+                System.out.printf("Batch seeding answered %d; seeding one link per request%n", response.statusCode());
+                batch = false;
+            }
+            HttpResponse<String> response = client.send(seeding(shortenRequest(password)), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+            }
+            shortCodes.add(mapper.readTree(response.body()).get("shortCode").asText());
+        }
+        return shortCodes;
+    }
+
+    // Seeding is not measured, so it gets seed-timeout-ms instead of the per-request timeout
+    private HttpRequest seeding(HttpRequest request) {
+        return HttpRequest.newBuilder(request, (name, value) -> true).timeout(seedTimeout).build();
+    }
+
+    void run(LoadReport report, LoadWorkload workload, SplittableRandom random, double rate,
+             long warmupSeconds, long durationSeconds, List<String> plain, ZipfianGenerator popularity,
+             List<String> secured, int batchSize, boolean protectedTokens, int maxInFlight) throws InterruptedException {
+        AtomicLong inFlight = new AtomicLong();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (long i = 0; ; i++) {
+            // Computed from the start, not from the previous send, so the schedule never drifts
+            long scheduled = start + (long) (i * intervalNanos);
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = scheduled >= measureFrom;
+            Operation operation = workload.next(random);
+            HttpRequest request = request(operation, random, plain, popularity, secured, batchSize, protectedTokens);
+            long sent = System.nanoTime();
+            if (measured) {
+                report.sendLag(sent - scheduled);
+            }
+            if (inFlight.get() >= maxInFlight) {
+                // The client cannot keep up: count it instead of blocking, which would stop the clock
+                if (measured) {
+                    report.rejected();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long done = System.nanoTime();
+                inFlight.decrementAndGet();
+                boolean ok = error == null && response.statusCode() == operation.expectedStatus();
+                if (ok && operation == Operation.PROTECTED && protectedTokens) {
+                    response.headers().firstValue(RedirectTokenService.HEADER)
+                            .ifPresent(token -> redirectTokens.put(codeOf(response.request().uri()), token));
+                }
+                if (measured) {
+                    report.record(operation, done - scheduled, done - sent, ok);
+                }
+            });
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private HttpRequest request(Operation operation, SplittableRandom random, List<String> plain,
+                                ZipfianGenerator popularity, List<String> secured, int batchSize, boolean protectedTokens) {
+        return switch (operation) {
+            case REDIRECT_HIT -> redirect(plain.get(popularity.next(random)), null, null);
+            // Longer than any issued code, so it never exists
+            case REDIRECT_MISS -> redirect("miss" + Long.toString(random.nextLong(Long.MAX_VALUE), 36), null, null);
+            case PROTECTED -> {
+                String code = secured.get(random.nextInt(secured.size()));
+                String token = protectedTokens ? redirectTokens.get(code) : null;
+                yield redirect(code, token == null ? PROTECTED_PASSWORD : null, token);
+            }
+            case SHORTEN -> shortenRequest(null);
+            case BATCH -> batchRequest(batchSize, null);
+        };
+    }
+
+    private HttpRequest redirect(String code, String password, String token) {
+        String query = "code=" + URLEncoder.encode(code, StandardCharsets.UTF_8)
+                + (password != null ? "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8) : "");
+        HttpRequest.Builder builder = base("/redirect?" + query).GET();
+        if (token != null) {
+            builder.header(RedirectTokenService.HEADER, token);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest shortenRequest(String password) {
+        ObjectNode body = mapper.createObjectNode().put("url", nextUrl());
+        if (password != null) {
+            body.put("password", password);
+        }
+        return post("/shorten", body);
+    }
+
+    private HttpRequest batchRequest(int size, String password) {
+        ObjectNode body = mapper.createObjectNode();
+        ArrayNode urls = body.putArray("urls");
+        for (int i = 0; i < size; i++) {
+            ObjectNode url = urls.addObject().put("originalUrl", nextUrl());
+            if (password != null) {
+                url.put("password", password);
+            }
+        }
+        return post("/shorten/batch", body);
+    }
+
+    // Unique per request, so reuse of existing codes never short-circuits a shorten
+    private String nextUrl() {
+        return urlPrefix + urlCounter.incrementAndGet();
+    }
+
+    private HttpRequest post(String path, JsonNode body) {
+        return base(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+    }
+
+    private HttpRequest.Builder base(String path) {
+        return HttpRequest.newBuilder(URI.create(api + path)).timeout(timeout).header("X-API-KEY", apiKey);
+    }
+
+    private static String codeOf(URI uri) {
+        for (String parameter : uri.getRawQuery().split("&")) {
+            if (parameter.startsWith("code=")) {
+                return URLDecoder.decode(parameter.substring(5), StandardCharsets.UTF_8);
+            }
+        }
+        return "";
+    }
+}
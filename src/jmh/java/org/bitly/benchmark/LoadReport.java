@@ -0,0 +1,182 @@
+package org.bitly.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.bitly.benchmark.LoadWorkload.Operation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of one load run per operation, in microseconds. "Corrected" latency runs from the time the request
+ * was scheduled to be sent, so a stalled server is charged for every request that queued up behind the stall
+ * (coordinated omission); "service" latency runs from the actual send and is only reported next to it.
+ * <p>
+ * Printed as a fixed-width table and written as JSON, which {@link #compare} checks against a stored baseline.
+ */
+public final class LoadReport {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    static final class Series {
+        final Histogram corrected = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        final Histogram service = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+
+        void record(long correctedNanos, long serviceNanos, boolean ok) {
+            corrected.recordValue(micros(correctedNanos));
+            service.recordValue(micros(serviceNanos));
+            if (!ok) {
+                errors.increment();
+            }
+        }
+
+        private static long micros(long nanos) {
+            return Math.min(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)), HIGHEST_TRACKABLE_MICROS);
+        }
+    }
+
+    private final Map<Operation, Series> series = new EnumMap<>(Operation.class);
+    private final Map<String, Object> config;
+    private volatile long maxSendLagNanos;
+    private final LongAdder rejected = new LongAdder();
+
+    public LoadReport(Map<String, Object> config) {
+        this.config = config;
+        for (Operation operation : Operation.values()) {
+            series.put(operation, new Series());
+        }
+    }
+
+    public void record(Operation operation, long correctedNanos, long serviceNanos, boolean ok) {
+        series.get(operation).record(correctedNanos, serviceNanos, ok);
+    }
+
+    // Called from the scheduler thread only
+    public void sendLag(long nanos) {
+        if (nanos > maxSendLagNanos) {
+            maxSendLagNanos = nanos;
+        }
+    }
+
+    // Requests not sent because max-in-flight were outstanding; counted as errors of the run
+    public void rejected() {
+        rejected.increment();
+    }
+
+    public void print(PrintStream out, double seconds) {
+        out.println();
+        config.forEach((key, value) -> out.printf("%-14s %s%n", key, value));
+        out.println("Latency in ms, corrected for coordinated omission (from the scheduled send time)");
+        out.printf("%n%-14s %9s %7s %9s %9s %9s %9s %9s %9s %12s%n",
+                "Operation", "Count", "Errors", "Rate/s", "p50", "p90", "p99", "p99.9", "Max", "p99 service");
+        Histogram allCorrected = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        Histogram allService = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+        long allErrors = 0;
+        for (Map.Entry<Operation, Series> entry : series.entrySet()) {
+            Series s = entry.getValue();
+            if (s.corrected.getTotalCount() == 0) {
+                continue;
+            }
+            row(out, entry.getKey().label(), s.corrected, s.service, s.errors.sum(), seconds);
+            allCorrected.add(s.corrected);
+            allService.add(s.service);
+            allErrors += s.errors.sum();
+        }
+        row(out, "all", allCorrected, allService, allErrors + rejected.sum(), seconds);
+        out.printf("%nMax send lag %.3f ms, %d request(s) not sent (max-in-flight)%n",
+                maxSendLagNanos / 1e6, rejected.sum());
+    }
+
+    private static void row(PrintStream out, String label, Histogram corrected, Histogram service, long errors, double seconds) {
+        out.printf("%-14s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %12.3f%n", label, corrected.getTotalCount(), errors,
+                corrected.getTotalCount() / seconds,
+                ms(corrected, 50), ms(corrected, 90), ms(corrected, 99), ms(corrected, 99.9),
+                corrected.getMaxValue() / 1000.0, ms(service, 99));
+    }
+
+    private static double ms(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public void write(Path file, double seconds) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode root = mapper.createObjectNode();
+        root.set("config", mapper.valueToTree(config));
+        ObjectNode operations = root.putObject("operations");
+        for (Map.Entry<Operation, Series> entry : series.entrySet()) {
+            Series s = entry.getValue();
+            if (s.corrected.getTotalCount() == 0) {
+                continue;
+            }
+            ObjectNode node = operations.putObject(entry.getKey().label());
+            node.put("count", s.corrected.getTotalCount());
+            node.put("errors", s.errors.sum());
+            node.put("ratePerSecond", s.corrected.getTotalCount() / seconds);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                node.put(PERCENTILE_KEYS[i] + "Ms", ms(s.corrected, PERCENTILES[i]));
+            }
+            node.put("maxMs", s.corrected.getMaxValue() / 1000.0);
+            node.put("p99ServiceMs", ms(s.service, 99));
+        }
+        root.put("notSent", rejected.sum());
+        mapper.writeValue(file.toFile(), root);
+    }
+
+    /**
+     * An operation regresses when its corrected p50 or p99 is worse than the baseline's by more than the threshold
+     * (and by more than 0.1 ms, below which timer noise dominates), or its error rate grew. Returns the count.
+     */
+    public static int compare(Path baselineFile, Path resultFile, double threshold, PrintStream out) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode baseline = mapper.readTree(baselineFile.toFile()).path("operations");
+        JsonNode current = mapper.readTree(resultFile.toFile()).path("operations");
+
+        int regressions = 0;
+        out.printf("%n%-14s %-6s %12s %12s %9s%n", "Operation", "Metric", "Baseline", "Current", "Change");
+        for (Iterator<Map.Entry<String, JsonNode>> it = current.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            JsonNode now = entry.getValue();
+            JsonNode base = baseline.path(entry.getKey());
+            if (base.isMissingNode()) {
+                out.printf("%-14s %-6s %12s %12s %9s%n", entry.getKey(), "", "-", "-", "new");
+                continue;
+            }
+            for (String metric : new String[]{"p50", "p99"}) {
+                double before = base.path(metric + "Ms").asDouble();
+                double after = now.path(metric + "Ms").asDouble();
+                double change = before > 0 ? (after - before) / before : 0;
+                boolean slower = change > threshold && after - before > 0.1;
+                regressions += slower ? 1 : 0;
+                out.printf("%-14s %-6s %12.3f %12.3f %+8.1f%%%s%n", entry.getKey(), metric, before, after, change * 100,
+                        slower ? "  REGRESSION" : "");
+            }
+            double errorsBefore = errorRate(base);
+            double errorsAfter = errorRate(now);
+            if (errorsAfter > errorsBefore) {
+                regressions++;
+                out.printf("%-14s %-6s %11.3f%% %11.3f%% %9s  REGRESSION%n", entry.getKey(), "errors",
+                        errorsBefore * 100, errorsAfter * 100, "");
+            }
+        }
+        out.printf("%d regression(s) beyond %.0f%%%n", regressions, threshold * 100);
+        return regressions;
+    }
+
+    private static double errorRate(JsonNode operation) {
+        long count = operation.path("count").asLong();
+        return count == 0 ? 0 : (double) operation.path("errors").asLong() / count;
+    }
+}
@@ -0,0 +1,109 @@
+package org.bitly.benchmark;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * What the load generator sends: a weighted mix of operations, e.g.
+ * {@code redirect-hit:70,redirect-miss:10,protected:5,shorten:10,batch:5}. Weights are relative.
+ */
+public final class LoadWorkload {
+
+    public enum Operation {
+        // Redirect to a seeded link, picked by Zipfian popularity
+        REDIRECT_HIT("redirect-hit", 302),
+        // Redirect to a code that was never issued
+        REDIRECT_MISS("redirect-miss", 404),
+        // Redirect to a seeded password-protected link, with the password (or the token an earlier redirect returned)
+        PROTECTED("protected", 302),
+        SHORTEN("shorten", 200),
+        BATCH("batch", 200);
+
+        private final String label;
+        private final int expectedStatus;
+
+        Operation(String label, int expectedStatus) {
+            this.label = label;
+            this.expectedStatus = expectedStatus;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public int expectedStatus() {
+            return expectedStatus;
+        }
+
+        static Operation of(String label) {
+            for (Operation operation : values()) {
+                if (operation.label.equals(label.trim().toLowerCase(Locale.ROOT))) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation '" + label + "'; expected one of redirect-hit, "
+                    + "redirect-miss, protected, shorten, batch");
+        }
+    }
+
+    private final Map<Operation, Double> weights;
+    private final Operation[] operations;
+    private final double[] cumulative;
+
+    private LoadWorkload(Map<Operation, Double> weights) {
+        this.weights = weights;
+        this.operations = weights.keySet().toArray(Operation[]::new);
+        this.cumulative = new double[operations.length];
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        double sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]) / total;
+            cumulative[i] = sum;
+        }
+    }
+
+    public static LoadWorkload parse(String mix) {
+        Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries are operation:weight, got '" + entry + "'");
+            }
+            double weight = Double.parseDouble(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + parts[0]);
+            }
+            if (weight > 0) {
+                weights.merge(Operation.of(parts[0]), weight, Double::sum);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight: " + mix);
+        }
+        return new LoadWorkload(weights);
+    }
+
+    public Operation next(RandomGenerator random) {
+        double draw = random.nextDouble();
+        for (int i = 0; i < operations.length - 1; i++) {
+            if (draw < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    public boolean includes(Operation operation) {
+        return weights.containsKey(operation);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        weights.forEach((operation, weight) -> text.append(text.isEmpty() ? "" : ",")
+                .append(operation.label()).append(':').append(weight % 1 == 0 ? Long.toString(weight.longValue()) : weight));
+        return text.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package org.bitly.benchmark;
+
+import org.bitly.util.NUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// BCrypt verification on password-protected redirects; cost is dominated by the work factor.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        hash = NUtil.hashPassword("correct horse battery staple");
+    }
+
+    @Benchmark
+    public boolean verifyCorrectPassword() {
+        return NUtil.verifyPassword("correct horse battery staple", hash);
+    }
+
+    @Benchmark
+    public boolean verifyWrongPassword() {
+        return NUtil.verifyPassword("wrong password", hash);
+    }
+}
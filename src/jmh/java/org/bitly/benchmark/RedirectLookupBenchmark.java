@@ -0,0 +1,68 @@
+package org.bitly.benchmark;
+
+import org.bitly.entity.UrlMapping;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.RedisCacheService;
+import org.bitly.service.UrlShortenerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UrlShortenerService#getUrlMapping} on each tier of the redirect path:
+ * L1 hit, Redis hit (L1 dropped), full miss to SQLite (L1 and Redis dropped) and an unknown code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedirectLookupBenchmark {
+
+    private BenchmarkApplication app;
+    private UrlShortenerService urlShortenerService;
+    private LocalUrlCacheService localUrlCache;
+    private RedisCacheService redis;
+    private String shortCode;
+    private long unknownCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = BenchmarkApplication.start();
+        urlShortenerService = app.getBean(UrlShortenerService.class);
+        localUrlCache = app.getBean(LocalUrlCacheService.class);
+        redis = app.getBean(RedisCacheService.class);
+        shortCode = urlShortenerService.shortenUrl("https://example.com/benchmark", app.user(),
+                null, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> localCacheHit() {
+        return urlShortenerService.getUrlMapping(shortCode);
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> redisHit() {
+        localUrlCache.invalidate(shortCode);
+        return urlShortenerService.getUrlMapping(shortCode);
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> databaseMiss() {
+        localUrlCache.invalidate(shortCode);
+        redis.evictUrl(shortCode);
+        return urlShortenerService.getUrlMapping(shortCode);
+    }
+
+    @Benchmark
+    public Optional<UrlMapping> notFound() {
+        return urlShortenerService.getUrlMapping("zz" + Long.toString(unknownCounter++, 36));
+    }
+}
@@ -0,0 +1,55 @@
+package org.bitly.benchmark;
+
+import org.bitly.repository.ShortCodeSequenceRepository;
+import org.bitly.service.ShortCodeAllocator;
+import org.bitly.util.ShortCodeScrambler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Short code generation: the allocator (block reservation + scrambling) and the scrambler alone.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortCodeBenchmark {
+
+    private ShortCodeAllocator allocator;
+    private ShortCodeScrambler scrambler;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        // Block reservation is one UPDATE per block-size codes; an in-memory sequence isolates the CPU cost
+        ShortCodeSequenceRepository sequence = new ShortCodeSequenceRepository() {
+            private long next;
+
+            @Override
+            public void createTable() {
+            }
+
+            @Override
+            public synchronized long reserveBlock(String name, long blockSize) {
+                long start = next;
+                next += blockSize;
+                return start;
+            }
+        };
+        allocator = new ShortCodeAllocator(sequence, 6, ThreadLocalRandom.current().nextLong(), 10_000);
+        scrambler = new ShortCodeScrambler(6, 7046029254386353131L);
+    }
+
+    @Benchmark
+    public String allocatorNextCode() {
+        return allocator.nextCode();
+    }
+
+    @Benchmark
+    public String scramblerEncode() {
+        nextId = (nextId + 1) % scrambler.capacity();
+        return scrambler.encode(nextId);
+    }
+}
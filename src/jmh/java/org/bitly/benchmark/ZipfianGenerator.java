@@ -0,0 +1,40 @@
+package org.bitly.benchmark;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Ranks 0..n-1 drawn with probability proportional to 1 / (rank + 1)^exponent, so a few short codes get most
+ * of the clicks the way real links do. The cumulative distribution is computed once; a draw is a binary search.
+ * An exponent of 0 is uniform.
+ */
+public final class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfianGenerator(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Need at least one item: " + n);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int next(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // Not found: (-(insertion point) - 1); the insertion point is the first rank whose cumulative exceeds the draw
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+
+    // Share of all draws that land on the most popular `top` ranks
+    public double share(int top) {
+        return top <= 0 ? 0 : cumulative[Math.min(top, cumulative.length) - 1];
+    }
+}
@@ -0,0 +1,101 @@
+package org.bitly.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch over 64-bit keys: {@code depth} rows of {@code width} counters, one counter per row
+ * picked by double hashing of the key. Lock-free ({@link AtomicLongArray}).
+ * <p>
+ * An estimate never undercounts. With probability 1 - e^-depth it overcounts by at most e/width × N,
+ * where N is the total of all additions. Sketches of the same shape merge by adding counters, so the
+ * additions since the last {@link #drainPending} can be shipped as a sparse delta.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+    private final AtomicLongArray pending; // added since the last drain
+    private final AtomicLong total = new AtomicLong();
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+        this.pending = new AtomicLongArray(depth * width);
+    }
+
+    // Flat counter index per row for the key: row * width + column
+    public int[] cells(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32);
+        int[] cells = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            int combined = h1 + (row + 1) * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            cells[row] = row * width + combined % width;
+        }
+        return cells;
+    }
+
+    public void add(long key, long count) {
+        for (int cell : cells(key)) {
+            counters.addAndGet(cell, count);
+            pending.addAndGet(cell, count);
+        }
+        total.addAndGet(count);
+    }
+
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int cell : cells(key)) {
+            estimate = Math.min(estimate, counters.get(cell));
+        }
+        return estimate;
+    }
+
+    public interface DeltaConsumer {
+        void accept(int cell, long delta);
+    }
+
+    // Hands out and clears the non-zero counter increments since the last drain
+    public void drainPending(DeltaConsumer consumer) {
+        for (int cell = 0; cell < pending.length(); cell++) {
+            if (pending.get(cell) != 0) {
+                long delta = pending.getAndSet(cell, 0);
+                if (delta != 0) {
+                    consumer.accept(cell, delta);
+                }
+            }
+        }
+    }
+
+    // Puts back a delta that could not be shipped
+    public void restorePending(int cell, long delta) {
+        pending.addAndGet(cell, delta);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    // Overcount bound as a fraction of the total (e / width), holding with probability 1 - e^-depth
+    public double errorRate() {
+        return Math.E / width;
+    }
+
+    public double confidence() {
+        return 1 - Math.exp(-depth);
+    }
+}
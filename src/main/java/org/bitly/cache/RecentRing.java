@@ -0,0 +1,67 @@
+package org.bitly.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * Fixed-size ring of the latest elements added, lock-free for any number of writers and readers.
+ * <p>
+ * A writer claims the next sequence number and stores the element in slot {@code sequence % capacity},
+ * overwriting the oldest. Each slot remembers the sequence it was written for, so a reader walking back
+ * from the head skips slots that were overwritten by a newer lap or not written yet.
+ */
+public final class RecentRing<E> {
+
+    private record Slot<E>(long sequence, E element) {}
+
+    private final AtomicReferenceArray<Slot<E>> slots;
+    private final int capacity;
+    private final AtomicLong next = new AtomicLong();
+
+    public RecentRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(E element) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) (sequence % capacity), new Slot<>(sequence, element));
+    }
+
+    // Newest first, at most limit elements
+    public List<E> latest(int limit) {
+        long head = next.get();
+        long oldest = Math.max(0, head - capacity);
+        List<E> result = new ArrayList<>(Math.min(limit, capacity));
+        for (long sequence = head - 1; sequence >= oldest && result.size() < limit; sequence--) {
+            Slot<E> slot = slots.get((int) (sequence % capacity));
+            if (slot != null && slot.sequence() == sequence && slot.element() != null) {
+                result.add(slot.element());
+            }
+        }
+        return result;
+    }
+
+    // Clears matching slots in place; later adds still overwrite them in order
+    public int removeIf(Predicate<E> filter) {
+        int removed = 0;
+        for (int i = 0; i < capacity; i++) {
+            Slot<E> slot = slots.get(i);
+            if (slot != null && slot.element() != null && filter.test(slot.element())
+                    && slots.compareAndSet(i, slot, new Slot<>(slot.sequence(), null))) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
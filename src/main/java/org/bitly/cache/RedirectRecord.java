@@ -0,0 +1,115 @@
+package org.bitly.cache;
+
+import org.bitly.entity.UrlMapping;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Everything the redirect endpoint needs to answer without touching the database.
+ * <p>
+ * Binary layout (big-endian), version 1:
+ * <pre>
+ *   byte    version       = 1
+ *   byte    flags         bit0 password, bit1 expiry, bit2 deleted, bit3 owner
+ *   long    expiryEpochMs (only if bit1)
+ *   long    ownerId       (only if bit3)
+ *   int     urlLength, byte[] url (UTF-8)
+ *   short   hashLength, byte[] passwordHash (only if bit0)
+ * </pre>
+ * Bump {@link #VERSION} when the layout changes: readers treat an unknown version as a cache miss,
+ * reload from the database and overwrite the entry, so no flush is needed.
+ */
+public record RedirectRecord(String originalUrl, String passwordHash, Long expiryEpochMillis,
+                             boolean deleted, Long ownerId) {
+
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_PASSWORD = 1;
+    private static final int FLAG_EXPIRY = 1 << 1;
+    private static final int FLAG_DELETED = 1 << 2;
+    private static final int FLAG_OWNER = 1 << 3;
+
+    public static RedirectRecord of(UrlMapping urlMapping) {
+        Long expiry = urlMapping.getExpiryDate() != null
+                ? urlMapping.getExpiryDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : null;
+        return new RedirectRecord(urlMapping.getOriginalUrl(), urlMapping.getPassword(), expiry,
+                urlMapping.isDeleted(), urlMapping.getUserId());
+    }
+
+    public boolean isExpired() {
+        return expiryEpochMillis != null && expiryEpochMillis <= System.currentTimeMillis();
+    }
+
+    // Deleted and expired records are kept in the cache as tombstones, but never redirect
+    public boolean isLive() {
+        return !deleted && !isExpired();
+    }
+
+    public UrlMapping toUrlMapping(String shortCode) {
+        LocalDateTime expiryDate = expiryEpochMillis != null
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(expiryEpochMillis), ZoneId.systemDefault())
+                : null;
+        UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, ownerId, expiryDate, passwordHash);
+        urlMapping.setDeleted(deleted);
+        return urlMapping;
+    }
+
+    public byte[] encode() {
+        byte[] url = originalUrl.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = passwordHash != null ? passwordHash.getBytes(StandardCharsets.UTF_8) : null;
+
+        int flags = (hash != null ? FLAG_PASSWORD : 0)
+                | (expiryEpochMillis != null ? FLAG_EXPIRY : 0)
+                | (deleted ? FLAG_DELETED : 0)
+                | (ownerId != null ? FLAG_OWNER : 0);
+
+        int size = 2 + (expiryEpochMillis != null ? 8 : 0) + (ownerId != null ? 8 : 0)
+                + 4 + url.length + (hash != null ? 2 + hash.length : 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION).put((byte) flags);
+        if (expiryEpochMillis != null) {
+            buffer.putLong(expiryEpochMillis);
+        }
+        if (ownerId != null) {
+            buffer.putLong(ownerId);
+        }
+        buffer.putInt(url.length).put(url);
+        if (hash != null) {
+            buffer.putShort((short) hash.length).put(hash);
+        }
+        return buffer.array();
+    }
+
+    // Returns null for anything that is not a record we understand (older formats, plain strings)
+    public static RedirectRecord decode(byte[] bytes) {
+        if (bytes == null || bytes.length < 2 || bytes[0] != VERSION) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            int flags = buffer.get();
+            Long expiry = (flags & FLAG_EXPIRY) != 0 ? buffer.getLong() : null;
+            Long ownerId = (flags & FLAG_OWNER) != 0 ? buffer.getLong() : null;
+
+            String url = readString(buffer, buffer.getInt());
+            String hash = (flags & FLAG_PASSWORD) != 0 ? readString(buffer, buffer.getShort() & 0xFFFF) : null;
+
+            return new RedirectRecord(url, hash, expiry, (flags & FLAG_DELETED) != 0, ownerId);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
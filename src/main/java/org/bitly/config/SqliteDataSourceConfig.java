@@ -0,0 +1,102 @@
+package org.bitly.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.bitly.repository.SqliteWriteQueue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * SQLite connection layout: one writer connection owned by {@link SqliteWriteQueue}, and a pool of read
+ * connections that is the application's DataSource (JPA, JdbcTemplate, health checks).
+ * <p>
+ * Read connections become query-only once the application is ready; until then Hibernate's schema update
+ * and the startup CREATE TABLEs still run through them.
+ */
+@Configuration
+public class SqliteDataSourceConfig {
+
+    // Pragmas shared by the writer and the readers
+    public static SQLiteConfig connectionConfig(int busyTimeoutMillis, int cacheSizeKib, long mmapSizeBytes) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(busyTimeoutMillis);
+        config.setCacheSize(-cacheSizeKib); // negative: KiB rather than pages
+        config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(mmapSizeBytes));
+        return config;
+    }
+
+    // Depends on the writer so the database is in WAL mode before any reader opens it
+    @Bean
+    @Primary
+    public ReadOnlyAfterStartupDataSource dataSource(SqliteWriteQueue writeQueue,
+                                                     @Value("${spring.datasource.url}") String url,
+                                                     @Value("${sqlite.read-pool-size:8}") int poolSize,
+                                                     @Value("${sqlite.busy-timeout-ms:5000}") int busyTimeoutMillis,
+                                                     @Value("${sqlite.cache-size-kib:16384}") int cacheSizeKib,
+                                                     @Value("${sqlite.mmap-size-bytes:268435456}") long mmapSizeBytes) {
+        SQLiteDataSource sqlite = new SQLiteDataSource(connectionConfig(busyTimeoutMillis, cacheSizeKib, mmapSizeBytes));
+        sqlite.setUrl(url);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-read");
+        config.setDataSource(sqlite);
+        config.setMaximumPoolSize(poolSize);
+        return new ReadOnlyAfterStartupDataSource(new HikariDataSource(config));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void lockReadPool(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(ReadOnlyAfterStartupDataSource.class).lock();
+    }
+
+    // Sets PRAGMA query_only on each pooled connection the first time it is handed out after lock()
+    public static class ReadOnlyAfterStartupDataSource extends DelegatingDataSource {
+
+        private final Set<SQLiteConnection> locked = Collections.newSetFromMap(
+                Caffeine.newBuilder().weakKeys().<SQLiteConnection, Boolean>build().asMap());
+        private volatile boolean readOnly;
+
+        public ReadOnlyAfterStartupDataSource(DataSource pool) {
+            super(pool);
+        }
+
+        public void lock() {
+            readOnly = true;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            if (readOnly && locked.add(connection.unwrap(SQLiteConnection.class))) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA query_only = 1");
+                }
+            }
+            return connection;
+        }
+
+        // Picked up as the bean's destroy method
+        public void close() {
+            if (getTargetDataSource() instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+}
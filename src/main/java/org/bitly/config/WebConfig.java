@@ -12,18 +12,12 @@ public class WebConfig implements WebMvcConfigurer {
     @Autowired
     private LoggingInterceptor loggingInterceptor;
 
-    @Autowired
-    private ApiKeyInterceptor apiKeyInterceptor;
-
     @Autowired
     private AuthorizationInterceptor  authorizationInterceptor;
 
     @Autowired
     private BlacklistInterceptor blacklistInterceptor;
 
-    @Autowired
-    private ResponseTimeInterceptor responseTimeInterceptor;
-
     @Autowired
     private AuthenticationInterceptor authenticationInterceptor;
 
@@ -34,31 +28,25 @@ public class WebConfig implements WebMvcConfigurer {
     private RateLimitInterceptor rateLimitInterceptor;
 
     @Autowired
-    private RateLimitByApiInterceptor rateLimitByApiInterceptor;
+    private AdminInterceptor adminInterceptor;
 
-    @Autowired
-    private RateLimitByPlan rateLimitByPlan;
 
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(loggingInterceptor); // Logs every request (should be first)
-        registry.addInterceptor(blacklistInterceptor) // Blocks requests from blacklisted API keys
+        // Each one's preHandle is a span of the request timeline; X-Response-Time comes from RequestTimelineFilter
+        registry.addInterceptor(new TimedInterceptor("logging", loggingInterceptor)); // Logs every request (should be first)
+        registry.addInterceptor(new TimedInterceptor("admin", adminInterceptor)) // Operator endpoints need the admin token
+                .addPathPatterns("/internal/**");
+        registry.addInterceptor(new TimedInterceptor("blacklist", blacklistInterceptor)) // Blocks requests from blacklisted API keys
                 .addPathPatterns("/api/urls/**");
-        registry.addInterceptor(apiKeyInterceptor) // Validates API key before proceeding
-                .addPathPatterns("/api/urls/**");
-        registry.addInterceptor(authenticationInterceptor) // Authenticates user based on API key
+        registry.addInterceptor(new TimedInterceptor("authentication", authenticationInterceptor)) // Resolves the API key to a user (cached), once per request
                 .addPathPatterns("/api/**");
-        registry.addInterceptor(authorizationInterceptor) // Ensures only enterprise users can access bulk shortening
+        registry.addInterceptor(new TimedInterceptor("authorization", authorizationInterceptor)) // Ensures only enterprise users can access bulk shortening
                 .addPathPatterns("/api/urls/shorten/batch");
-        registry.addInterceptor(responseTimeInterceptor) // Logs response time (should be last)
-                .addPathPatterns("/api/**");
-        registry.addInterceptor(observabilityInterceptor).addPathPatterns("/api/**");// Observes
-        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/shorten", "/redirect"); // Rate Limits By IP
-        registry.addInterceptor(rateLimitByApiInterceptor).addPathPatterns("/shorten", "/redirect");// Rate Limits By API
-        registry.addInterceptor(rateLimitByPlan).addPathPatterns("/shorten", "/redirect"); // Rate Limit By User Plan
+        registry.addInterceptor(new TimedInterceptor("observability", observabilityInterceptor)).addPathPatterns("/api/**");// Observes
+        registry.addInterceptor(new TimedInterceptor("ratelimit", rateLimitInterceptor)) // Rate limits by IP, API key and plan in one Redis call
+                .addPathPatterns("/api/urls/shorten", "/api/urls/shorten/batch", "/api/urls/redirect");
+        registry.addInterceptor(new TimedInterceptor.Handler()); // The controller's span (should be last)
     }
-
-
 }
-
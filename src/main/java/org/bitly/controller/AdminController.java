@@ -0,0 +1,65 @@
+package org.bitly.controller;
+
+import org.bitly.entity.User;
+import org.bitly.service.ApiKeyPrincipalService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Blocking keys and changing plans. Admin token only (AdminInterceptor); every change is applied on all nodes.
+@RestController
+@RequestMapping("/internal/api-keys/{apiKey}")
+public class AdminController {
+
+    // Tiers RateLimitService has plan limits for
+    private static final Set<String> TIERS = Set.of("hobby", "enterprise");
+
+    @Autowired
+    private ApiKeyPrincipalService principals;
+
+    @PostMapping("/block")
+    public ResponseEntity<Object> block(@PathVariable String apiKey) {
+        return apply(() -> principals.block(apiKey));
+    }
+
+    @DeleteMapping("/block")
+    public ResponseEntity<Object> unblock(@PathVariable String apiKey) {
+        return apply(() -> principals.unblock(apiKey));
+    }
+
+    @PutMapping("/tier")
+    public ResponseEntity<Object> updateTier(@PathVariable String apiKey, @RequestParam String tier) {
+        String normalized = tier.trim().toLowerCase(Locale.ROOT);
+        if (!TIERS.contains(normalized)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown tier: " + tier));
+        }
+        return apply(() -> principals.updateTier(apiKey, normalized));
+    }
+
+    // After editing the users table by hand
+    @PostMapping("/invalidate")
+    public ResponseEntity<Object> invalidate(@PathVariable String apiKey) {
+        principals.invalidate(apiKey);
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<Object> apply(Supplier<User> change) {
+        try {
+            User user = change.get();
+            return ResponseEntity.ok(Map.of("tier", user.getTier(), "blocked", user.isBlocked()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,5 +1,19 @@
 package org.bitly.controller;
 
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.service.ApiKeyPrincipalService;
+import org.bitly.service.ClickBufferService;
+import org.bitly.service.HeavyHittersService;
+import org.bitly.service.LeasedRateLimiter;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.RecentShortenedUrlService;
+import org.bitly.service.RedirectTokenService;
+import org.bitly.service.RedisCacheService;
+import org.bitly.service.RequestLogWriter;
+import org.bitly.service.ShortCodeFilterService;
+import org.bitly.service.ThreadDiagnosticsService;
+import org.bitly.service.UrlCompactionService;
+import org.bitly.service.UrlFingerprintBackfillService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +32,48 @@ public class HealthController {
     @Autowired
     private DataSource dataSource; // Inject SQLite DataSource
 
+    @Autowired
+    private LocalUrlCacheService localUrlCache;
+
+    @Autowired
+    private ClickBufferService clickBufferService;
+
+    @Autowired
+    private RedisCacheService redisCacheService;
+
+    @Autowired
+    private ShortCodeFilterService shortCodeFilter;
+
+    @Autowired
+    private ThreadDiagnosticsService threadDiagnostics;
+
+    @Autowired
+    private ApiKeyPrincipalService principals;
+
+    @Autowired
+    private LeasedRateLimiter leasedRateLimiter;
+
+    @Autowired
+    private RequestLogWriter requestLogWriter;
+
+    @Autowired
+    private HeavyHittersService heavyHitters;
+
+    @Autowired
+    private RecentShortenedUrlService recentUrls;
+
+    @Autowired
+    private SqliteWriteQueue writeQueue;
+
+    @Autowired
+    private UrlCompactionService compaction;
+
+    @Autowired
+    private UrlFingerprintBackfillService fingerprintBackfill;
+
+    @Autowired
+    private RedirectTokenService redirectTokens;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> healthCheck() {
         Map<String, Object> response = new HashMap<>();
@@ -54,6 +110,74 @@ public class HealthController {
 
         return ResponseEntity.ok(response);
     }
-}
 
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(localUrlCache.stats());
+    }
+
+    @GetMapping("/clicks")
+    public ResponseEntity<Map<String, Object>> clickBufferStats() {
+        return ResponseEntity.ok(clickBufferService.stats());
+    }
+
+    @GetMapping("/redis")
+    public ResponseEntity<Map<String, Object>> redisPoolStats() {
+        return ResponseEntity.ok(redisCacheService.poolStats());
+    }
+
+    @GetMapping("/filter")
+    public ResponseEntity<Map<String, Object>> shortCodeFilterStats() {
+        return ResponseEntity.ok(shortCodeFilter.stats());
+    }
+
+    @GetMapping("/threads")
+    public ResponseEntity<Map<String, Object>> threadStats() {
+        return ResponseEntity.ok(threadDiagnostics.stats());
+    }
+
+    @GetMapping("/principals")
+    public ResponseEntity<Map<String, Object>> principalCacheStats() {
+        return ResponseEntity.ok(principals.stats());
+    }
+
+    @GetMapping("/ratelimit")
+    public ResponseEntity<Map<String, Object>> rateLimitStats() {
+        return ResponseEntity.ok(leasedRateLimiter.stats());
+    }
+
+    @GetMapping("/requestlog")
+    public ResponseEntity<Map<String, Object>> requestLogStats() {
+        return ResponseEntity.ok(requestLogWriter.stats());
+    }
+
+    @GetMapping("/heavyhitters")
+    public ResponseEntity<Map<String, Object>> heavyHittersStats() {
+        return ResponseEntity.ok(heavyHitters.stats());
+    }
+
+    @GetMapping("/recent")
+    public ResponseEntity<Map<String, Object>> recentStats() {
+        return ResponseEntity.ok(recentUrls.stats());
+    }
+
+    @GetMapping("/sqlite")
+    public ResponseEntity<Map<String, Object>> sqliteStats() {
+        return ResponseEntity.ok(writeQueue.stats());
+    }
+
+    @GetMapping("/compaction")
+    public ResponseEntity<Map<String, Object>> compactionStats() {
+        return ResponseEntity.ok(compaction.stats());
+    }
 
+    @GetMapping("/fingerprints")
+    public ResponseEntity<Map<String, Object>> fingerprintStats() {
+        return ResponseEntity.ok(fingerprintBackfill.stats());
+    }
+
+    @GetMapping("/redirect-tokens")
+    public ResponseEntity<Map<String, Object>> redirectTokenStats() {
+        return ResponseEntity.ok(redirectTokens.stats());
+    }
+}
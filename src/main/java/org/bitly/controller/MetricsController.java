@@ -0,0 +1,29 @@
+package org.bitly.controller;
+
+import org.bitly.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+// Prometheus scrape target. Unauthenticated like /health: keep it off the public network.
+@RestController
+public class MetricsController {
+
+    // Text exposition format 0.0.4
+    private static final MediaType PROMETHEUS_TEXT = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @GetMapping("/metrics")
+    public ResponseEntity<String> scrape() throws IOException {
+        StringWriter out = new StringWriter();
+        metrics.writePrometheus(out);
+        return ResponseEntity.ok().contentType(PROMETHEUS_TEXT).body(out.toString());
+    }
+}
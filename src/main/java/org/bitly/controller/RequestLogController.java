@@ -0,0 +1,68 @@
+package org.bitly.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bitly.repository.SegmentedRequestLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Abuse investigations over the segmented request log. Client IPs and user agents: admin token only (AdminInterceptor).
+@RestController
+@RequestMapping("/internal/request-logs")
+public class RequestLogController {
+
+    private static final int MAX_LIMIT = 100_000;
+
+    @Autowired
+    private SegmentedRequestLog segmentedRequestLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // One JSON object per line, streamed straight from the segments; from/to are epoch millis
+    @GetMapping(produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> stream(@RequestParam(required = false) Long from,
+                                                        @RequestParam(required = false) Long to,
+                                                        @RequestParam(defaultValue = "10000") int limit) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3_600_000;
+        int max = Math.max(0, Math.min(limit, MAX_LIMIT));
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            segmentedRequestLog.read(start, end, max, entry -> {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("timestamp", entry.timestampMillis());
+                line.put("method", entry.method());
+                line.put("url", entry.url());
+                line.put("userAgent", entry.userAgent());
+                line.put("ip", entry.ip());
+                try {
+                    out.write(objectMapper.writeValueAsBytes(line));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    @GetMapping("/segments")
+    public ResponseEntity<Map<String, Object>> segments() {
+        return ResponseEntity.ok(segmentedRequestLog.stats());
+    }
+}
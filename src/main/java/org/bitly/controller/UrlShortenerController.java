@@ -1,31 +1,43 @@
 package org.bitly.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
-import org.bitly.entity.RecentShortenedUrl;
 import org.bitly.entity.UrlMapping;
 import org.bitly.entity.User;
-import org.bitly.repository.UrlRepository;
-import org.bitly.repository.UserRepository;
+import org.bitly.repository.UrlBatchRepository.RecentUrl;
+import org.bitly.repository.UrlBatchRepository.UrlRow;
+import org.bitly.service.ApiKeyPrincipalService;
 import org.bitly.service.RecentShortenedUrlService;
+import org.bitly.service.RedirectTokenService;
 import org.bitly.service.UrlShortenerService;
 import org.bitly.util.NUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/urls")
@@ -35,20 +47,26 @@ public class UrlShortenerController {
     private UrlShortenerService urlShortenerService;
 
     @Autowired
-    private RecentShortenedUrlService service;
+    private RecentShortenedUrlService recentUrls;
 
     @Autowired
-    private UserRepository userRepository;
+    private ApiKeyPrincipalService principals;
 
     @Autowired
-    private UrlRepository urlRepository;
+    private RedirectTokenService redirectTokens;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     private static final Logger logger = LoggerFactory.getLogger(UrlShortenerController.class);
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_PAGE_SIZE = 1000;
+
 
     @PostMapping("/shorten")
     public ResponseEntity<Map<String, String>> shortenUrl(@RequestBody Map<String, String> request,
-                                                          @RequestHeader("X-API-KEY") String apiKey) {
+                                                          @RequestAttribute("authenticatedUser") User user) {
         String originalUrl = request.get("url");
         String customCode = request.get("customCode"); // Optional
         String expiryDateStr = request.get("expiryDate"); // Optional
@@ -64,7 +82,7 @@ public class UrlShortenerController {
         }
 
         try {
-            String shortCode = urlShortenerService.shortenUrl(originalUrl, apiKey, customCode, expiryDate, password);
+            String shortCode = urlShortenerService.shortenUrl(originalUrl, user, customCode, expiryDate, password);
             return ResponseEntity.ok(Map.of("shortCode", shortCode));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -74,7 +92,6 @@ public class UrlShortenerController {
 
     @PostMapping("/shorten/batch")
     public ResponseEntity<Object> shortenUrls(
-            @RequestHeader("X-API-KEY") String apiKey,
             @RequestBody Map<String, List<Map<String, String>>> request, HttpServletRequest httpRequest) {
 
         List<Map<String, String>> urlRequests = request.get("urls");
@@ -84,16 +101,23 @@ public class UrlShortenerController {
         }
 
         List<Map<String, String>> shortenedUrls = urlShortenerService.shortenUrls(urlRequests, httpRequest);
+
+        Object rowsPerSecond = httpRequest.getAttribute(UrlShortenerService.BATCH_THROUGHPUT_ATTRIBUTE);
+        if (rowsPerSecond != null) {
+            return ResponseEntity.ok()
+                    .header("X-Batch-Rows-Per-Second", String.valueOf(Math.round((double) rowsPerSecond)))
+                    .body(shortenedUrls);
+        }
         return ResponseEntity.ok(shortenedUrls);
     }
 
     @PutMapping("/shorten/{shortCode}/expiry")
     public ResponseEntity<String> updateExpiry(@PathVariable String shortCode,
-                                               @RequestParam String apiKey,
+                                               @RequestAttribute("authenticatedUser") User user,
                                                @RequestParam String expiryDate) {
         try {
             LocalDateTime newExpiryDate = LocalDateTime.parse(expiryDate);
-            urlShortenerService.updateExpiry(shortCode, apiKey, newExpiryDate);
+            urlShortenerService.updateExpiry(shortCode, user, newExpiryDate);
             return ResponseEntity.ok("Expiry date updated successfully.");
         } catch (DateTimeParseException e) {
             return ResponseEntity.status(400).body("Invalid expiry date format.");
@@ -107,7 +131,9 @@ public class UrlShortenerController {
 
     @GetMapping("/redirect")
     public ResponseEntity<Object> redirectToOriginalUrl(@RequestParam String code,
-                                                        @RequestParam(required = false) String password) {
+                                                        @RequestParam(required = false) String password,
+                                                        @RequestHeader(name = RedirectTokenService.HEADER, required = false) String token,
+                                                        HttpServletRequest request) {
         Optional<UrlMapping> urlMappingOpt = urlShortenerService.getUrlMapping(code);
 
         if (urlMappingOpt.isEmpty()) {
@@ -117,8 +143,10 @@ public class UrlShortenerController {
 
         UrlMapping urlMapping = urlMappingOpt.get();
 
-        // Check if a password is required
-        if (urlMapping.getPassword() != null) {
+        // Check if a password is required; a token from an earlier successful check skips BCrypt
+        ResponseEntity.BodyBuilder redirect = ResponseEntity.status(302);
+        if (urlMapping.getPassword() != null
+                && !redirectTokens.verify(code, urlMapping.getPassword(), token != null ? token : tokenCookie(request, code))) {
             if (password == null || password.isBlank()) {
                 return ResponseEntity.status(401).body("Password required for this short code");
             }
@@ -126,24 +154,50 @@ public class UrlShortenerController {
             if (!NUtil.verifyPassword(password, urlMapping.getPassword())) {
                 return ResponseEntity.status(401).body("Invalid password");
             }
+
+            if (redirectTokens.isEnabled()) {
+                String issued = redirectTokens.issue(code, urlMapping.getPassword());
+                redirect.header(RedirectTokenService.HEADER, issued)
+                        .header(HttpHeaders.SET_COOKIE, ResponseCookie.from(RedirectTokenService.cookieName(code), issued)
+                                .path(request.getRequestURI())
+                                .maxAge(redirectTokens.getTtlSeconds())
+                                .httpOnly(true)
+                                .secure(request.isSecure())
+                                .sameSite("Lax")
+                                .build().toString());
+            }
         }
 
         // Update analytics (click count + last accessed time)
         urlShortenerService.incrementClick(code);
         logger.info("Redirecting short code {} to {}", code, urlMapping.getOriginalUrl());
 
-        return ResponseEntity.status(302).location(URI.create(urlMapping.getOriginalUrl())).build();
+        return redirect.location(URI.create(urlMapping.getOriginalUrl())).build();
 
     }
 
 
+    private static String tokenCookie(HttpServletRequest request, String code) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            String name = RedirectTokenService.cookieName(code);
+            for (Cookie cookie : cookies) {
+                if (name.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+
     @DeleteMapping("delete/{shortCode}")
     public ResponseEntity<Map<String, String>> deleteShortCode(
             @PathVariable String shortCode,
-            @RequestHeader("X-API-KEY") String apiKey,
+            @RequestAttribute("authenticatedUser") User user,
             @RequestParam(required = false) String password) {
 
-        boolean deleted = urlShortenerService.deleteUrl(shortCode, apiKey, password);
+        boolean deleted = urlShortenerService.deleteUrl(shortCode, user, password);
 
         if (deleted) {
             return ResponseEntity.ok(Map.of("message", "Short code deleted successfully"));
@@ -154,15 +208,36 @@ public class UrlShortenerController {
     }
 
 
+    // Opt-in: shortening a URL the caller already shortened (without custom code, expiry or password) returns that code
+    @PutMapping("/settings/reuse-existing-codes")
+    public ResponseEntity<Map<String, Object>> setReuseExistingCodes(@RequestParam boolean enabled,
+                                                                     @RequestAttribute("authenticatedUser") User user) {
+        User updated = principals.updateReuseExistingCodes(user.getApiKey(), enabled);
+        return ResponseEntity.ok(Map.of("reuseExistingCodes", updated.isReuseExistingCodes()));
+    }
+
+
+    // Served from memory, newest first
     @GetMapping("/recent")
-    public List<RecentShortenedUrl> getRecentUrls() {
-        return service.getRecentUrls();
+    public List<RecentUrl> getRecentUrls(@RequestParam(defaultValue = "10") int limit) {
+        return recentUrls.getRecentUrls(limit);
     }
 
+    @GetMapping("/user/recent")
+    public ResponseEntity<Object> getRecentUserUrls(@RequestParam(defaultValue = "10") int limit,
+                                                    @RequestAttribute(name = "authenticatedUser", required = false) User user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Invalid API Key"));
+        }
+        return ResponseEntity.ok(recentUrls.getRecentUrls(user.getId(), limit));
+    }
 
+
+    // window: hour, day or all (default)
     @GetMapping("/top-clicked")
-    public ResponseEntity<List<Map<String, Object>>> getTopClickedUrls() {
-        return ResponseEntity.ok(urlShortenerService.getTop10MostClickedUrls());
+    public ResponseEntity<List<Map<String, Object>>> getTopClickedUrls(@RequestParam(defaultValue = "all") String window) {
+        return ResponseEntity.ok(urlShortenerService.getTopClickedUrls(window));
     }
 
     @GetMapping("/top-shortened")
@@ -171,36 +246,94 @@ public class UrlShortenerController {
     }
 
 
+    // Without limit the whole list is streamed (a JSON array, or NDJSON with format=ndjson) in constant memory.
+    // With limit one page is returned, and X-Next-Cursor carries the cursor for the next one while rows remain.
     @GetMapping("/all")
-    public ResponseEntity<List<UrlMapping>> getAllUrls() {
-        List<UrlMapping> urls = urlShortenerService.getAllUrls();
-        return ResponseEntity.ok(urls);
+    public ResponseEntity<StreamingResponseBody> getAllUrls(@RequestParam(required = false) Long cursor,
+                                                            @RequestParam(defaultValue = "json") String format) {
+        return streamUrls(null, cursor, format, row -> row);
+    }
+
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<List<Object>> getAllUrlsPage(@RequestParam(required = false) Long cursor,
+                                                       @RequestParam int limit) {
+        return urlPage(null, cursor, limit, row -> row);
     }
 
     @GetMapping("/user")
-    public ResponseEntity<Object> getAllUrls(@RequestHeader("X-API-KEY") String apiKey) {
-        Optional<User> userOpt = userRepository.findByApiKey(apiKey);
+    public ResponseEntity<StreamingResponseBody> getAllUrls(@RequestParam(required = false) Long cursor,
+                                                            @RequestParam(defaultValue = "json") String format,
+                                                            @RequestAttribute(name = "authenticatedUser", required = false) User user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON)
+                    .body(outputStream -> objectMapper.writeValue(outputStream, Map.of("error", "Invalid API Key")));
+        }
+        return streamUrls(user.getId(), cursor, format, UrlShortenerController::userView);
+    }
 
-        if (userOpt.isEmpty()) {
+    @GetMapping(value = "/user", params = "limit")
+    public ResponseEntity<?> getAllUrlsPage(@RequestParam(required = false) Long cursor,
+                                            @RequestParam int limit,
+                                            @RequestAttribute(name = "authenticatedUser", required = false) User user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", "Invalid API Key"));
         }
+        return urlPage(user.getId(), cursor, limit, UrlShortenerController::userView);
+    }
 
-        List<UrlMapping> urls = urlRepository.findByUserIdAndIsDeletedFalse(userOpt.get().getId());
-
-        List<Map<String, Object>> response = urls.stream()
-                .map(url -> Map.<String, Object>of(  // Explicit type declaration
-                        "shortCode", url.getShortCode(),
-                        "originalUrl", url.getOriginalUrl(),
-                        "expiryDate", url.getExpiryDate() != null ? url.getExpiryDate().toString() : "Never",
-                        "clicks", url.getClickCount(),
-                        "passwordProtected", url.getPassword() != null  // Ensure type consistency
-                ))
-                .toList();
+    private static Object userView(UrlRow url) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("shortCode", url.shortCode());
+        view.put("originalUrl", url.originalUrl());
+        view.put("expiryDate", url.expiryDate() != null ? url.expiryDate().toString() : "Never");
+        view.put("clicks", url.clickCount());
+        view.put("passwordProtected", url.passwordProtected());
+        return view;
+    }
 
-        return ResponseEntity.ok(response);
+    private ResponseEntity<List<Object>> urlPage(Long userId, Long cursor, int limit, Function<UrlRow, Object> view) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells whether there is a next page
+        List<UrlRow> rows = urlShortenerService.getUrlPage(userId, cursor != null ? cursor : 0, pageSize + 1);
+        List<UrlRow> page = rows.subList(0, Math.min(pageSize, rows.size()));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (rows.size() > pageSize) {
+            response.header(NEXT_CURSOR_HEADER, Long.toString(page.get(page.size() - 1).id()));
+        }
+        return response.body(page.stream().map(view).toList());
     }
 
+    private ResponseEntity<StreamingResponseBody> streamUrls(Long userId, Long cursor, String format, Function<UrlRow, Object> view) {
+        long afterId = cursor != null ? cursor : 0;
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        // No flush per row: the generator and the servlet buffers decide when bytes go out
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                if (!ndjson) {
+                    generator.writeStartArray();
+                }
+                urlShortenerService.forEachUrl(userId, afterId, row -> {
+                    try {
+                        writer.writeValue(generator, view.apply(row));
+                        if (ndjson) {
+                            generator.writeRaw('\n');
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.parseMediaType("application/x-ndjson") : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
 
     @GetMapping("/hello")
     public String index() {
@@ -6,7 +6,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "url_shortener")
+@Table(name = "url_shortener",
+        indexes = {
+                @Index(name = "idx_url_shortener_user_id", columnList = "user_id, id"), // keyset pages of /user
+                @Index(name = "idx_url_shortener_fingerprint", columnList = "url_fingerprint, user_id") // dedup lookups
+        })
 public class UrlMapping {
 
     @Id
@@ -48,6 +52,10 @@ public class UrlMapping {
     @Column(nullable = true)
     private String password;
 
+    // UrlNormalizer.fingerprint64 of originalUrl; null until the backfill reaches rows written before the column
+    @Column(name = "url_fingerprint")
+    private Long urlFingerprint;
+
     public UrlMapping() {}
 
     public UrlMapping(String shortCode, String originalUrl, Long id, LocalDateTime expiryDate,  String password) {
@@ -111,5 +119,12 @@ public class UrlMapping {
     public String getPassword() {
         return password;
     }
-}
 
+    public Long getUrlFingerprint() {
+        return urlFingerprint;
+    }
+
+    public void setUrlFingerprint(Long urlFingerprint) {
+        this.urlFingerprint = urlFingerprint;
+    }
+}
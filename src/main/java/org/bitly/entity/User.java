@@ -26,6 +26,14 @@ public class User {
     @Column(nullable = false)
     private String tier = "hobby"; // Default tier
 
+    // Opt-in: shortening a URL this user already shortened returns the existing code. Null (not set) means off.
+    @Column(name = "reuse_existing_codes")
+    private Boolean reuseExistingCodes;
+
+    // Set through the admin API; blocked keys get 403 on every node. Null (not set) means not blocked.
+    @Column(name = "blocked")
+    private Boolean blocked;
+
     public Long getId() {
         return id;
     }
@@ -73,5 +81,20 @@ public class User {
     public void setTier(String tier) {
         this.tier = tier;
     }
-}
 
+    public boolean isReuseExistingCodes() {
+        return Boolean.TRUE.equals(reuseExistingCodes);
+    }
+
+    public void setReuseExistingCodes(boolean reuseExistingCodes) {
+        this.reuseExistingCodes = reuseExistingCodes;
+    }
+
+    public boolean isBlocked() {
+        return Boolean.TRUE.equals(blocked);
+    }
+
+    public void setBlocked(boolean blocked) {
+        this.blocked = blocked;
+    }
+}
@@ -0,0 +1,41 @@
+package org.bitly.interceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Operator-only endpoints under /internal: the X-Admin-Token header must match admin.token.
+// Without a configured token every /internal request is refused, so they are off by default.
+@Component
+public class AdminInterceptor implements HandlerInterceptor {
+
+    public static final String HEADER = "X-Admin-Token";
+
+    private final byte[] token;
+
+    public AdminInterceptor(@Value("${admin.token:}") String token) {
+        this.token = token == null ? new byte[0] : token.trim().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (token.length == 0) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Admin endpoints are disabled");
+            return false;
+        }
+
+        String presented = request.getHeader(HEADER);
+        // Constant-time comparison, so response timing does not reveal how much of the token matched
+        if (presented == null || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Admin token is required");
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -3,9 +3,7 @@ package org.bitly.interceptor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.bitly.entity.User;
-import org.bitly.repository.UserRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.bitly.service.ApiKeyPrincipalService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import java.util.Optional;
@@ -13,17 +11,14 @@ import java.util.Optional;
 @Component
 public class AuthenticationInterceptor implements HandlerInterceptor {
 
-    private static final Logger logger = LoggerFactory.getLogger(AuthenticationInterceptor.class);
+    private final ApiKeyPrincipalService principals;
 
-    private final UserRepository userRepository;
-
-    public AuthenticationInterceptor(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public AuthenticationInterceptor(ApiKeyPrincipalService principals) {
+        this.principals = principals;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        request.setAttribute("startTime-AuthenticationInterceptor", System.currentTimeMillis());
         String apiKey = request.getHeader("X-API-KEY");
 
         if (apiKey == null || apiKey.isBlank()) {
@@ -31,7 +26,8 @@ public class AuthenticationInterceptor implements HandlerInterceptor {
             return false;
         }
 
-        Optional<User> userOptional = userRepository.findByApiKey(apiKey);
+        // The only API key lookup of the request; controllers and services take the resolved user
+        Optional<User> userOptional = principals.resolve(apiKey);
 
         if (userOptional.isEmpty()) {
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid API Key");
@@ -42,12 +38,5 @@ public class AuthenticationInterceptor implements HandlerInterceptor {
         request.setAttribute("authenticatedUser", userOptional.get());
         return true;  // Continue to the next middleware or controller
     }
-
-    @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        long startTime = (long) request.getAttribute("startTime-AuthenticationInterceptor");
-        long duration = System.currentTimeMillis() - startTime;
-        logger.info("AuthenticationInterceptor took {} ms", duration);
-    }
 }
 
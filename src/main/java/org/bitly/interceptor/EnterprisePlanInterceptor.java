@@ -3,9 +3,7 @@ package org.bitly.interceptor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.bitly.entity.User;
-import org.bitly.repository.UserRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.bitly.service.ApiKeyPrincipalService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import java.util.Optional;
@@ -13,17 +11,14 @@ import java.util.Optional;
 @Component
 public class EnterprisePlanInterceptor implements HandlerInterceptor {
 
-    private static final Logger logger = LoggerFactory.getLogger(EnterprisePlanInterceptor.class);
+    private final ApiKeyPrincipalService principals;
 
-    private final UserRepository userRepository;
-
-    public EnterprisePlanInterceptor(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public EnterprisePlanInterceptor(ApiKeyPrincipalService principals) {
+        this.principals = principals;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        request.setAttribute("loggingStartTime", System.currentTimeMillis());
         String apiKey = request.getHeader("X-API-KEY");
 
         if (apiKey == null || apiKey.isBlank()) {
@@ -32,7 +27,9 @@ public class EnterprisePlanInterceptor implements HandlerInterceptor {
             return false;
         }
 
-        Optional<User> userOpt = userRepository.findByApiKey(apiKey);
+        // Reuse the user AuthenticationInterceptor resolved, if it ran
+        User authenticated = (User) request.getAttribute("authenticatedUser");
+        Optional<User> userOpt = authenticated != null ? Optional.of(authenticated) : principals.resolve(apiKey);
 
         if (userOpt.isEmpty()) {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -49,12 +46,5 @@ public class EnterprisePlanInterceptor implements HandlerInterceptor {
 
         return true;  // Proceed with the request
     }
-
-    @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        long startTime = (long) request.getAttribute("loggingStartTime");
-        long duration = System.currentTimeMillis() - startTime;
-        logger.info("EnterprisePlanInterceptor took {} ms", duration);
-    }
 }
 
@@ -2,57 +2,47 @@ package org.bitly.interceptor;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.bitly.entity.RequestLog;
-import org.bitly.repository.RequestLogRepository;
+import org.bitly.service.RequestLogWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
-import java.util.List;
+import java.util.Set;
 
 @Component
 public class LoggingInterceptor implements HandlerInterceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(LoggingInterceptor.class);
 
+    // Only requests for these routes are logged
+    private static final Set<String> MONITORED_ROUTES = Set.of("/api/urls/shorten", "/api/urls/delete");
 
     @Autowired
-    private RequestLogRepository requestLogRepository;
+    private RequestLogWriter requestLogWriter;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
-        request.setAttribute("startTime-LoggingInterceptor", System.currentTimeMillis());
+        long now = System.currentTimeMillis();
         String requestUri = request.getRequestURI();
 
-        // Only log requests for specific routes
-        List<String> monitoredRoutes = List.of("/api/urls/shorten", "/api/urls/delete");
-        if (!monitoredRoutes.contains(requestUri)) {
+        if (!MONITORED_ROUTES.contains(requestUri)) {
             return true; // Skip logging for other routes
         }
 
         String userAgent = request.getHeader("User-Agent");
         String ip = request.getRemoteAddr();
         String method = request.getMethod();
-        LocalDateTime timestamp = LocalDateTime.now();
 
-        logger.info("Request - Time: {}, Method: {}, URL: {}, IP: {}, User-Agent: {}",
-                timestamp, method, requestUri, ip, userAgent);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Request - Time: {}, Method: {}, URL: {}, IP: {}, User-Agent: {}",
+                    now, method, requestUri, ip, userAgent);
+        }
 
-        // Save to database
-        RequestLog log = new RequestLog(timestamp, method, requestUri, userAgent, ip);
-        requestLogRepository.save(log);
+        // Written to request_logs in batches by the writer thread
+        requestLogWriter.enqueue(now, method, requestUri, userAgent, ip);
 
         return true; // Continue the request
     }
-
-    @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        long startTime = (long) request.getAttribute("startTime-LoggingInterceptor");
-        long duration = System.currentTimeMillis() - startTime;
-        logger.info("LoggingInterceptor took {} ms", duration);
-    }
 }
-
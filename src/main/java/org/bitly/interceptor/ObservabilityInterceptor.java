@@ -1,40 +1,62 @@
 package org.bitly.interceptor;
 
 import io.sentry.Sentry;
+import io.sentry.SentryLevel;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.bitly.metrics.MetricsRegistry;
+import org.bitly.metrics.RequestTimeline;
+import org.bitly.metrics.RequestTimelineFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Records request latency per route and status class; Sentry only hears about exceptions and a sample of slow requests
 @Component
 public class ObservabilityInterceptor implements HandlerInterceptor {
-    private static final Logger logger = LoggerFactory.getLogger(ObservabilityInterceptor.class);
 
-    @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
-        request.setAttribute("startTime", System.currentTimeMillis());
-        logger.info("Incoming request: {} {}", request.getMethod(), request.getRequestURI());
-        return true;
+    private final MetricsRegistry metrics;
+    private final long slowRequestNanos;
+    private final double slowRequestSampleRate;
+
+    public ObservabilityInterceptor(MetricsRegistry metrics,
+                                    @Value("${observability.slow-request-ms:1000}") long slowRequestMillis,
+                                    @Value("${observability.slow-request-sample-rate:0.1}") double slowRequestSampleRate) {
+        this.metrics = metrics;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+        this.slowRequestSampleRate = slowRequestSampleRate;
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        long startTime = (Long) request.getAttribute("startTime");
-        long duration = System.currentTimeMillis() - startTime;
-
-        logger.info("Completed request: {} {} | Status: {} | Time: {}ms",
-                request.getMethod(), request.getRequestURI(), response.getStatus(), duration);
+        // Measured from when RequestTimelineFilter took the request
+        if (!(request.getAttribute(RequestTimelineFilter.ATTRIBUTE) instanceof RequestTimeline timeline)) {
+            return;
+        }
+        long nanos = timeline.elapsedNanos();
+        // The pattern, not the URI, so /api/urls/delete/{shortCode} is one series
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern != null ? pattern.toString() : "unmatched";
+        // An exception that escaped the handler is answered by the container with a 500
+        int status = ex != null ? 500 : response.getStatus();
 
-        // Send logs to Sentry
-        Sentry.addBreadcrumb("Request", request.getRequestURI());
-        Sentry.captureMessage("Request completed in " + duration + "ms");
+        metrics.timer("http_server_requests_seconds", "Request latency by route and status class",
+                "method", request.getMethod(), "route", route, "status", status / 100 + "xx").record(nanos);
 
-        // Capture exceptions if any
         if (ex != null) {
             Sentry.captureException(ex);
+        } else if (nanos >= slowRequestNanos && ThreadLocalRandom.current().nextDouble() < slowRequestSampleRate) {
+            Sentry.withScope(scope -> {
+                scope.setTag("route", route);
+                scope.setTag("status", Integer.toString(status));
+                scope.setExtra("durationMs", Long.toString(TimeUnit.NANOSECONDS.toMillis(nanos)));
+                scope.setExtra("timeline", timeline.format(request.getMethod(), route, status, nanos));
+                Sentry.captureMessage("Slow request: " + request.getMethod() + " " + route, SentryLevel.WARNING);
+            });
         }
     }
 }
-
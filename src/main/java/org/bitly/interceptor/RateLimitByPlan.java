@@ -1,38 +0,0 @@
-package org.bitly.interceptor;
-
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-import org.bitly.service.RedisCacheService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
-import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
-
-@Component
-public class RateLimitByPlan implements HandlerInterceptor {
-
-    @Autowired
-    private RedisCacheService redisCacheService;
-
-    @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        String apiKey = request.getHeader("X-API-KEY");
-        if (apiKey == null || apiKey.isEmpty()) {
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-            response.getWriter().write("Missing API key.");
-            return false;
-        }
-
-        String path = request.getRequestURI();
-
-        boolean allowed = redisCacheService.isAllowedByUserPlan(apiKey, path);
-        if (!allowed) {
-            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-            response.getWriter().write("Rate limit exceeded. Try again later.");
-            return false;
-        }
-
-        return true;
-    }
-
-}
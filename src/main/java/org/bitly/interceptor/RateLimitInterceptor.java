@@ -2,43 +2,61 @@ package org.bitly.interceptor;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.bitly.service.RedisCacheService;
+import org.bitly.entity.User;
+import org.bitly.service.LeasedRateLimiter;
+import org.bitly.service.RateLimitService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Map;
+import java.time.Instant;
+import java.util.List;
 
+// Per IP, per API key and per plan limits, all checked in one Redis call;
+// in "leased" mode the redirect is admitted from node-local quota leased from Redis instead
 @Component
 public class RateLimitInterceptor implements HandlerInterceptor {
 
     @Autowired
-    private RedisCacheService redisCacheService;
+    private RateLimitService rateLimitService;
 
-    private final Map<String, Integer> rateLimits = Map.of(
-            "/shorten", 10,
-            "/redirect", 50
-    );
+    @Autowired
+    private LeasedRateLimiter leasedRateLimiter;
+
+    @Value("${ratelimit.redirect.mode:leased}")
+    private String redirectMode;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
             throws Exception {
 
         String ip = request.getRemoteAddr();
-        String uri = request.getRequestURI();
-
-        // Match only exact endpoints
-        int limit = rateLimits.getOrDefault(uri, 100); // default fallback if needed
+        String path = request.getRequestURI();
+        String apiKey = request.getHeader("X-API-KEY");
+        // Set by AuthenticationInterceptor, which runs first
+        User user = (User) request.getAttribute("authenticatedUser");
+
+        List<RateLimitService.Rule> rules = rateLimitService.rulesFor(ip, path, apiKey, user != null ? user.getTier() : null);
+        RateLimitService.Decision decision = "/api/urls/redirect".equals(path) && "leased".equalsIgnoreCase(redirectMode)
+                ? leasedRateLimiter.check(rules)
+                : rateLimitService.check(rules);
+
+        if (decision.rule() != null) {
+            long resetTimestamp = Instant.now().plusMillis(decision.resetMillis()).getEpochSecond();
+            response.setHeader("X-RateLimit-Limit", String.valueOf(decision.rule().limit()));
+            response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+            response.setHeader("X-RateLimit-Reset", String.valueOf(resetTimestamp));
+        }
 
-        boolean allowed = redisCacheService.isAllowed(ip, uri, limit);
-        if (!allowed) {
+        if (!decision.allowed()) {
+            response.setHeader("Retry-After", String.valueOf((decision.retryAfterMillis() + 999) / 1000));
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
-            response.getWriter().write("Rate limit exceeded. Try again later.");
+            response.getWriter().write("Rate limit exceeded (" + decision.rule().name() + "). Try again later.");
             return false;
         }
 
         return true;
     }
 }
-
@@ -1,32 +0,0 @@
-package org.bitly.interceptor;
-
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
-
-@Component
-public class ResponseTimeInterceptor implements HandlerInterceptor {
-
-    private static final String START_TIME_ATTR = "startTime";
-
-    @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
-        // Store start time
-        request.setAttribute(START_TIME_ATTR, System.currentTimeMillis());
-        return true;  // Continue processing the request
-    }
-
-    @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        // Get start time
-        Long startTime = (Long) request.getAttribute(START_TIME_ATTR);
-        if (startTime != null) {
-            long elapsedTime = System.currentTimeMillis() - startTime;
-
-            // Add response time as a header
-            response.addHeader("X-Response-Time", elapsedTime + "ms");
-        }
-    }
-}
-
@@ -0,0 +1,86 @@
+package org.bitly.interceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bitly.metrics.RequestTimeline;
+import org.bitly.metrics.RequestTimelineFilter;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+// Records the preHandle of the wrapped interceptor as a span of the request timeline
+public class TimedInterceptor implements AsyncHandlerInterceptor {
+
+    private final String stage;
+    private final HandlerInterceptor delegate;
+
+    public TimedInterceptor(String stage, HandlerInterceptor delegate) {
+        this.stage = stage;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        int span = RequestTimeline.begin(stage);
+        try {
+            return delegate.preHandle(request, response, handler);
+        } finally {
+            RequestTimeline.end(span);
+        }
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) throws Exception {
+        delegate.postHandle(request, response, handler, modelAndView);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) throws Exception {
+        delegate.afterCompletion(request, response, handler, ex);
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) throws Exception {
+        if (delegate instanceof AsyncHandlerInterceptor async) {
+            async.afterConcurrentHandlingStarted(request, response, handler);
+        }
+    }
+
+    /**
+     * The controller's span: registered last, it opens when the handler is about to run and closes in postHandle
+     * (or afterCompletion, if the handler threw).
+     */
+    public static final class Handler implements AsyncHandlerInterceptor {
+
+        private static final String SPAN_ATTRIBUTE = Handler.class.getName() + ".span";
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            if (request.getAttribute(RequestTimelineFilter.ATTRIBUTE) instanceof RequestTimeline timeline) {
+                request.setAttribute(SPAN_ATTRIBUTE, timeline.open("handler"));
+            }
+            return true;
+        }
+
+        @Override
+        public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                               ModelAndView modelAndView) {
+            close(request);
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            close(request);
+        }
+
+        private static void close(HttpServletRequest request) {
+            if (request.getAttribute(RequestTimelineFilter.ATTRIBUTE) instanceof RequestTimeline timeline
+                    && request.getAttribute(SPAN_ATTRIBUTE) instanceof Integer span) {
+                timeline.close(span);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.bitly.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PostConstruct;
+import org.bitly.config.SqliteDataSourceConfig.ReadOnlyAfterStartupDataSource;
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.service.ApiKeyPrincipalService;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.RedisCacheService;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Registers the cache and pool numbers the services already keep (the same ones behind {@code /health/*}),
+ * read when {@code /metrics} is scraped.
+ */
+@Component
+public class ApplicationMetrics {
+
+    private final MetricsRegistry registry;
+    private final LocalUrlCacheService localUrlCache;
+    private final ApiKeyPrincipalService principals;
+    private final RedisCacheService redisCacheService;
+    private final ReadOnlyAfterStartupDataSource dataSource;
+    private final SqliteWriteQueue writeQueue;
+
+    public ApplicationMetrics(MetricsRegistry registry,
+                              LocalUrlCacheService localUrlCache,
+                              ApiKeyPrincipalService principals,
+                              RedisCacheService redisCacheService,
+                              ReadOnlyAfterStartupDataSource dataSource,
+                              SqliteWriteQueue writeQueue) {
+        this.registry = registry;
+        this.localUrlCache = localUrlCache;
+        this.principals = principals;
+        this.redisCacheService = redisCacheService;
+        this.dataSource = dataSource;
+        this.writeQueue = writeQueue;
+    }
+
+    @PostConstruct
+    public void register() {
+        String hits = "cache_hits_total";
+        String hitsHelp = "Cache lookups answered from the cache";
+        String misses = "cache_misses_total";
+        String missesHelp = "Cache lookups that went to the next tier";
+        registry.counter(hits, hitsHelp, stat(localUrlCache::stats, "hits"), "cache", "local_url");
+        registry.counter(misses, missesHelp, stat(localUrlCache::stats, "misses"), "cache", "local_url");
+        registry.counter("cache_negative_hits_total", "Cache hits on a remembered not-found",
+                stat(localUrlCache::stats, "negativeHits"), "cache", "local_url");
+        registry.counter(hits, hitsHelp, stat(principals::stats, "hits"), "cache", "principal");
+        registry.counter(misses, missesHelp, stat(principals::stats, "misses"), "cache", "principal");
+        registry.counter(hits, hitsHelp, stat(redisCacheService::recordCacheStats, "hits"), "cache", "redis_record");
+        registry.counter(misses, missesHelp, stat(redisCacheService::recordCacheStats, "misses"), "cache", "redis_record");
+        registry.counter("cache_errors_total", "Cache lookups that failed",
+                stat(redisCacheService::recordCacheStats, "errors"), "cache", "redis_record");
+
+        registry.gauge("redis_pool_active_connections", "Redis connections borrowed", stat(redisCacheService::poolStats, "active"));
+        registry.gauge("redis_pool_idle_connections", "Redis connections idle in the pool", stat(redisCacheService::poolStats, "idle"));
+        registry.gauge("redis_pool_waiting_threads", "Threads waiting for a Redis connection", stat(redisCacheService::poolStats, "waiters"));
+        registry.gauge("redis_pool_max_connections", "Redis pool size limit", stat(redisCacheService::poolStats, "maxTotal"));
+
+        registry.gauge("db_pool_active_connections", "SQLite read connections borrowed", readPool(HikariPoolMXBean::getActiveConnections));
+        registry.gauge("db_pool_idle_connections", "SQLite read connections idle in the pool", readPool(HikariPoolMXBean::getIdleConnections));
+        registry.gauge("db_pool_waiting_threads", "Threads waiting for a SQLite read connection", readPool(HikariPoolMXBean::getThreadsAwaitingConnection));
+        registry.gauge("db_writer_queued_operations", "Writes waiting for the SQLite writer thread", writeQueue::queued);
+    }
+
+    private static DoubleSupplier stat(Supplier<Map<String, Object>> stats, String key) {
+        return () -> ((Number) stats.get().get(key)).doubleValue();
+    }
+
+    // NaN until Hikari has started the pool
+    private DoubleSupplier readPool(ToIntFunction<HikariPoolMXBean> value) {
+        return () -> {
+            if (dataSource.getTargetDataSource() instanceof HikariDataSource hikari && hikari.getHikariPoolMXBean() != null) {
+                return value.applyAsInt(hikari.getHikariPoolMXBean());
+            }
+            return Double.NaN;
+        };
+    }
+}
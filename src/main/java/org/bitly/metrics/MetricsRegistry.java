@@ -0,0 +1,165 @@
+package org.bitly.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * In-process metrics, written out in the Prometheus text format by {@link #writePrometheus(Writer)}.
+ * <p>
+ * Three kinds of series, each identified by a name and label pairs ({@code "route", "/api/urls/redirect", ...}):
+ * latency summaries backed by an HdrHistogram (1% precision, up to one minute), counters, and values read at
+ * scrape time from the component that already keeps them (a cache's hit count, a pool's active connections),
+ * so nothing is counted twice. Recording is lock-free; formatting only happens when scraped.
+ */
+@Component
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private enum Type {
+        SUMMARY("summary"), COUNTER("counter"), GAUGE("gauge");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private record Family(String name, String help, Type type, Map<String, Object> series) {}
+
+    // Latency in microseconds; values above a minute are recorded as a minute
+    public static final class Timer {
+
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 2);
+        private final LongAdder totalNanos = new LongAdder();
+
+        public void record(long nanos) {
+            long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            histogram.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+            totalNanos.add(nanos);
+        }
+
+        public long count() {
+            return histogram.getTotalCount();
+        }
+
+        public double quantileSeconds(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100) / 1e6;
+        }
+    }
+
+    // Sorted by name so the scrape output is stable
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Timer timer(String name, String help, String... labels) {
+        return (Timer) series(name, help, Type.SUMMARY, labels, Timer::new);
+    }
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) series(name, help, Type.COUNTER, labels, LongAdder::new);
+    }
+
+    // A running total kept elsewhere, e.g. a Caffeine hit count
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.COUNTER).series().put(labels(labels), value);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series().put(labels(labels), value);
+    }
+
+    private Object series(String name, String help, Type type, String[] labels, Supplier<Object> factory) {
+        return family(name, help, type).series().computeIfAbsent(labels(labels), key -> factory.get());
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type, new ConcurrentHashMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type().text);
+        }
+        return family;
+    }
+
+    // {a="1",b="2"}, or "" without labels
+    static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs: " + Arrays.toString(pairs));
+        }
+        if (pairs.length == 0) {
+            return "";
+        }
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Adds one more label to an existing label set
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            out.write("# HELP " + family.name() + " " + family.help() + "\n");
+            out.write("# TYPE " + family.name() + " " + family.type().text + "\n");
+            List<Map.Entry<String, Object>> series = family.series().entrySet().stream().sorted(Map.Entry.comparingByKey()).toList();
+            for (Map.Entry<String, Object> entry : series) {
+                String labels = entry.getKey();
+                Object value = entry.getValue();
+                if (value instanceof Timer timer) {
+                    for (double quantile : QUANTILES) {
+                        sample(out, family.name(), withLabel(labels, "quantile", Double.toString(quantile)), timer.quantileSeconds(quantile));
+                    }
+                    sample(out, family.name() + "_sum", labels, timer.totalNanos.sum() / 1e9);
+                    sample(out, family.name() + "_count", labels, timer.count());
+                } else if (value instanceof LongAdder counter) {
+                    sample(out, family.name(), labels, counter.sum());
+                } else if (value instanceof DoubleSupplier supplier) {
+                    double current;
+                    try {
+                        current = supplier.getAsDouble();
+                    } catch (RuntimeException e) {
+                        continue; // the source is unavailable (e.g. Redis down): leave the series out of this scrape
+                    }
+                    sample(out, family.name(), labels, current);
+                }
+            }
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        out.write(labels);
+        out.write(' ');
+        out.write(value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value));
+        out.write('\n');
+    }
+}
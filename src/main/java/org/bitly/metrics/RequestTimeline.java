@@ -0,0 +1,181 @@
+package org.bitly.metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of one request went: {@code System.nanoTime()} spans per stage (each interceptor, the handler,
+ * Redis, the database), in preallocated arrays so recording allocates nothing.
+ * <p>
+ * {@link RequestTimelineFilter} takes a timeline from a {@link Pool} when the request arrives and binds it to the
+ * request thread, so code that has no access to the request calls the static {@link #begin(String)} and
+ * {@link #end(int)}; both are no-ops when no timeline is bound. Stage names are expected to be constants.
+ * Spans past {@link #CAPACITY} are counted and dropped.
+ */
+public final class RequestTimeline {
+
+    public static final int CAPACITY = 32;
+
+    private static final ThreadLocal<RequestTimeline> CURRENT = new ThreadLocal<>();
+
+    private final String[] stages = new String[CAPACITY];
+    private final long[] starts = new long[CAPACITY];
+    private final long[] ends = new long[CAPACITY];
+    private final StringBuilder line = new StringBuilder(512);
+    private int size;
+    private int dropped;
+    private long startNanos;
+
+    RequestTimeline() {
+    }
+
+    void start(long nanos) {
+        startNanos = nanos;
+    }
+
+    public long startNanos() {
+        return startNanos;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String stage(int index) {
+        return stages[index];
+    }
+
+    public long durationNanos(int index) {
+        return ends[index] == 0 ? -1 : ends[index] - starts[index];
+    }
+
+    // Index of the new span, or -1 when the timeline is full
+    public int open(String stage) {
+        if (size == CAPACITY) {
+            dropped++;
+            return -1;
+        }
+        stages[size] = stage;
+        starts[size] = System.nanoTime();
+        ends[size] = 0;
+        return size++;
+    }
+
+    // Idempotent, so a span may be closed on both the normal and the error path
+    public void close(int index) {
+        if (index >= 0 && index < size && ends[index] == 0) {
+            ends[index] = System.nanoTime();
+        }
+    }
+
+    public static RequestTimeline current() {
+        return CURRENT.get();
+    }
+
+    static void bind(RequestTimeline timeline) {
+        if (timeline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timeline);
+        }
+    }
+
+    // Opens a span on the current request's timeline; pass the result to end(int)
+    public static int begin(String stage) {
+        RequestTimeline timeline = CURRENT.get();
+        return timeline != null ? timeline.open(stage) : -1;
+    }
+
+    public static void end(int span) {
+        if (span >= 0) {
+            RequestTimeline timeline = CURRENT.get();
+            if (timeline != null) {
+                timeline.close(span);
+            }
+        }
+    }
+
+    // One line, spans in start order as stage=offset+duration in microseconds (duration "?" if never closed)
+    public String format(String method, String route, int status, long totalNanos) {
+        line.setLength(0);
+        line.append("request_timeline method=").append(method)
+                .append(" route=").append(route)
+                .append(" status=").append(status)
+                .append(" total_us=").append(TimeUnit.NANOSECONDS.toMicros(totalNanos))
+                .append(" spans=");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(stages[i]).append('=').append(TimeUnit.NANOSECONDS.toMicros(starts[i] - startNanos)).append('+');
+            if (ends[i] == 0) {
+                line.append('?');
+            } else {
+                line.append(TimeUnit.NANOSECONDS.toMicros(ends[i] - starts[i]));
+            }
+        }
+        if (dropped > 0) {
+            line.append(" dropped=").append(dropped);
+        }
+        return line.toString();
+    }
+
+    void reset() {
+        // Stage names are constants, so stale references in the arrays keep nothing alive
+        size = 0;
+        dropped = 0;
+        startNanos = 0;
+    }
+
+    /**
+     * Fixed set of timelines allocated up front. When every one is in use (more requests in flight than the
+     * pool size) a fresh timeline is handed out and discarded afterwards, so the pool never blocks a request.
+     */
+    public static final class Pool {
+
+        private final BlockingQueue<RequestTimeline> free;
+        private final LongAdder borrowed = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+
+        public Pool(int size) {
+            this.free = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                free.add(new RequestTimeline());
+            }
+        }
+
+        public RequestTimeline acquire(long startNanos) {
+            borrowed.increment();
+            RequestTimeline timeline = free.poll();
+            if (timeline == null) {
+                exhausted.increment();
+                timeline = new RequestTimeline();
+            }
+            timeline.start(startNanos);
+            return timeline;
+        }
+
+        public void release(RequestTimeline timeline) {
+            timeline.reset();
+            free.offer(timeline);
+        }
+
+        public int available() {
+            return free.size();
+        }
+
+        public long borrowed() {
+            return borrowed.sum();
+        }
+
+        public long exhausted() {
+            return exhausted.sum();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.bitly.metrics;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outermost filter: owns the {@link RequestTimeline} of each request. Sets {@code X-Response-Time} from it just
+ * before the response is committed, and logs the timeline as one line only when the request took at least
+ * {@code observability.slow-request-ms} or falls in the {@code observability.timeline.sample-rate} sample.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTimelineFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestTimelineFilter.class);
+
+    public static final String ATTRIBUTE = RequestTimeline.class.getName();
+    public static final String RESPONSE_TIME_HEADER = "X-Response-Time";
+
+    private final RequestTimeline.Pool pool;
+    private final long slowRequestNanos;
+    private final double sampleRate;
+
+    public RequestTimelineFilter(MetricsRegistry metrics,
+                                 @Value("${observability.timeline.pool-size:256}") int poolSize,
+                                 @Value("${observability.timeline.sample-rate:0.001}") double sampleRate,
+                                 @Value("${observability.slow-request-ms:1000}") long slowRequestMillis) {
+        this.pool = new RequestTimeline.Pool(poolSize);
+        this.sampleRate = sampleRate;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+        metrics.gauge("request_timeline_pool_available", "Preallocated request timelines not in use", pool::available);
+        metrics.counter("request_timeline_pool_exhausted_total", "Requests that found the timeline pool empty", pool::exhausted);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestTimeline timeline = pool.acquire(System.nanoTime());
+        request.setAttribute(ATTRIBUTE, timeline);
+        RequestTimeline.bind(timeline);
+        ResponseTimeWrapper wrapper = new ResponseTimeWrapper(response, timeline);
+        boolean async = false;
+        try {
+            chain.doFilter(request, wrapper);
+            async = request.isAsyncStarted();
+            if (!async) {
+                wrapper.stamp(); // nothing was written, e.g. an empty 200
+            } else {
+                // Streaming responses finish on another thread; the timeline stays checked out until then
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        finish(request, response, timeline);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            }
+        } finally {
+            RequestTimeline.bind(null);
+            if (!async) {
+                finish(request, response, timeline);
+            }
+        }
+    }
+
+    private void finish(HttpServletRequest request, HttpServletResponse response, RequestTimeline timeline) {
+        long totalNanos = timeline.elapsedNanos();
+        try {
+            if (totalNanos >= slowRequestNanos || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                logger.info(timeline.format(request.getMethod(), pattern != null ? pattern.toString() : request.getRequestURI(),
+                        response.getStatus(), totalNanos));
+            }
+        } finally {
+            request.removeAttribute(ATTRIBUTE);
+            pool.release(timeline);
+        }
+    }
+
+    // "1.234ms"
+    static String formatMillis(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        long fraction = micros % 1000;
+        return (micros / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".") + fraction + "ms";
+    }
+
+    // Stamps X-Response-Time on whatever commits the response first; headers set after that are ignored
+    private static final class ResponseTimeWrapper extends HttpServletResponseWrapper {
+
+        private final RequestTimeline timeline;
+        private boolean stamped;
+
+        ResponseTimeWrapper(HttpServletResponse response, RequestTimeline timeline) {
+            super(response);
+            this.timeline = timeline;
+        }
+
+        private void stamp() {
+            if (!stamped && !isCommitted()) {
+                stamped = true;
+                setHeader(RESPONSE_TIME_HEADER, formatMillis(timeline.elapsedNanos()));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            stamp();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            stamp();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            stamp();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            stamp();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            stamp();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            stamp();
+            super.sendRedirect(location);
+        }
+    }
+}
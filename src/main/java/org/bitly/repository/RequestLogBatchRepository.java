@@ -0,0 +1,46 @@
+package org.bitly.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+// Multi-row inserts into request_logs for the asynchronous request-log writer (requestlog.sink=sqlite)
+@Repository
+public class RequestLogBatchRepository implements RequestLogSink {
+
+    // 5 parameters per row; keeps a statement well under SQLite's bound-parameter limit
+    private static final int ROWS_PER_STATEMENT = 100;
+
+    @Autowired
+    private SqliteWriteQueue writeQueue;
+
+    // One write-queue operation for the whole batch, so it commits or fails as a unit
+    @Override
+    public void append(List<LogEntry> entries) {
+        writeQueue.execute(jdbc -> {
+            insert(jdbc, entries);
+            return null;
+        });
+    }
+
+    private static void insert(JdbcTemplate jdbcTemplate, List<LogEntry> entries) {
+        for (int from = 0; from < entries.size(); from += ROWS_PER_STATEMENT) {
+            List<LogEntry> chunk = entries.subList(from, Math.min(from + ROWS_PER_STATEMENT, entries.size()));
+            Object[] args = new Object[chunk.size() * 5];
+            int i = 0;
+            for (LogEntry entry : chunk) {
+                args[i++] = new Timestamp(entry.timestampMillis());
+                args[i++] = entry.method();
+                args[i++] = entry.url();
+                args[i++] = entry.userAgent();
+                args[i++] = entry.ip();
+            }
+            jdbcTemplate.update("INSERT INTO request_logs (timestamp, method, url, user_agent, ip) VALUES "
+                    + String.join(",", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?)")), args);
+        }
+    }
+}
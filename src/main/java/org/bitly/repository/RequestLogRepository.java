@@ -1,10 +0,0 @@
-package org.bitly.repository;
-
-import org.bitly.entity.RequestLog;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
-
-@Repository
-public interface RequestLogRepository extends JpaRepository<RequestLog, Long> {
-}
-
@@ -0,0 +1,11 @@
+package org.bitly.repository;
+
+import java.util.List;
+
+// Where the request-log writer puts its batches: request_logs in SQLite, or segment files (requestlog.sink)
+public interface RequestLogSink {
+
+    record LogEntry(long timestampMillis, String method, String url, String userAgent, String ip) {}
+
+    void append(List<LogEntry> entries);
+}
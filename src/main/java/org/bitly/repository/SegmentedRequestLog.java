@@ -0,0 +1,410 @@
+package org.bitly.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary request log in memory-mapped segment files, kept out of the SQLite database
+ * ({@code requestlog.sink=segments}).
+ * <p>
+ * A segment ({@code requests-<first timestamp>.seg}) is a header followed by records
+ * {@code [int length][int crc32][long timestamp][method][url][user agent][ip]}, each string a u16 length
+ * and UTF-8 bytes. A zero length marks the end. Once the next record would not fit in
+ * {@code requestlog.segments.segment-bytes} the segment is truncated to its data and a new one started.
+ * <p>
+ * Each segment has a sparse time index ({@code .idx}): every {@code requestlog.segments.index-interval-bytes}
+ * an entry {@code (max timestamp before offset, offset)}, so a range read seeks straight to the first
+ * record that can match and only pages in what it scans. Segments older than
+ * {@code requestlog.segments.retention-hours} are deleted.
+ */
+@Repository
+public class SegmentedRequestLog implements RequestLogSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedRequestLog.class);
+
+    private static final int MAGIC = 0x524C4F47; // "RLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8; // length + crc
+    private static final int INDEX_ENTRY_BYTES = 12;
+    private static final int MAX_FIELD_BYTES = 4096;
+    private static final int NULL_FIELD = 0xFFFF;
+    // Entries are appended in enqueue order, which can trail their timestamps by a few ms
+    private static final long ORDER_SLACK_MILLIS = 5_000;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int indexIntervalBytes;
+    private final long retentionMillis;
+
+    // Every segment by its first timestamp; the last one is the active segment
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile ActiveSegment active;
+
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+    private final AtomicLong deletedSegments = new AtomicLong();
+
+    public SegmentedRequestLog(@Value("${requestlog.sink:sqlite}") String sink,
+                               @Value("${requestlog.segments.dir:request-logs}") String directory,
+                               @Value("${requestlog.segments.segment-bytes:67108864}") int segmentBytes,
+                               @Value("${requestlog.segments.index-interval-bytes:4096}") int indexIntervalBytes,
+                               @Value("${requestlog.segments.retention-hours:168}") long retentionHours) {
+        this.enabled = "segments".equalsIgnoreCase(sink.trim());
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+    }
+
+    private record Segment(long startMillis, Path log, Path index) {}
+
+    // The segment being written: only the writer thread appends, readers see up to `published`
+    private final class ActiveSegment {
+        final Segment segment;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final FileChannel indexChannel;
+        // Index entries {max timestamp before offset, offset}; at most one per index interval, plus the seal
+        final long[] indexTimestamps = new long[segmentBytes / indexIntervalBytes + 2];
+        final int[] indexOffsets = new int[indexTimestamps.length];
+        int indexSize;
+        final CRC32 crc = new CRC32();
+        int position = HEADER_BYTES;
+        int lastIndexed = -1;
+        long maxTimestamp = Long.MIN_VALUE;
+        volatile int published = HEADER_BYTES;
+        volatile int indexPublished;
+
+        ActiveSegment(Segment segment) throws IOException {
+            this.segment = segment;
+            this.channel = FileChannel.open(segment.log(), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            this.indexChannel = FileChannel.open(segment.index(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        }
+
+        boolean fits(int recordBytes) {
+            return position + recordBytes + 4 <= segmentBytes; // keep room for the end marker
+        }
+
+        void write(LogEntry entry, byte[][] fields, int bodyBytes) {
+            if (lastIndexed < 0 || position - lastIndexed >= indexIntervalBytes) {
+                addIndexEntry();
+                lastIndexed = position;
+            }
+            int body = position + RECORD_HEADER_BYTES;
+            buffer.putLong(body, entry.timestampMillis());
+            int at = body + 8;
+            for (byte[] field : fields) {
+                if (field == null) {
+                    buffer.putShort(at, (short) NULL_FIELD);
+                    at += 2;
+                } else {
+                    buffer.putShort(at, (short) field.length);
+                    buffer.put(at + 2, field);
+                    at += 2 + field.length;
+                }
+            }
+            crc.reset();
+            crc.update(buffer.slice(body, bodyBytes));
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putInt(position, bodyBytes); // length last: a torn record reads as the end
+            position += RECORD_HEADER_BYTES + bodyBytes;
+            maxTimestamp = Math.max(maxTimestamp, entry.timestampMillis());
+        }
+
+        void addIndexEntry() {
+            indexTimestamps[indexSize] = maxTimestamp;
+            indexOffsets[indexSize] = position;
+            indexSize++;
+        }
+
+        // Makes the batch visible to readers and appends the new index entries to the .idx file
+        void publish() throws IOException {
+            ByteBuffer entries = ByteBuffer.allocate((indexSize - indexPublished) * INDEX_ENTRY_BYTES);
+            for (int i = indexPublished; i < indexSize; i++) {
+                entries.putLong(indexTimestamps[i]).putInt(indexOffsets[i]);
+            }
+            entries.flip();
+            while (entries.hasRemaining()) {
+                indexChannel.write(entries);
+            }
+            indexPublished = indexSize;
+            published = position;
+        }
+
+        // Final index entry covers the whole segment; the file is cut down to its data
+        void seal() throws IOException {
+            addIndexEntry();
+            publish();
+            buffer.force();
+            indexChannel.force(true);
+            indexChannel.close();
+            channel.truncate(position + 4L);
+            channel.close();
+        }
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("requests-") && name.endsWith(".seg"))
+                    .forEach(name -> {
+                        long start = Long.parseLong(name.substring("requests-".length(), name.length() - ".seg".length()));
+                        segments.put(start, segment(start));
+                    });
+        }
+        logger.info("Request log segments in {}: {} existing", directory.toAbsolutePath(), segments.size());
+    }
+
+    private Segment segment(long startMillis) {
+        String name = String.format("requests-%013d", startMillis);
+        return new Segment(startMillis, directory.resolve(name + ".seg"), directory.resolve(name + ".idx"));
+    }
+
+    // Writer thread only
+    @Override
+    public synchronized void append(List<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            for (LogEntry entry : entries) {
+                byte[][] fields = {encode(entry.method()), encode(entry.url()), encode(entry.userAgent()), encode(entry.ip())};
+                int bodyBytes = 8;
+                for (byte[] field : fields) {
+                    bodyBytes += 2 + (field != null ? field.length : 0);
+                }
+                if (active == null || !active.fits(RECORD_HEADER_BYTES + bodyBytes)) {
+                    rotate(entry.timestampMillis());
+                }
+                active.write(entry, fields, bodyBytes);
+            }
+            active.publish();
+            appendedRecords.addAndGet(entries.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to request log segment", e);
+        }
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_FIELD_BYTES ? bytes : Arrays.copyOf(bytes, MAX_FIELD_BYTES);
+    }
+
+    private void rotate(long firstTimestamp) throws IOException {
+        if (active != null) {
+            active.seal();
+            rotations.incrementAndGet();
+        }
+        // Segment names must be unique and ordered even if two start in the same millisecond
+        long start = segments.isEmpty() ? firstTimestamp : Math.max(firstTimestamp, segments.lastKey() + 1);
+        Segment segment = segment(start);
+        active = new ActiveSegment(segment);
+        segments.put(start, segment);
+    }
+
+    /**
+     * Streams the records with from <= timestamp <= to, in append order, to the consumer, stopping after
+     * limit records. Returns how many were streamed.
+     */
+    public int read(long fromMillis, long toMillis, int limit, Consumer<LogEntry> consumer) {
+        int streamed = 0;
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            Long next = segments.higherKey(entry.getKey());
+            if (segment.startMillis() - ORDER_SLACK_MILLIS > toMillis
+                    || (next != null && next + ORDER_SLACK_MILLIS < fromMillis)) {
+                continue;
+            }
+            if (streamed >= limit) {
+                break;
+            }
+            try {
+                streamed += readSegment(segment, fromMillis, toMillis, limit - streamed, consumer);
+            } catch (NoSuchFileException e) {
+                // Deleted by retention while we were reading
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read request log segment " + segment.log(), e);
+            }
+        }
+        return streamed;
+    }
+
+    private int readSegment(Segment segment, long fromMillis, long toMillis, int limit, Consumer<LogEntry> consumer)
+            throws IOException {
+        ActiveSegment current = active;
+        ByteBuffer data;
+        long[] indexTimestamps;
+        int[] indexOffsets;
+        int indexSize;
+        int end;
+        if (current != null && current.segment.equals(segment)) {
+            end = current.published; // volatile reads before the arrays and the data
+            indexSize = current.indexPublished;
+            indexTimestamps = current.indexTimestamps;
+            indexOffsets = current.indexOffsets;
+            data = current.buffer.duplicate();
+        } else {
+            try (FileChannel channel = FileChannel.open(segment.log(), StandardOpenOption.READ)) {
+                end = (int) channel.size();
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, end); // paged in only where we read
+            }
+            ByteBuffer index = ByteBuffer.wrap(Files.exists(segment.index()) ? Files.readAllBytes(segment.index()) : new byte[0]);
+            indexSize = index.remaining() / INDEX_ENTRY_BYTES;
+            indexTimestamps = new long[indexSize];
+            indexOffsets = new int[indexSize];
+            for (int i = 0; i < indexSize; i++) {
+                indexTimestamps[i] = index.getLong();
+                indexOffsets[i] = index.getInt();
+            }
+        }
+        if (end < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            return 0;
+        }
+
+        int position = seek(indexTimestamps, indexOffsets, indexSize, fromMillis, end);
+        long stopAfter = toMillis > Long.MAX_VALUE - ORDER_SLACK_MILLIS ? Long.MAX_VALUE : toMillis + ORDER_SLACK_MILLIS;
+        int streamed = 0;
+        CRC32 crc = new CRC32();
+        while (streamed < limit && position + RECORD_HEADER_BYTES <= end) {
+            int bodyBytes = data.getInt(position);
+            int body = position + RECORD_HEADER_BYTES;
+            if (bodyBytes <= 0 || body + bodyBytes > end) {
+                break; // end of data, or a record torn by a crash
+            }
+            crc.reset();
+            crc.update(data.slice(body, bodyBytes));
+            if ((int) crc.getValue() != data.getInt(position + 4)) {
+                logger.warn("Corrupt request log record in {} at offset {}", segment.log(), position);
+                break;
+            }
+            long timestamp = data.getLong(body);
+            if (timestamp > stopAfter) {
+                break;
+            }
+            if (timestamp >= fromMillis && timestamp <= toMillis) {
+                int at = body + 8;
+                String[] fields = new String[4];
+                for (int i = 0; i < fields.length; i++) {
+                    int length = Short.toUnsignedInt(data.getShort(at));
+                    at += 2;
+                    if (length != NULL_FIELD) {
+                        byte[] bytes = new byte[length];
+                        data.get(at, bytes);
+                        fields[i] = new String(bytes, StandardCharsets.UTF_8);
+                        at += length;
+                    }
+                }
+                consumer.accept(new LogEntry(timestamp, fields[0], fields[1], fields[2], fields[3]));
+                streamed++;
+            }
+            position = body + bodyBytes;
+        }
+        return streamed;
+    }
+
+    // Last index entry (within the published data) whose earlier records are all before fromMillis
+    private static int seek(long[] timestamps, int[] offsets, int size, long fromMillis, int end) {
+        int position = HEADER_BYTES;
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < fromMillis && offsets[mid] <= end) {
+                position = offsets[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return position;
+    }
+
+    // A segment is expired once the one after it started before the cutoff: all its records are older
+    @Scheduled(fixedDelayString = "${requestlog.segments.retention-check-ms:600000}")
+    public void deleteExpired() {
+        if (!enabled) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Long next = segments.higherKey(entry.getKey());
+            if (next == null || next >= cutoff) {
+                break;
+            }
+            Segment segment = entry.getValue();
+            try {
+                Files.deleteIfExists(segment.log());
+                Files.deleteIfExists(segment.index());
+                segments.remove(entry.getKey());
+                deletedSegments.incrementAndGet();
+                logger.info("Deleted expired request log segment {}", segment.log().getFileName());
+            } catch (IOException e) {
+                logger.warn("Could not delete request log segment {}: {}", segment.log(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (active != null) {
+            try {
+                active.seal();
+            } catch (IOException e) {
+                logger.warn("Could not seal request log segment: {}", e.getMessage());
+            }
+            active = null;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        ActiveSegment current = active;
+        return Map.of(
+                "enabled", enabled,
+                "segments", segments.size(),
+                "activeSegment", current != null ? current.segment.log().getFileName().toString() : "",
+                "activeBytes", current != null ? current.published : 0,
+                "appendedRecords", appendedRecords.get(),
+                "rotations", rotations.get(),
+                "deletedSegments", deletedSegments.get()
+        );
+    }
+}
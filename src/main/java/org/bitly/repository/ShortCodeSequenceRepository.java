@@ -0,0 +1,33 @@
+package org.bitly.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+// Block-reserved id ranges shared by every app node that points at the same database
+@Repository
+public class ShortCodeSequenceRepository {
+
+    @Autowired
+    private SqliteWriteQueue writeQueue;
+
+    @PostConstruct
+    public void createTable() {
+        writeQueue.execute(jdbc -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS short_code_sequence (" +
+                    "name TEXT PRIMARY KEY, next_value INTEGER NOT NULL)");
+            return null;
+        });
+    }
+
+    // Returns the first id of a freshly reserved block [start, start + blockSize)
+    public long reserveBlock(String name, long blockSize) {
+        // The writer's BEGIN IMMEDIATE holds SQLite's write lock, so no other node can reserve in between
+        return writeQueue.execute(jdbc -> {
+            jdbc.update("INSERT OR IGNORE INTO short_code_sequence (name, next_value) VALUES (?, 0)", name);
+            jdbc.update("UPDATE short_code_sequence SET next_value = next_value + ? WHERE name = ?", blockSize, name);
+            Long end = jdbc.queryForObject("SELECT next_value FROM short_code_sequence WHERE name = ?", Long.class, name);
+            return end - blockSize;
+        });
+    }
+}
@@ -0,0 +1,272 @@
+package org.bitly.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bitly.config.SqliteDataSourceConfig;
+import org.bitly.metrics.RequestTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Repository;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The only connection that writes to SQLite.
+ * <p>
+ * Every mutation is submitted here as a function of a {@link JdbcTemplate} and runs on one writer thread.
+ * The thread takes whatever is queued (up to {@code sqlite.writer.max-batch} operations) and runs it in one
+ * {@code BEGIN IMMEDIATE ... COMMIT}, each operation inside its own savepoint so a failing one is rolled back
+ * alone. Futures complete after the commit, so waiting on one means the write is in the database.
+ * <p>
+ * The connection runs in WAL mode, so readers on the read pool never block it or each other; with
+ * {@code sqlite.synchronous=NORMAL} a committed write survives an application crash but not a power loss
+ * (use FULL for that).
+ */
+@Repository
+public class SqliteWriteQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqliteWriteQueue.class);
+
+    private record Pending<T>(Function<JdbcTemplate, T> operation, CompletableFuture<T> future) {
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+    private final SQLiteDataSource dataSource;
+    private final int maxBatch;
+    private final long offerTimeoutMillis;
+    private final BlockingQueue<Pending<?>> queue;
+
+    private Connection connection;
+    private JdbcTemplate jdbcTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong failedOperations = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private volatile int largestBatch;
+
+    @Autowired
+    public SqliteWriteQueue(@Value("${spring.datasource.url}") String url,
+                            @Value("${sqlite.busy-timeout-ms:5000}") int busyTimeoutMillis,
+                            @Value("${sqlite.cache-size-kib:16384}") int cacheSizeKib,
+                            @Value("${sqlite.mmap-size-bytes:268435456}") long mmapSizeBytes,
+                            @Value("${sqlite.synchronous:NORMAL}") String synchronous,
+                            @Value("${sqlite.writer.max-batch:256}") int maxBatch,
+                            @Value("${sqlite.writer.queue-capacity:10000}") int queueCapacity,
+                            @Value("${sqlite.writer.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+        SQLiteConfig config = SqliteDataSourceConfig.connectionConfig(busyTimeoutMillis, cacheSizeKib, mmapSizeBytes);
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.trim().toUpperCase()));
+        this.dataSource = new SQLiteDataSource(config);
+        this.dataSource.setUrl(url);
+        this.maxBatch = maxBatch;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    // Opening the connection switches the database to WAL, so this runs before the read pool opens
+    @PostConstruct
+    public void start() throws SQLException {
+        connect();
+        running = true;
+        writer = new Thread(this::run, "sqlite-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void connect() throws SQLException {
+        connection = dataSource.getConnection();
+        jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+    }
+
+    public <T> CompletableFuture<T> submit(Function<JdbcTemplate, T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (Thread.currentThread() == writer) {
+            // Submitted from inside another operation: it is already in the open transaction
+            try {
+                future.complete(operation.apply(jdbcTemplate));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        try {
+            if (!running || !queue.offer(new Pending<>(operation, future), offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                future.completeExceptionally(new IllegalStateException("SQLite write queue is full"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // Submits and waits for the commit
+    public <T> T execute(Function<JdbcTemplate, T> operation) {
+        return await(submit(operation));
+    }
+
+    // Waits for a submitted write and rethrows its own exception rather than a CompletionException
+    public static <T> T await(CompletableFuture<T> future) {
+        // On a request thread, the wait for the commit shows up in its timeline
+        int span = RequestTimeline.begin("db.write");
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            RequestTimeline.end(span);
+        }
+    }
+
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("SQLite writer failed: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending<?>> batch) {
+        long start = System.nanoTime();
+        Object[] results = new Object[batch.size()];
+        RuntimeException[] failures = new RuntimeException[batch.size()];
+        try {
+            if (connection == null || connection.isClosed()) {
+                connect();
+            }
+            exec("BEGIN IMMEDIATE");
+            for (int i = 0; i < batch.size(); i++) {
+                exec("SAVEPOINT op");
+                try {
+                    results[i] = batch.get(i).operation().apply(jdbcTemplate);
+                    exec("RELEASE op");
+                } catch (RuntimeException e) {
+                    exec("ROLLBACK TO op");
+                    exec("RELEASE op");
+                    failures[i] = e;
+                }
+            }
+            exec("COMMIT");
+        } catch (SQLException e) {
+            rollbackQuietly();
+            failedCommits.incrementAndGet();
+            logger.warn("SQLite group commit of {} writes failed: {}", batch.size(), e.getMessage());
+            for (Pending<?> pending : batch) {
+                pending.future().completeExceptionally(new IllegalStateException("SQLite write failed: " + e.getMessage(), e));
+            }
+            failedOperations.addAndGet(batch.size());
+            return;
+        }
+
+        commits.incrementAndGet();
+        commitNanos.addAndGet(System.nanoTime() - start);
+        operations.addAndGet(batch.size());
+        largestBatch = Math.max(largestBatch, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] != null) {
+                failedOperations.incrementAndGet();
+                batch.get(i).future().completeExceptionally(failures[i]);
+            } else {
+                batch.get(i).complete(results[i]);
+            }
+        }
+    }
+
+    private void exec(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            exec("ROLLBACK");
+        } catch (SQLException | RuntimeException ignored) {
+            // No transaction was open, or the connection is gone and is reopened on the next batch
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not close SQLite writer connection: {}", e.getMessage());
+        }
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    public Map<String, Object> stats() {
+        long commitCount = commits.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queued());
+        stats.put("operations", operations.get());
+        stats.put("failedOperations", failedOperations.get());
+        stats.put("commits", commitCount);
+        stats.put("failedCommits", failedCommits.get());
+        stats.put("rejected", rejected.get());
+        stats.put("averageBatch", commitCount == 0 ? 0.0 : (double) operations.get() / commitCount);
+        stats.put("largestBatch", largestBatch);
+        stats.put("averageCommitMicros", commitCount == 0 ? 0 : commitNanos.get() / commitCount / 1000);
+        return stats;
+    }
+}
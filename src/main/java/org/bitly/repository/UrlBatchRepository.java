@@ -0,0 +1,341 @@
+package org.bitly.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.bitly.entity.UrlMapping;
+import org.bitly.util.UrlNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Plain JDBC for bulk reads and writes against url_shortener that JPA would otherwise do one entity at a time
+@Repository
+public class UrlBatchRepository {
+
+    public record ClickDelta(String shortCode, long clicks, long lastAccessedAt) {}
+
+    public record UrlSummary(String shortCode, String originalUrl, long clickCount, LocalDateTime lastAccessedAt) {}
+
+    public record RecentUrl(String shortCode, String originalUrl, LocalDateTime createdAt) {}
+
+    public record UrlRow(long id, String shortCode, String originalUrl, LocalDateTime createdAt, long clickCount,
+                         LocalDateTime lastAccessedAt, Long userId, boolean deleted, LocalDateTime expiryDate,
+                         boolean passwordProtected) {}
+
+    public record FingerprintMatch(String shortCode, String originalUrl) {}
+
+    public record ArchivedUrl(String shortCode, Long userId, boolean deleted) {}
+
+    // One compaction step over the ids (fromId, toId]; scanned is 0 once the checkpoint has passed the last row
+    public record ArchivedChunk(long fromId, long toId, int scanned, List<ArchivedUrl> archived) {}
+
+    private static final String ARCHIVED_COLUMNS = "id, short_code, original_url, created_at, click_count, " +
+            "last_accessed_at, user_id, is_deleted, expiry_date, password";
+
+    // Keeps each IN (...) well under SQLite's bound-parameter limit
+    private static final int IN_CLAUSE_CHUNK = 500;
+
+    // Reads; every write below goes through the write queue
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SqliteWriteQueue writeQueue;
+
+    // Archived rows keep their short code reserved, so a link that was handed out never points somewhere else
+    @PostConstruct
+    public void createArchiveTables() {
+        writeQueue.execute(jdbc -> {
+            jdbc.execute("CREATE TABLE IF NOT EXISTS url_shortener_archive (" +
+                    "short_code TEXT PRIMARY KEY, id INTEGER NOT NULL, original_url TEXT NOT NULL, created_at TIMESTAMP, " +
+                    "click_count INTEGER, last_accessed_at TIMESTAMP, user_id INTEGER, is_deleted BOOLEAN, " +
+                    "expiry_date DATETIME, password VARCHAR(255), archived_at TIMESTAMP NOT NULL)");
+            jdbc.execute("CREATE TABLE IF NOT EXISTS compaction_checkpoint (" +
+                    "name TEXT PRIMARY KEY, last_id INTEGER NOT NULL, updated_at TIMESTAMP NOT NULL)");
+            return null;
+        });
+    }
+
+    // Waits for the commit: the click buffer only drops deltas once they are in the table
+    public void addClicks(List<ClickDelta> deltas) {
+        writeQueue.execute(jdbc -> jdbc.batchUpdate(
+                "UPDATE url_shortener SET click_count = click_count + ?, last_accessed_at = ? WHERE short_code = ?",
+                deltas, deltas.size(), (ps, delta) -> {
+                    ps.setLong(1, delta.clicks());
+                    ps.setTimestamp(2, new Timestamp(delta.lastAccessedAt()));
+                    ps.setString(3, delta.shortCode());
+                }));
+    }
+
+    public CompletableFuture<Boolean> updateExpiry(String shortCode, LocalDateTime expiryDate) {
+        return writeQueue.submit(jdbc -> jdbc.update("UPDATE url_shortener SET expiry_date = ? WHERE short_code = ?",
+                expiryDate != null ? Timestamp.valueOf(expiryDate) : null, shortCode) > 0);
+    }
+
+    public CompletableFuture<Boolean> softDelete(String shortCode) {
+        return writeQueue.submit(jdbc -> jdbc.update(
+                "UPDATE url_shortener SET is_deleted = 1 WHERE short_code = ?", shortCode) > 0);
+    }
+
+    public CompletableFuture<Boolean> delete(String shortCode) {
+        return writeQueue.submit(jdbc -> jdbc.update("DELETE FROM url_shortener WHERE short_code = ?", shortCode) > 0);
+    }
+
+    // Current totals for the given codes (after a click flush)
+    public Map<String, Long> findClickCounts(Collection<String> shortCodes) {
+        List<String> codes = new ArrayList<>(shortCodes);
+        Map<String, Long> counts = new HashMap<>();
+        for (int from = 0; from < codes.size(); from += IN_CLAUSE_CHUNK) {
+            List<String> chunk = codes.subList(from, Math.min(from + IN_CLAUSE_CHUNK, codes.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT short_code, click_count FROM url_shortener WHERE short_code IN (" + placeholders + ")",
+                    rs -> {
+                        counts.put(rs.getString(1), rs.getLong(2));
+                    }, chunk.toArray());
+        }
+        return counts;
+    }
+
+    // The most clicked codes; a full sort, so only for rebuilding the leaderboard at startup
+    public Map<String, Long> findTopClickCounts(int limit) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT short_code, click_count FROM url_shortener WHERE click_count > 0 " +
+                        "ORDER BY click_count DESC LIMIT ?",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                }, limit);
+        return counts;
+    }
+
+    public Map<String, UrlSummary> findSummaries(Collection<String> shortCodes) {
+        if (shortCodes.isEmpty()) {
+            return Map.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(shortCodes.size(), "?"));
+        Map<String, UrlSummary> summaries = new HashMap<>();
+        jdbcTemplate.query("SELECT short_code, original_url, click_count, last_accessed_at FROM url_shortener " +
+                        "WHERE short_code IN (" + placeholders + ")",
+                rs -> {
+                    Timestamp lastAccessedAt = rs.getTimestamp(4);
+                    summaries.put(rs.getString(1), new UrlSummary(rs.getString(1), rs.getString(2), rs.getLong(3),
+                            lastAccessedAt != null ? lastAccessedAt.toLocalDateTime() : null));
+                }, shortCodes.toArray());
+        return summaries;
+    }
+
+    // Streams live short codes with id > afterId in id order and returns the highest id seen
+    public long forEachShortCodeAfter(long afterId, Consumer<String> consumer) {
+        long[] maxId = {afterId};
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement(
+                    "SELECT id, short_code FROM url_shortener WHERE id > ? AND is_deleted = 0 ORDER BY id");
+            ps.setLong(1, afterId);
+            ps.setFetchSize(1000);
+            return ps;
+        }, rs -> {
+            maxId[0] = Math.max(maxId[0], rs.getLong(1));
+            consumer.accept(rs.getString(2));
+        });
+        return maxId[0];
+    }
+
+    public long maxId() {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM url_shortener", Long.class);
+        return max != null ? max : 0;
+    }
+
+    // The code that row `id` was created with, also once the row is archived; null if no such row
+    public String shortCodeAt(long id) {
+        List<String> codes = jdbcTemplate.queryForList("SELECT short_code FROM url_shortener WHERE id = ? " +
+                "UNION ALL SELECT short_code FROM url_shortener_archive WHERE id = ?", String.class, id, id);
+        return codes.isEmpty() ? null : codes.get(0);
+    }
+
+    // One keyset page in id order: every row, or one user's live rows (idx_url_shortener_user_id), with id > afterId
+    public List<UrlRow> findPage(Long userId, long afterId, int limit) {
+        String sql = "SELECT id, short_code, original_url, created_at, click_count, last_accessed_at, user_id, is_deleted, " +
+                "expiry_date, password IS NOT NULL FROM url_shortener WHERE id > ?" +
+                (userId != null ? " AND user_id = ? AND is_deleted = 0" : "") + " ORDER BY id LIMIT ?";
+        Object[] args = userId != null ? new Object[]{afterId, userId, limit} : new Object[]{afterId, limit};
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new UrlRow(rs.getLong(1), rs.getString(2), rs.getString(3),
+                toLocalDateTime(rs.getTimestamp(4)), rs.getLong(5), toLocalDateTime(rs.getTimestamp(6)),
+                rs.getObject(7) != null ? rs.getLong(7) : null, rs.getBoolean(8), toLocalDateTime(rs.getTimestamp(9)),
+                rs.getBoolean(10)), args);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    // Newest live rows first, for everyone or one user; walks the primary key backwards instead of sorting
+    public List<RecentUrl> findRecent(Long userId, int limit) {
+        String sql = "SELECT short_code, original_url, created_at FROM url_shortener WHERE is_deleted = 0" +
+                (userId != null ? " AND user_id = ?" : "") + " ORDER BY id DESC LIMIT ?";
+        Object[] args = userId != null ? new Object[]{userId, limit} : new Object[]{limit};
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Timestamp createdAt = rs.getTimestamp(3);
+            return new RecentUrl(rs.getString(1), rs.getString(2), createdAt != null ? createdAt.toLocalDateTime() : null);
+        }, args);
+    }
+
+    // Streams every original URL (one pass, for seeding the heavy-hitters sketch)
+    public void forEachOriginalUrl(Consumer<String> consumer) {
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT original_url FROM url_shortener");
+            ps.setFetchSize(1000);
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(1));
+        });
+    }
+
+    // Live links without password or expiry whose URL has this fingerprint, for one user or (userId null) anyone.
+    // An integer lookup on idx_url_shortener_fingerprint; callers compare the URLs to rule out a hash collision.
+    public List<FingerprintMatch> findByFingerprint(long fingerprint, Long userId, int limit) {
+        String sql = "SELECT short_code, original_url FROM url_shortener WHERE url_fingerprint = ?" +
+                (userId != null ? " AND user_id = ?" : "") +
+                " AND is_deleted = 0 AND password IS NULL AND expiry_date IS NULL ORDER BY id LIMIT ?";
+        Object[] args = userId != null ? new Object[]{fingerprint, userId, limit} : new Object[]{fingerprint, limit};
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new FingerprintMatch(rs.getString(1), rs.getString(2)), args);
+    }
+
+    // Rows written before url_fingerprint existed; NULLs are in the fingerprint index, so this does not scan
+    public boolean hasMissingFingerprints() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM url_shortener WHERE url_fingerprint IS NULL)", Boolean.class));
+    }
+
+    // Walks the next limit ids after afterId by primary key, passes on the ones without a fingerprint,
+    // and returns the last id walked (afterId at the end of the table)
+    public long forEachMissingFingerprint(long afterId, int limit, BiConsumer<Long, String> consumer) {
+        long[] lastId = {afterId};
+        jdbcTemplate.query("SELECT id, original_url, url_fingerprint IS NULL FROM url_shortener WHERE id > ? ORDER BY id LIMIT ?",
+                rs -> {
+                    lastId[0] = rs.getLong(1);
+                    if (rs.getBoolean(3)) {
+                        consumer.accept(rs.getLong(1), rs.getString(2));
+                    }
+                }, afterId, limit);
+        return lastId[0];
+    }
+
+    // Returns how many rows were updated (a row archived or filled in meanwhile is skipped)
+    public CompletableFuture<Integer> setFingerprints(Map<Long, Long> fingerprintsById) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(fingerprintsById.entrySet());
+        return writeQueue.submit(jdbc -> {
+            int updated = 0;
+            for (int[] counts : jdbc.batchUpdate(
+                    "UPDATE url_shortener SET url_fingerprint = ? WHERE id = ? AND url_fingerprint IS NULL",
+                    entries, entries.size(), (ps, entry) -> {
+                        ps.setLong(1, entry.getValue());
+                        ps.setLong(2, entry.getKey());
+                    })) {
+                for (int count : counts) {
+                    updated += Math.max(count, 0);
+                }
+            }
+            return updated;
+        });
+    }
+
+    // Which of the given codes already exist. Deleted and archived rows count too: their codes stay reserved.
+    public Set<String> findExistingShortCodes(Collection<String> shortCodes) {
+        List<String> codes = new ArrayList<>(shortCodes);
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < codes.size(); from += IN_CLAUSE_CHUNK) {
+            List<String> chunk = codes.subList(from, Math.min(from + IN_CLAUSE_CHUNK, codes.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            List<Object> args = new ArrayList<>(chunk);
+            args.addAll(chunk);
+            existing.addAll(jdbcTemplate.queryForList(
+                    "SELECT short_code FROM url_shortener WHERE short_code IN (" + placeholders + ") " +
+                            "UNION SELECT short_code FROM url_shortener_archive WHERE short_code IN (" + placeholders + ")",
+                    String.class, args.toArray()));
+        }
+        return existing;
+    }
+
+    // One JDBC batch, committed with whatever else the writer has queued. Rows whose short code is already taken,
+    // in the table or the archive, are skipped and reported as false, so the caller can report or re-allocate them.
+    public CompletableFuture<boolean[]> insertUrls(List<UrlMapping> urls) {
+        return writeQueue.submit(jdbc -> inserted(jdbc.batchUpdate(
+                "INSERT OR IGNORE INTO url_shortener (short_code, original_url, created_at, click_count, " +
+                        "last_accessed_at, user_id, is_deleted, expiry_date, password, url_fingerprint) " +
+                        "SELECT ?, ?, ?, 0, ?, ?, 0, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM url_shortener_archive WHERE short_code = ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        UrlMapping url = urls.get(i);
+                        ps.setString(1, url.getShortCode());
+                        ps.setString(2, url.getOriginalUrl());
+                        ps.setTimestamp(3, Timestamp.valueOf(url.getCreatedAt()));
+                        ps.setTimestamp(4, Timestamp.valueOf(url.getLastAccessedAt()));
+                        ps.setObject(5, url.getUserId(), Types.BIGINT);
+                        ps.setTimestamp(6, url.getExpiryDate() != null ? Timestamp.valueOf(url.getExpiryDate()) : null);
+                        ps.setString(7, url.getPassword());
+                        ps.setLong(8, url.getUrlFingerprint() != null
+                                ? url.getUrlFingerprint() : UrlNormalizer.fingerprint64(url.getOriginalUrl()));
+                        ps.setString(9, url.getShortCode());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return urls.size();
+                    }
+                })));
+    }
+
+    // Moves the dead rows (soft-deleted, or expired before expiredBefore) among the next chunkSize ids after the
+    // named checkpoint into url_shortener_archive and advances the checkpoint. Everything runs as one operation on
+    // the writer, so a row is never in both tables and a restart resumes where the last committed step stopped.
+    // Past the last row the checkpoint goes back to 0 for the next pass.
+    public CompletableFuture<ArchivedChunk> archiveChunk(String checkpoint, int chunkSize, LocalDateTime expiredBefore) {
+        return writeQueue.submit(jdbc -> {
+            Long stored = jdbc.query("SELECT last_id FROM compaction_checkpoint WHERE name = ?",
+                    rs -> rs.next() ? rs.getLong(1) : null, checkpoint);
+            long fromId = stored != null ? stored : 0;
+            Map<String, Object> bounds = jdbc.queryForMap(
+                    "SELECT COUNT(*) AS scanned, MAX(id) AS to_id FROM (SELECT id FROM url_shortener WHERE id > ? ORDER BY id LIMIT ?)",
+                    fromId, chunkSize);
+            int scanned = ((Number) bounds.get("scanned")).intValue();
+            long toId = scanned > 0 ? ((Number) bounds.get("to_id")).longValue() : 0;
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+
+            List<ArchivedUrl> archived = List.of();
+            if (scanned > 0) {
+                // The newest row stays, so a table without AUTOINCREMENT never hands its id out again
+                String dead = " FROM url_shortener WHERE id > ? AND id <= ? AND id < (SELECT MAX(id) FROM url_shortener) " +
+                        "AND (is_deleted = 1 OR expiry_date <= ?)";
+                Object[] args = {fromId, toId, Timestamp.valueOf(expiredBefore)};
+                archived = jdbc.query("SELECT short_code, user_id, is_deleted" + dead, (rs, rowNum) -> new ArchivedUrl(
+                        rs.getString(1), rs.getObject(2) != null ? rs.getLong(2) : null, rs.getBoolean(3)), args);
+                if (!archived.isEmpty()) {
+                    jdbc.update("INSERT OR REPLACE INTO url_shortener_archive (" + ARCHIVED_COLUMNS + ", archived_at) " +
+                            "SELECT " + ARCHIVED_COLUMNS + ", ?" + dead, now, fromId, toId, Timestamp.valueOf(expiredBefore));
+                    jdbc.update("DELETE" + dead, args);
+                }
+            }
+            jdbc.update("INSERT OR REPLACE INTO compaction_checkpoint (name, last_id, updated_at) VALUES (?, ?, ?)",
+                    checkpoint, toId, now);
+            return new ArchivedChunk(fromId, toId, scanned, archived);
+        });
+    }
+
+    private static boolean[] inserted(int[] counts) {
+        boolean[] inserted = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            inserted[i] = counts[i] > 0;
+        }
+        return inserted;
+    }
+}
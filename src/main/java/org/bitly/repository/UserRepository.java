@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserWrites {
     Optional<User> findByApiKey(String apiKey);
 
     boolean existsByApiKey(String apiKey);
@@ -0,0 +1,13 @@
+package org.bitly.repository;
+
+import java.util.concurrent.CompletableFuture;
+
+// Writes to users, mixed into UserRepository and run on the SQLite writer instead of through JPA
+public interface UserWrites {
+
+    CompletableFuture<Boolean> updateTier(Long userId, String tier);
+
+    CompletableFuture<Boolean> updateReuseExistingCodes(Long userId, boolean enabled);
+
+    CompletableFuture<Boolean> updateBlocked(Long userId, boolean blocked);
+}
@@ -0,0 +1,26 @@
+package org.bitly.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.CompletableFuture;
+
+public class UserWritesImpl implements UserWrites {
+
+    @Autowired
+    private SqliteWriteQueue writeQueue;
+
+    @Override
+    public CompletableFuture<Boolean> updateTier(Long userId, String tier) {
+        return writeQueue.submit(jdbc -> jdbc.update("UPDATE users SET tier = ? WHERE id = ?", tier, userId) > 0);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateReuseExistingCodes(Long userId, boolean enabled) {
+        return writeQueue.submit(jdbc -> jdbc.update("UPDATE users SET reuse_existing_codes = ? WHERE id = ?", enabled, userId) > 0);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateBlocked(Long userId, boolean blocked) {
+        return writeQueue.submit(jdbc -> jdbc.update("UPDATE users SET blocked = ? WHERE id = ?", blocked, userId) > 0);
+    }
+}
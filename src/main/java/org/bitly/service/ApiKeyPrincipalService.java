@@ -0,0 +1,192 @@
+package org.bitly.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bitly.entity.User;
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves an API key to its {@link User} once per request, from a bounded in-memory cache in front of
+ * {@code users}. Unknown keys are cached for a shorter time so key guessing does not reach SQLite.
+ * <p>
+ * Anything that changes what a key is allowed to do goes through here (the admin API under
+ * {@code /internal/api-keys} and the user settings endpoints), so the cached principal is dropped on this node and
+ * published on {@code auth.principal-cache.invalidation-channel} for the others: {@link #block(String)},
+ * {@link #unblock(String)}, {@link #updateTier(String, String)} and {@link #updateReuseExistingCodes(String, boolean)}.
+ * Blocks are stored on the user row; keys in {@code blacklist.properties} are blocked on top of that.
+ */
+@Service
+public class ApiKeyPrincipalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyPrincipalService.class);
+
+    private final UserRepository userRepository;
+    private final Cache<String, Optional<User>> principals;
+    private final Set<String> blockedKeys = ConcurrentHashMap.newKeySet();
+    private final RedisInvalidationChannel invalidations;
+
+    public ApiKeyPrincipalService(UserRepository userRepository, long maximumSize, long ttlSeconds, long negativeTtlSeconds) {
+        this(userRepository, null, "", maximumSize, ttlSeconds, negativeTtlSeconds);
+    }
+
+    @Autowired
+    public ApiKeyPrincipalService(UserRepository userRepository,
+                                  @Nullable RedisCacheService redisCacheService,
+                                  @Value("${auth.principal-cache.invalidation-channel:principal-invalidations}") String channel,
+                                  @Value("${auth.principal-cache.maximum-size:10000}") long maximumSize,
+                                  @Value("${auth.principal-cache.ttl-seconds:300}") long ttlSeconds,
+                                  @Value("${auth.principal-cache.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+        this.userRepository = userRepository;
+        long ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        long negativeTtlNanos = Duration.ofSeconds(negativeTtlSeconds).toNanos();
+
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Optional<User>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<User> value, long currentTime) {
+                        if (value.isEmpty()) {
+                            return negativeTtlNanos;
+                        }
+                        // A block or tier change on another node could be missed: keep users only briefly
+                        return !invalidations.isEnabled() || invalidations.isSubscribed() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<User> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<User> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        this.invalidations = new RedisInvalidationChannel(redisCacheService, channel, principals::invalidate, principals::invalidateAll);
+
+        loadBlacklist();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        invalidations.start("principal-cache-invalidations");
+    }
+
+    @PreDestroy
+    public void close() {
+        invalidations.close();
+    }
+
+    // Read as a stream: getFile() does not work once resources are packed inside the jar
+    private void loadBlacklist() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource("blacklist.properties").getInputStream(), StandardCharsets.UTF_8))) {
+            reader.lines()
+                    .filter(line -> line.startsWith("blacklisted.keys="))
+                    .flatMap(line -> List.of(line.substring("blacklisted.keys=".length()).split(",")).stream())
+                    .map(String::trim)
+                    .filter(key -> !key.isEmpty())
+                    .forEach(blockedKeys::add);
+        } catch (IOException e) {
+            logger.warn("Failed to load blacklist file: {}", e.getMessage());
+        }
+    }
+
+    public Optional<User> resolve(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return Optional.empty();
+        }
+        return principals.get(apiKey, userRepository::findByApiKey);
+    }
+
+    // Blacklist file first, then the (cached) user row
+    public boolean isBlocked(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return false;
+        }
+        return blockedKeys.contains(apiKey.trim()) || resolve(apiKey).map(User::isBlocked).orElse(false);
+    }
+
+    public User block(String apiKey) {
+        User user = setBlocked(apiKey, true);
+        logger.info("Blocked API key ending in {}", apiKey.length() > 4 ? apiKey.substring(apiKey.length() - 4) : "****");
+        return user;
+    }
+
+    // Keys listed in blacklist.properties stay blocked until they are removed from the file
+    public User unblock(String apiKey) {
+        User user = setBlocked(apiKey, false);
+        logger.info("Unblocked API key ending in {}", apiKey.length() > 4 ? apiKey.substring(apiKey.length() - 4) : "****");
+        return user;
+    }
+
+    private User setBlocked(String apiKey, boolean blocked) {
+        User user = userRepository.findByApiKey(apiKey)
+                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
+        SqliteWriteQueue.await(userRepository.updateBlocked(user.getId(), blocked));
+        user.setBlocked(blocked);
+        invalidate(apiKey);
+        return user;
+    }
+
+    public User updateTier(String apiKey, String tier) {
+        User user = userRepository.findByApiKey(apiKey)
+                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
+        SqliteWriteQueue.await(userRepository.updateTier(user.getId(), tier));
+        user.setTier(tier);
+        invalidate(apiKey);
+        return user;
+    }
+
+    public User updateReuseExistingCodes(String apiKey, boolean enabled) {
+        User user = userRepository.findByApiKey(apiKey)
+                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
+        SqliteWriteQueue.await(userRepository.updateReuseExistingCodes(user.getId(), enabled));
+        user.setReuseExistingCodes(enabled);
+        invalidate(apiKey);
+        return user;
+    }
+
+    // Drops the cached principal on every node so the next request re-reads the user (e.g. after a direct DB change)
+    public void invalidate(String apiKey) {
+        principals.invalidate(apiKey);
+        invalidations.publish(apiKey);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = principals.stats();
+        Map<String, Object> result = new HashMap<>(invalidations.stats());
+        result.put("size", principals.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("blacklistedKeys", blockedKeys.size());
+        return result;
+    }
+}
@@ -0,0 +1,210 @@
+package org.bitly.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bitly.entity.UrlMapping;
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.util.NUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set-based pipeline behind /api/urls/shorten/batch:
+ * one bulk lookup for all custom codes, bulk code allocation, password hashing on a bounded pool,
+ * then JDBC-batched inserts of {@code batch.insert-chunk-size} rows, group-committed by the SQLite writer.
+ * Results keep the request order and the per-item error format of the row-by-row version.
+ */
+@Service
+public class BatchShortenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchShortenService.class);
+
+    private static final int MAX_ALLOCATION_ATTEMPTS = 10;
+
+    public record BatchResult(List<Map<String, String>> results, double rowsPerSecond) {}
+
+    @Autowired
+    private UrlBatchRepository urlBatchRepository;
+
+    @Autowired
+    private ShortCodeAllocator shortCodeAllocator;
+
+    @Autowired
+    private ShortCodeFilterService shortCodeFilter;
+
+    @Autowired
+    private LocalUrlCacheService localUrlCache;
+
+    @Autowired
+    private HeavyHittersService heavyHitters;
+
+    @Autowired
+    private RecentShortenedUrlService recentUrls;
+
+    @Value("${batch.hash-threads:4}")
+    private int hashThreads;
+
+    @Value("${batch.insert-chunk-size:500}")
+    private int insertChunkSize;
+
+    private ExecutorService hashExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        hashExecutor = Executors.newFixedThreadPool(hashThreads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-hash-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdown();
+    }
+
+    public BatchResult shorten(List<Map<String, String>> urlRequests, Long userId) {
+        long start = System.nanoTime();
+        int size = urlRequests.size();
+        List<Map<String, String>> results = new ArrayList<>(Collections.nCopies(size, null));
+        UrlMapping[] mappings = new UrlMapping[size];
+
+        // 1. Parse, and find every custom code that is repeated in the batch or already taken (one IN query)
+        Set<String> customCodes = new HashSet<>();
+        Set<String> repeatedCodes = new HashSet<>();
+        for (Map<String, String> request : urlRequests) {
+            String customCode = request.get("customCode");
+            if (customCode != null && !customCode.isBlank() && !customCodes.add(customCode)) {
+                repeatedCodes.add(customCode);
+            }
+        }
+        Set<String> takenCodes = customCodes.isEmpty() ? Set.of() : urlBatchRepository.findExistingShortCodes(customCodes);
+
+        Set<String> claimedCodes = new HashSet<>();
+        List<CompletableFuture<Void>> hashing = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Map<String, String> request = urlRequests.get(i);
+            String originalUrl = request.get("originalUrl");
+            String customCode = request.get("customCode");  // Allow custom short code
+            String password = request.get("password");  // Optional password field
+            LocalDateTime expiryDate = request.containsKey("expiry_date") ?
+                    LocalDateTime.parse(request.get("expiry_date")) : null;
+
+            if (originalUrl == null || originalUrl.isBlank()) {
+                results.set(i, Map.of("error", "URL is required"));
+                continue;
+            }
+
+            boolean hasCustomCode = customCode != null && !customCode.isBlank();
+            if (hasCustomCode && (takenCodes.contains(customCode)
+                    || (repeatedCodes.contains(customCode) && !claimedCodes.add(customCode)))) {
+                results.set(i, takenError(originalUrl, customCode));
+                continue; // Skip saving this entry
+            }
+
+            // 2. Allocate codes up front; allocated codes never collide with each other
+            String shortCode = hasCustomCode ? customCode : shortCodeAllocator.nextCode();
+            UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, userId, expiryDate, null);
+            mappings[i] = urlMapping;
+
+            // 3. BCrypt is the expensive part of a row, so hash in parallel on a bounded pool
+            if (password != null && !password.isBlank()) {
+                hashing.add(CompletableFuture.runAsync(
+                        () -> urlMapping.setPassword(NUtil.hashPassword(password)), hashExecutor));
+            }
+        }
+        CompletableFuture.allOf(hashing.toArray(new CompletableFuture<?>[0])).join();
+
+        // 4. JDBC-batched inserts: every chunk is queued before waiting, so the writer can commit them together
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (mappings[i] != null) {
+                pending.add(i);
+            }
+        }
+
+        List<String> savedCodes = new ArrayList<>();
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<Integer> retry = new ArrayList<>();
+            List<List<Integer>> chunks = new ArrayList<>();
+            List<CompletableFuture<boolean[]>> inserts = new ArrayList<>();
+            for (int from = 0; from < pending.size(); from += insertChunkSize) {
+                List<Integer> chunk = pending.subList(from, Math.min(from + insertChunkSize, pending.size()));
+                chunks.add(chunk);
+                inserts.add(urlBatchRepository.insertUrls(chunk.stream().map(i -> mappings[i]).toList()));
+            }
+
+            for (int c = 0; c < chunks.size(); c++) {
+                List<Integer> chunk = chunks.get(c);
+                boolean[] saved = SqliteWriteQueue.await(inserts.get(c));
+
+                for (int j = 0; j < chunk.size(); j++) {
+                    int i = chunk.get(j);
+                    UrlMapping urlMapping = mappings[i];
+                    String customCode = customCodeOf(urlRequests.get(i));
+                    if (saved[j]) {
+                        savedCodes.add(urlMapping.getShortCode());
+                        heavyHitters.record(urlMapping.getOriginalUrl());
+                        recentUrls.record(urlMapping.getShortCode(), urlMapping.getOriginalUrl(), userId, urlMapping.getCreatedAt());
+                        results.set(i, successResult(urlMapping));
+                    } else if (customCode != null) {
+                        // Taken by a concurrent request after the bulk lookup
+                        results.set(i, takenError(urlMapping.getOriginalUrl(), customCode));
+                    } else if (attempt < MAX_ALLOCATION_ATTEMPTS) {
+                        // Allocated code matched a custom or pre-allocator code: take the next one
+                        urlMapping.setShortCode(shortCodeAllocator.nextCode());
+                        retry.add(i);
+                    } else {
+                        results.set(i, Map.of("originalUrl", urlMapping.getOriginalUrl(),
+                                "error", "Could not allocate a short code"));
+                    }
+                }
+            }
+            pending = retry;
+        }
+
+        for (String shortCode : savedCodes) {
+            shortCodeFilter.add(shortCode);
+            localUrlCache.invalidate(shortCode);
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1_000_000_000.0;
+        double rowsPerSecond = savedCodes.size() / seconds;
+        logger.info("Batch shortened {} of {} URLs in {} ms ({} rows/s)",
+                savedCodes.size(), size, Math.round(seconds * 1000), Math.round(rowsPerSecond));
+        return new BatchResult(results, rowsPerSecond);
+    }
+
+    private static String customCodeOf(Map<String, String> request) {
+        String customCode = request.get("customCode");
+        return customCode != null && !customCode.isBlank() ? customCode : null;
+    }
+
+    private static Map<String, String> takenError(String originalUrl, String customCode) {
+        return Map.of(
+                "originalUrl", originalUrl,
+                "error", "Custom short code '" + customCode + "' is already taken"
+        );
+    }
+
+    private static Map<String, String> successResult(UrlMapping urlMapping) {
+        return Map.of(
+                "originalUrl", urlMapping.getOriginalUrl(),
+                "shortCode", urlMapping.getShortCode(),
+                "expiry_date", urlMapping.getExpiryDate() != null ? urlMapping.getExpiryDate().toString() : "Never",
+                "password_protected", urlMapping.getPassword() != null ? "Yes" : "No"
+        );
+    }
+}
@@ -0,0 +1,199 @@
+package org.bitly.service;
+
+import jakarta.annotation.PreDestroy;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.ClickDelta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind buffer for redirect clicks.
+ * Redirects only bump a per-code LongAdder; accumulated deltas are written in one batched UPDATE
+ * every {@code clicks.flush.interval-ms}, as soon as {@code clicks.flush.max-entries} codes are pending,
+ * or once {@code clicks.max-unflushed} clicks are buffered (the most a crash can lose).
+ */
+@Service
+public class ClickBufferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClickBufferService.class);
+
+    private static final class PendingClicks {
+        final LongAdder clicks = new LongAdder();
+        volatile long lastAccessedAt;
+        // Set by the flush before it drops the entry from the map; clicks added after that are handed back
+        volatile boolean retired;
+    }
+
+    private final UrlBatchRepository urlBatchRepository;
+    private final int maxEntries;
+    private final long maxUnflushedClicks;
+
+    private final ConcurrentHashMap<String, PendingClicks> pending = new ConcurrentHashMap<>();
+    private final AtomicLong unflushedClicks = new AtomicLong();
+    private final List<Consumer<List<ClickDelta>>> flushListeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "click-buffer-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Metrics
+    private final AtomicLong flushedClicks = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    public ClickBufferService(UrlBatchRepository urlBatchRepository,
+                              @Value("${clicks.flush.max-entries:1000}") int maxEntries,
+                              @Value("${clicks.max-unflushed:10000}") long maxUnflushedClicks) {
+        this.urlBatchRepository = urlBatchRepository;
+        this.maxEntries = maxEntries;
+        this.maxUnflushedClicks = maxUnflushedClicks;
+    }
+
+    // Called on the flush thread with every batch of deltas once it is in the database
+    public void addFlushListener(Consumer<List<ClickDelta>> listener) {
+        flushListeners.add(listener);
+    }
+
+    public void record(String shortCode) {
+        add(shortCode, 1, System.currentTimeMillis());
+
+        if (unflushedClicks.incrementAndGet() >= maxUnflushedClicks || pending.size() >= maxEntries) {
+            requestFlush();
+        }
+    }
+
+    // The entry can be retired between computeIfAbsent and the add. A retired entry is drained once more by the
+    // flush, and sumThenReset hands every click to exactly one drainer, so whatever is left after seeing the flag
+    // moves to the live entry and nothing is lost or counted twice.
+    private void add(String shortCode, long count, long lastAccessedAt) {
+        while (count > 0) {
+            PendingClicks clicks = pending.computeIfAbsent(shortCode, code -> new PendingClicks());
+            clicks.lastAccessedAt = Math.max(clicks.lastAccessedAt, lastAccessedAt);
+            clicks.clicks.add(count);
+            if (!clicks.retired) {
+                return;
+            }
+            count = clicks.clicks.sumThenReset();
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${clicks.flush.interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            List<ClickDelta> deltas = new ArrayList<>();
+
+            for (Map.Entry<String, PendingClicks> entry : pending.entrySet()) {
+                PendingClicks clicks = entry.getValue();
+                long count = clicks.clicks.sumThenReset();
+                if (count > 0) {
+                    deltas.add(new ClickDelta(entry.getKey(), count, clicks.lastAccessedAt));
+                } else {
+                    // Not clicked since the last flush: drop it so the map only holds active codes.
+                    // A click that raced with the removal is carried over, here or by record(), instead of lost.
+                    clicks.retired = true;
+                    pending.remove(entry.getKey(), clicks);
+                    long late = clicks.clicks.sumThenReset();
+                    if (late > 0) {
+                        deltas.add(new ClickDelta(entry.getKey(), late, clicks.lastAccessedAt));
+                    }
+                }
+            }
+
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            long total = deltas.stream().mapToLong(ClickDelta::clicks).sum();
+            try {
+                urlBatchRepository.addClicks(deltas);
+                unflushedClicks.addAndGet(-total);
+                flushedClicks.addAndGet(total);
+                flushCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                // Put the deltas back so the next flush retries them
+                failedFlushes.incrementAndGet();
+                for (ClickDelta delta : deltas) {
+                    add(delta.shortCode(), delta.clicks(), delta.lastAccessedAt());
+                }
+                logger.error("Click flush of {} codes failed: {}", deltas.size(), e.getMessage());
+                return;
+            }
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastFlushMillis = elapsedMillis;
+            maxFlushMillis = Math.max(maxFlushMillis, elapsedMillis);
+
+            for (Consumer<List<ClickDelta>> listener : flushListeners) {
+                try {
+                    listener.accept(deltas);
+                } catch (RuntimeException e) {
+                    logger.warn("Click flush listener failed: {}", e.getMessage());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "pendingCodes", pending.size(),
+                "pendingClicks", unflushedClicks.get(),
+                "maxUnflushedClicks", maxUnflushedClicks,
+                "flushedClicks", flushedClicks.get(),
+                "flushes", flushCount.get(),
+                "failedFlushes", failedFlushes.get(),
+                "lastFlushMillis", lastFlushMillis,
+                "maxFlushMillis", maxFlushMillis
+        );
+    }
+}
@@ -0,0 +1,197 @@
+package org.bitly.service;
+
+import jakarta.annotation.PostConstruct;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.ClickDelta;
+import org.bitly.repository.UrlBatchRepository.UrlSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.resps.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Top-clicked leaderboards kept in Redis sorted sets and updated from every click flush, so reading them
+ * never sorts {@code url_shortener}.
+ * <ul>
+ *   <li>All time: one set of at most {@code leaderboard.capacity} codes scored by their total clicks
+ *   ({@code ZADD GT} with the totals read back after the flush). Rebuilt from the table at startup.</li>
+ *   <li>Last hour / last day: the flushed deltas go into per-minute / per-hour sets that expire after the
+ *   window; a read unions the window's buckets.</li>
+ * </ul>
+ * Results are cached for {@code leaderboard.cache-ms}.
+ */
+@Service
+public class ClickLeaderboardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClickLeaderboardService.class);
+
+    private static final String ALL_TIME_KEY = "leaderboard:clicks:all";
+
+    public enum Window {
+        HOUR("leaderboard:clicks:hour:", TimeUnit.MINUTES.toMillis(1), 60),
+        DAY("leaderboard:clicks:day:", TimeUnit.HOURS.toMillis(1), 24),
+        ALL(ALL_TIME_KEY, 0, 0);
+
+        private final String keyPrefix;
+        private final long bucketMillis;
+        private final int buckets;
+
+        Window(String keyPrefix, long bucketMillis, int buckets) {
+            this.keyPrefix = keyPrefix;
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+
+        public static Window parse(String value) {
+            return switch (value.trim().toLowerCase()) {
+                case "hour", "1h" -> HOUR;
+                case "day", "24h" -> DAY;
+                case "all", "all-time" -> ALL;
+                default -> throw new IllegalArgumentException("Unknown window: " + value + " (hour, day or all)");
+            };
+        }
+
+        String bucketKey(long millis) {
+            return keyPrefix + (millis / bucketMillis);
+        }
+
+        // The current bucket and the ones before it that make up the window
+        String[] bucketKeys(long now) {
+            String[] keys = new String[buckets];
+            for (int i = 0; i < buckets; i++) {
+                keys[i] = bucketKey(now - i * bucketMillis);
+            }
+            return keys;
+        }
+    }
+
+    private record CachedResult(long loadedAt, List<Map<String, Object>> entries) {}
+
+    private final RedisCacheService redisCacheService;
+    private final UrlBatchRepository urlBatchRepository;
+    private final ClickBufferService clickBufferService;
+    private final int capacity;
+    private final long cacheMillis;
+    private final String unionKeyPrefix = "leaderboard:union:" + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ":";
+    private final AtomicLong unionKeys = new AtomicLong();
+
+    private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
+
+    public ClickLeaderboardService(RedisCacheService redisCacheService,
+                                   UrlBatchRepository urlBatchRepository,
+                                   ClickBufferService clickBufferService,
+                                   @Value("${leaderboard.capacity:1000}") int capacity,
+                                   @Value("${leaderboard.cache-ms:2000}") long cacheMillis) {
+        this.redisCacheService = redisCacheService;
+        this.urlBatchRepository = urlBatchRepository;
+        this.clickBufferService = clickBufferService;
+        this.capacity = capacity;
+        this.cacheMillis = cacheMillis;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        clickBufferService.addFlushListener(this::onFlush);
+    }
+
+    // The only full read of the table: seeds the all-time set with the current top codes
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            Map<String, Long> top = urlBatchRepository.findTopClickCounts(capacity);
+            redisCacheService.pipelined(pipeline -> {
+                pipeline.del(ALL_TIME_KEY);
+                top.forEach((code, clicks) -> pipeline.zadd(ALL_TIME_KEY, clicks, code));
+            });
+            logger.info("Click leaderboard rebuilt with {} codes", top.size());
+        } catch (Exception e) {
+            logger.warn("Could not rebuild click leaderboard: {}", e.getMessage());
+        }
+    }
+
+    // Flush thread: one read of the new totals, then one pipelined round trip to Redis
+    void onFlush(List<ClickDelta> deltas) {
+        Map<String, Long> totals = urlBatchRepository.findClickCounts(deltas.stream().map(ClickDelta::shortCode).toList());
+        long now = System.currentTimeMillis();
+        String hourKey = Window.HOUR.bucketKey(now);
+        String dayKey = Window.DAY.bucketKey(now);
+
+        redisCacheService.pipelined(pipeline -> {
+            totals.forEach((code, clicks) -> pipeline.zadd(ALL_TIME_KEY, clicks, code, ZAddParams.zAddParams().gt()));
+            // Only the top `capacity` codes are kept; a code that climbs back in arrives with its full total
+            pipeline.zremrangeByRank(ALL_TIME_KEY, 0, -capacity - 1);
+            for (ClickDelta delta : deltas) {
+                pipeline.zincrby(hourKey, delta.clicks(), delta.shortCode());
+                pipeline.zincrby(dayKey, delta.clicks(), delta.shortCode());
+            }
+            pipeline.pexpire(hourKey, Window.HOUR.bucketMillis * (Window.HOUR.buckets + 1));
+            pipeline.pexpire(dayKey, Window.DAY.bucketMillis * (Window.DAY.buckets + 1));
+        });
+    }
+
+    // Codes that left the table; the hour and day buckets age them out on their own
+    public void remove(Collection<String> shortCodes) {
+        if (shortCodes.isEmpty()) {
+            return;
+        }
+        redisCacheService.pipelined(pipeline -> pipeline.zrem(ALL_TIME_KEY, shortCodes.toArray(String[]::new)));
+        cache.clear();
+    }
+
+    public List<Map<String, Object>> top(Window window, int limit) {
+        String cacheKey = window + ":" + limit;
+        long now = System.currentTimeMillis();
+        CachedResult cached = cache.get(cacheKey);
+        if (cached != null && now - cached.loadedAt() < cacheMillis) {
+            return cached.entries();
+        }
+
+        List<Tuple> ranked = ranked(window, limit, now);
+        Map<String, UrlSummary> summaries = urlBatchRepository.findSummaries(ranked.stream().map(Tuple::getElement).toList());
+        List<Map<String, Object>> entries = new ArrayList<>(ranked.size());
+        for (Tuple tuple : ranked) {
+            UrlSummary summary = summaries.get(tuple.getElement());
+            if (summary == null) {
+                continue; // removed from the table since it was ranked
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("shortCode", summary.shortCode());
+            entry.put("originalUrl", summary.originalUrl() != null ? summary.originalUrl() : "Unknown");
+            entry.put("clickCount", (long) tuple.getScore());
+            entry.put("lastAccessedAt", summary.lastAccessedAt() != null ? summary.lastAccessedAt() : "Never Accessed");
+            entries.add(entry);
+        }
+        cache.put(cacheKey, new CachedResult(now, entries));
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Tuple> ranked(Window window, int limit, long now) {
+        if (window == Window.ALL) {
+            List<Object> replies = redisCacheService.pipelined(pipeline -> pipeline.zrevrangeWithScores(ALL_TIME_KEY, 0, limit - 1));
+            return (List<Tuple>) replies.get(0);
+        }
+        String[] keys = window.bucketKeys(now);
+        String unionKey = unionKeyPrefix + unionKeys.incrementAndGet(); // scratch key, one per read
+        List<Object> replies = redisCacheService.pipelined(pipeline -> {
+            pipeline.zunionstore(unionKey, keys);
+            pipeline.zrevrangeWithScores(unionKey, 0, limit - 1);
+            pipeline.del(unionKey);
+        });
+        return (List<Tuple>) replies.get(1);
+    }
+}
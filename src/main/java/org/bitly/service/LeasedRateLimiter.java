@@ -0,0 +1,276 @@
+package org.bitly.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hybrid rate limiter for latency-critical routes (the redirect): each node admits requests from local,
+ * lock-free token counters and leases quota from the global Redis token bucket in chunks
+ * ({@code redis/rate_limit_lease.lua}), so most requests never leave the JVM.
+ * <p>
+ * A node only talks to Redis when its lease for a key runs out, and every
+ * {@code ratelimit.lease.sync-interval-ms} to hand unused tokens back. Tokens are only ever admitted
+ * after being taken from the global bucket, so the cluster never exceeds the limit; the error is quota
+ * parked on nodes, at most one chunk per node per key. A chunk is capped at
+ * {@code ratelimit.lease.max-error} × limit.
+ * <p>
+ * When Redis is unavailable, each node enforces the full limit on its own (a local GCRA bucket) until
+ * Redis answers again, instead of letting everything through.
+ */
+@Service
+public class LeasedRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasedRateLimiter.class);
+
+    private static final long IDLE_BUCKET_MILLIS = 60_000;
+
+    private final RedisCacheService redisCacheService;
+    private final String script;
+    private final boolean enabled;
+    private final long maxChunk;
+    private final double maxError;
+    private final long redisRetryMillis;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile long redisDownUntil;
+
+    private final LongAdder localAdmits = new LongAdder();
+    private final LongAdder leaseCalls = new LongAdder();
+    private final LongAdder fallbackAdmits = new LongAdder();
+    private final LongAdder returnedTokens = new LongAdder();
+
+    public LeasedRateLimiter(RedisCacheService redisCacheService,
+                             @Value("${ratelimit.enabled:true}") boolean enabled,
+                             @Value("${ratelimit.lease.chunk-size:50}") long maxChunk,
+                             @Value("${ratelimit.lease.max-error:0.1}") double maxError,
+                             @Value("${ratelimit.lease.redis-retry-ms:5000}") long redisRetryMillis) {
+        this.redisCacheService = redisCacheService;
+        this.enabled = enabled;
+        this.maxChunk = maxChunk;
+        this.maxError = maxError;
+        this.redisRetryMillis = redisRetryMillis;
+        try (InputStream in = new ClassPathResource("redis/rate_limit_lease.lua").getInputStream()) {
+            this.script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load rate limit lease script", e);
+        }
+    }
+
+    // Local state for one rule key
+    private final class Bucket {
+        final RateLimitService.Rule rule;
+        final long chunk;
+        final AtomicLong leased = new AtomicLong(); // tokens taken from Redis, not yet used
+        final AtomicLong fallbackTat = new AtomicLong(); // GCRA theoretical arrival time, millis
+        volatile long globalRemaining;
+        volatile long resetMillis;
+        volatile long retryMillis;
+        volatile long deniedUntil; // global bucket known to be empty until then
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Bucket(RateLimitService.Rule rule) {
+            this.rule = rule;
+            this.chunk = Math.max(1, Math.min(maxChunk, (long) (rule.limit() * maxError)));
+        }
+
+        boolean tryTakeLeased() {
+            long tokens;
+            do {
+                tokens = leased.get();
+                if (tokens <= 0) {
+                    return false;
+                }
+            } while (!leased.compareAndSet(tokens, tokens - 1));
+            return true;
+        }
+
+        // GCRA: one CAS on the theoretical arrival time; equivalent to a token bucket of `limit` per window
+        boolean tryTakeFallback(long now) {
+            long interval = Math.max(1, rule.windowMillis() / rule.limit());
+            long tolerance = rule.windowMillis() - interval;
+            long tat;
+            long next;
+            do {
+                tat = fallbackTat.get();
+                next = Math.max(tat, now) + interval;
+                if (next - now > tolerance + interval) {
+                    retryMillis = next - now - tolerance - interval;
+                    return false;
+                }
+            } while (!fallbackTat.compareAndSet(tat, next));
+            globalRemaining = Math.max(0, (tolerance + interval - (next - now)) / interval);
+            resetMillis = next - now;
+            return true;
+        }
+
+        void refund(boolean fallback) {
+            if (fallback) {
+                fallbackTat.addAndGet(-Math.max(1, rule.windowMillis() / rule.limit()));
+            } else {
+                leased.incrementAndGet();
+            }
+        }
+    }
+
+    // All rules must admit; a rule that admitted is refunded if a later one denies
+    public RateLimitService.Decision check(List<RateLimitService.Rule> rules) {
+        if (!enabled || rules.isEmpty()) {
+            return new RateLimitService.Decision(true, null, 0, 0, 0);
+        }
+        long now = System.currentTimeMillis();
+        boolean fallback = now < redisDownUntil;
+        List<Bucket> taken = new ArrayList<>(rules.size());
+        List<Boolean> takenLocally = new ArrayList<>(rules.size());
+        RateLimitService.Decision reported = null;
+
+        for (RateLimitService.Rule rule : rules) {
+            Bucket bucket = buckets.computeIfAbsent(rule.key(), key -> new Bucket(rule));
+            if (!bucket.rule.equals(rule)) {
+                // Limit changed (e.g. a plan upgrade); unused tokens of the old bucket are returned on sync
+                Bucket replaced = new Bucket(rule);
+                replaced.leased.set(bucket.leased.getAndSet(0));
+                buckets.put(rule.key(), replaced);
+                bucket = replaced;
+            }
+            bucket.lastUsed = now;
+
+            boolean admitted;
+            if (fallback) {
+                admitted = bucket.tryTakeFallback(now);
+            } else if (bucket.tryTakeLeased()) {
+                admitted = true;
+            } else if (now < bucket.deniedUntil) {
+                admitted = false;
+            } else {
+                admitted = lease(bucket);
+                fallback = now < redisDownUntil;
+                if (fallback) {
+                    admitted = bucket.tryTakeFallback(now);
+                }
+            }
+
+            if (!admitted) {
+                for (int i = 0; i < taken.size(); i++) {
+                    taken.get(i).refund(takenLocally.get(i));
+                }
+                long retry = fallback ? bucket.retryMillis : Math.max(0, bucket.deniedUntil - now);
+                return new RateLimitService.Decision(false, rule, 0, bucket.resetMillis, retry);
+            }
+            taken.add(bucket);
+            takenLocally.add(fallback);
+
+            long remaining = fallback ? bucket.globalRemaining : bucket.leased.get() + bucket.globalRemaining;
+            if (reported == null || remaining < reported.remaining()) {
+                reported = new RateLimitService.Decision(true, rule, remaining, bucket.resetMillis, 0);
+            }
+        }
+
+        if (fallback) {
+            fallbackAdmits.increment();
+        } else {
+            localAdmits.increment();
+        }
+        return reported;
+    }
+
+    // Synchronous lease of one chunk; the first token of a grant is used by the caller.
+    // An empty global bucket is remembered until its retry time, so denials stay local too.
+    private boolean lease(Bucket bucket) {
+        try {
+            List<?> reply = call(List.of(bucket), List.of(bucket.chunk));
+            leaseCalls.increment();
+            long granted = ((Number) reply.get(0)).longValue();
+            if (granted > 0) {
+                bucket.leased.addAndGet(granted - 1);
+                return true;
+            }
+            bucket.deniedUntil = System.currentTimeMillis() + Math.max(1, bucket.retryMillis);
+            return false;
+        } catch (Exception e) {
+            markRedisDown(e);
+            return false;
+        }
+    }
+
+    // Hands unused leased tokens back in one call, so idle nodes do not sit on quota, and forgets idle buckets
+    @Scheduled(fixedDelayString = "${ratelimit.lease.sync-interval-ms:200}")
+    public void sync() {
+        long now = System.currentTimeMillis();
+        List<Bucket> returning = new ArrayList<>();
+        List<Long> amounts = new ArrayList<>();
+        for (Bucket bucket : buckets.values()) {
+            long unused = bucket.leased.getAndSet(0);
+            if (unused > 0) {
+                returning.add(bucket);
+                amounts.add(-unused);
+            }
+            if (now - bucket.lastUsed > IDLE_BUCKET_MILLIS) {
+                buckets.remove(bucket.rule.key(), bucket);
+            }
+        }
+        if (returning.isEmpty() || now < redisDownUntil) {
+            return;
+        }
+        try {
+            call(returning, amounts);
+            amounts.forEach(amount -> returnedTokens.add(-amount));
+        } catch (Exception e) {
+            markRedisDown(e);
+        }
+    }
+
+    private List<?> call(List<Bucket> targets, List<Long> amounts) {
+        List<String> keys = new ArrayList<>(targets.size());
+        List<String> args = new ArrayList<>(targets.size() * 3);
+        for (int i = 0; i < targets.size(); i++) {
+            RateLimitService.Rule rule = targets.get(i).rule;
+            keys.add("rate:lease:" + rule.key());
+            args.add(Long.toString(rule.limit()));
+            args.add(Long.toString(rule.windowMillis()));
+            args.add(Long.toString(amounts.get(i)));
+        }
+        List<?> reply = (List<?>) redisCacheService.evalScript(script, keys, args);
+        for (int i = 0; i < targets.size(); i++) {
+            Bucket bucket = targets.get(i);
+            bucket.globalRemaining = ((Number) reply.get(i * 4 + 1)).longValue();
+            bucket.resetMillis = ((Number) reply.get(i * 4 + 2)).longValue();
+            bucket.retryMillis = ((Number) reply.get(i * 4 + 3)).longValue();
+        }
+        return reply;
+    }
+
+    private void markRedisDown(Exception e) {
+        long now = System.currentTimeMillis();
+        if (now >= redisDownUntil) {
+            logger.warn("Redis unavailable for rate limit leases, using local limits for {} ms: {}",
+                    redisRetryMillis, e.getMessage());
+        }
+        redisDownUntil = now + redisRetryMillis;
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "mode", System.currentTimeMillis() < redisDownUntil ? "local-fallback" : "leased",
+                "buckets", buckets.size(),
+                "localAdmits", localAdmits.sum(),
+                "leaseCalls", leaseCalls.sum(),
+                "fallbackAdmits", fallbackAdmits.sum(),
+                "returnedTokens", returnedTokens.sum()
+        );
+    }
+}
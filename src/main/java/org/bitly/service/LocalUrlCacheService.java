@@ -0,0 +1,130 @@
+package org.bitly.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bitly.entity.UrlMapping;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-JVM L1 cache for redirect lookups, checked before Redis.
+ * Caffeine evicts with W-TinyLFU, so hot codes stay resident under skewed traffic.
+ * Empty results ("not found / expired") are cached too, but only for a short time.
+ * <p>
+ * Deletes and expiry changes are published on the Redis channel {@code cache.local.invalidation-channel}, and
+ * every node drops the code from its own cache when the message arrives. While a node is not subscribed (Redis
+ * unreachable) it can miss messages, so it empties the cache and keeps links for only
+ * {@code cache.local.negative-ttl-seconds} until it is subscribed again.
+ */
+@Service
+public class LocalUrlCacheService {
+
+    private final Cache<String, Optional<UrlMapping>> cache;
+    private final RedisInvalidationChannel invalidations;
+
+    private final LongAdder negativeHits = new LongAdder();
+
+    public LocalUrlCacheService(long maximumSize, long ttlSeconds, long negativeTtlSeconds) {
+        this(null, "", maximumSize, ttlSeconds, negativeTtlSeconds);
+    }
+
+    @Autowired
+    public LocalUrlCacheService(@Nullable RedisCacheService redisCacheService,
+                                @Value("${cache.local.invalidation-channel:url-invalidations}") String channel,
+                                @Value("${cache.local.maximum-size:100000}") long maximumSize,
+                                @Value("${cache.local.ttl-seconds:60}") long ttlSeconds,
+                                @Value("${cache.local.negative-ttl-seconds:5}") long negativeTtlSeconds) {
+        long ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+        long negativeTtlNanos = Duration.ofSeconds(negativeTtlSeconds).toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Optional<UrlMapping>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<UrlMapping> value, long currentTime) {
+                        if (value.isEmpty()) {
+                            return negativeTtlNanos;
+                        }
+                        // Invalidations from other nodes could be missed: keep links only briefly
+                        long ttl = !invalidations.isEnabled() || invalidations.isSubscribed() ? ttlNanos : negativeTtlNanos;
+                        // Never serve a link from memory past its own expiry date
+                        LocalDateTime expiryDate = value.get().getExpiryDate();
+                        if (expiryDate == null) {
+                            return ttl;
+                        }
+                        long untilExpiry = Duration.between(LocalDateTime.now(), expiryDate).toNanos();
+                        return Math.max(0, Math.min(ttl, untilExpiry));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<UrlMapping> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<UrlMapping> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        this.invalidations = new RedisInvalidationChannel(redisCacheService, channel, cache::invalidate, cache::invalidateAll);
+    }
+
+    // Returns the cached result, or runs the loader (Redis -> DB) once per key on a miss
+    public Optional<UrlMapping> get(String shortCode, Function<String, Optional<UrlMapping>> loader) {
+        // Peek without touching stats so negative hits can be told apart; get() records the hit/miss
+        Optional<UrlMapping> cached = cache.policy().getIfPresentQuietly(shortCode);
+        if (cached != null && cached.isEmpty()) {
+            negativeHits.increment();
+        }
+        return cache.get(shortCode, loader);
+    }
+
+    // This node only, e.g. a cached "not found" for a code this node just created
+    public void invalidate(String shortCode) {
+        cache.invalidate(shortCode);
+    }
+
+    // This node now, and every subscribed node once the message arrives
+    public void invalidateEverywhere(String shortCode) {
+        cache.invalidate(shortCode);
+        invalidations.publish(shortCode);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        invalidations.start("url-cache-invalidations");
+    }
+
+    @PreDestroy
+    public void close() {
+        invalidations.close();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new HashMap<>(invalidations.stats());
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("negativeHits", negativeHits.sum());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("hitRate", stats.hitRate());
+        return result;
+    }
+}
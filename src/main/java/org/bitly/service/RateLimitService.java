@@ -0,0 +1,192 @@
+package org.bitly.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates every limit that applies to a request (per IP, per API key, per plan) in one atomic
+ * Lua call ({@code redis/rate_limit.lua}): one round trip, and either all limits consume or none do.
+ * Each scope can use a token bucket, a sliding-window log or a sliding-window counter.
+ * If Redis is unavailable requests are let through, as before.
+ */
+@Service
+public class RateLimitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
+
+    private static final long FAILURE_LOG_INTERVAL_MS = 30_000;
+
+    public enum Algorithm {
+        TOKEN_BUCKET("token_bucket"),
+        SLIDING_WINDOW_LOG("sliding_log"),
+        SLIDING_WINDOW_COUNTER("sliding_counter");
+
+        private final String scriptName;
+
+        Algorithm(String scriptName) {
+            this.scriptName = scriptName;
+        }
+
+        // Accepts property values like "token-bucket" or "SLIDING_WINDOW_LOG"
+        public static Algorithm parse(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    public record Rule(String name, String key, Algorithm algorithm, long limit, long windowMillis) {}
+
+    // Reported for the most restrictive rule: the one that denied, or the one with the least quota left
+    public record Decision(boolean allowed, @Nullable Rule rule, long remaining, long resetMillis, long retryAfterMillis) {
+
+        static Decision unlimited() {
+            return new Decision(true, null, 0, 0, 0);
+        }
+    }
+
+    // Per IP, per second
+    private final Map<String, Integer> ipLimits = Map.of(
+            "/api/urls/shorten", 10,
+            "/api/urls/redirect", 50
+    );
+
+    // Per API key, per minute
+    private final Map<String, Integer> apiKeyLimits = Map.of(
+            "/api/urls/shorten", 10,
+            "/api/urls/redirect", 50
+    );
+
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final RedisCacheService redisCacheService;
+    private final String script;
+    private final boolean enabled;
+    private final Algorithm ipAlgorithm;
+    private final Algorithm apiKeyAlgorithm;
+    private final Algorithm planAlgorithm;
+    private final long limitMultiplier;
+
+    private final String requestIdPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong()) + ":";
+    private final AtomicLong requestIds = new AtomicLong();
+    private final AtomicLong lastFailureLog = new AtomicLong();
+
+    public RateLimitService(RedisCacheService redisCacheService, boolean enabled,
+                            String ipAlgorithm, String apiKeyAlgorithm, String planAlgorithm) {
+        this(redisCacheService, enabled, ipAlgorithm, apiKeyAlgorithm, planAlgorithm, 1);
+    }
+
+    @Autowired
+    public RateLimitService(RedisCacheService redisCacheService,
+                            @Value("${ratelimit.enabled:true}") boolean enabled,
+                            @Value("${ratelimit.ip.algorithm:token-bucket}") String ipAlgorithm,
+                            @Value("${ratelimit.api-key.algorithm:sliding-window-counter}") String apiKeyAlgorithm,
+                            @Value("${ratelimit.plan.algorithm:sliding-window-log}") String planAlgorithm,
+                            @Value("${ratelimit.limit-multiplier:1}") long limitMultiplier) {
+        if (limitMultiplier < 1) {
+            throw new IllegalArgumentException("ratelimit.limit-multiplier must be at least 1, was " + limitMultiplier);
+        }
+        this.redisCacheService = redisCacheService;
+        this.limitMultiplier = limitMultiplier;
+        this.enabled = enabled;
+        this.ipAlgorithm = Algorithm.parse(ipAlgorithm);
+        this.apiKeyAlgorithm = Algorithm.parse(apiKeyAlgorithm);
+        this.planAlgorithm = Algorithm.parse(planAlgorithm);
+        try (InputStream in = new ClassPathResource("redis/rate_limit.lua").getInputStream()) {
+            this.script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load rate limit script", e);
+        }
+    }
+
+    public List<Rule> rulesFor(String ip, String path, @Nullable String apiKey, @Nullable String tier) {
+        List<Rule> rules = new ArrayList<>(3);
+        rules.add(new Rule("ip", "rate:ip:" + ip + ":" + path, ipAlgorithm,
+                ipLimits.getOrDefault(path, DEFAULT_LIMIT) * limitMultiplier, 1000));
+        if (apiKey != null && !apiKey.isBlank()) {
+            rules.add(new Rule("api-key", "rate:key:" + apiKey + ":" + path, apiKeyAlgorithm,
+                    apiKeyLimits.getOrDefault(path, DEFAULT_LIMIT) * limitMultiplier, 60_000));
+            if (tier != null) {
+                rules.add(planRule(apiKey, path, tier));
+            }
+        }
+        return rules;
+    }
+
+    private Rule planRule(String apiKey, String path, String tier) {
+        String key = "rate:plan:" + apiKey + ":" + path;
+        return switch (tier.toLowerCase()) {
+            case "enterprise" -> new Rule("plan", key, planAlgorithm, 100 * limitMultiplier, 1000);
+            case "hobby" -> new Rule("plan", key, planAlgorithm, 10 * limitMultiplier, 1000);
+            default -> new Rule("plan", key, planAlgorithm, 5 * limitMultiplier, 60_000);
+        };
+    }
+
+    public Decision check(List<Rule> rules) {
+        if (!enabled || rules.isEmpty()) {
+            return Decision.unlimited();
+        }
+
+        List<String> keys = new ArrayList<>(rules.size());
+        List<String> args = new ArrayList<>(1 + rules.size() * 3);
+        args.add(requestIdPrefix + requestIds.incrementAndGet());
+        for (Rule rule : rules) {
+            keys.add(rule.key());
+            args.add(rule.algorithm().scriptName);
+            args.add(Long.toString(rule.limit()));
+            args.add(Long.toString(rule.windowMillis()));
+        }
+
+        List<?> reply;
+        try {
+            reply = (List<?>) redisCacheService.evalScript(script, keys, args);
+        } catch (Exception e) {
+            long now = System.currentTimeMillis();
+            long last = lastFailureLog.get();
+            if (now - last > FAILURE_LOG_INTERVAL_MS && lastFailureLog.compareAndSet(last, now)) {
+                logger.warn("Rate limiting unavailable, allowing requests: {}", e.getMessage());
+            }
+            return Decision.unlimited(); // fallback to allow if Redis is down
+        }
+        return decide(rules, reply);
+    }
+
+    // Reply layout: {allowed, then per rule: allowed, remaining, reset_ms, retry_ms}
+    private static Decision decide(List<Rule> rules, List<?> reply) {
+        boolean allowed = asLong(reply.get(0)) == 1;
+        Decision chosen = null;
+        for (int i = 0; i < rules.size(); i++) {
+            int base = 1 + i * 4;
+            boolean ruleAllowed = asLong(reply.get(base)) == 1;
+            Decision candidate = new Decision(allowed, rules.get(i), asLong(reply.get(base + 1)),
+                    asLong(reply.get(base + 2)), asLong(reply.get(base + 3)));
+            if (allowed) {
+                // Least quota left
+                if (chosen == null || candidate.remaining() < chosen.remaining()) {
+                    chosen = candidate;
+                }
+            } else if (!ruleAllowed && (chosen == null || candidate.retryAfterMillis() > chosen.retryAfterMillis())) {
+                // The denying rule that stays closed longest
+                chosen = candidate;
+            }
+        }
+        return chosen != null ? chosen : Decision.unlimited();
+    }
+
+    private static long asLong(Object value) {
+        return ((Number) value).longValue();
+    }
+}
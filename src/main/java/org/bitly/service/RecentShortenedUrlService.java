@@ -1,36 +1,107 @@
 package org.bitly.service;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.transaction.Transactional;
-import org.bitly.entity.RecentShortenedUrl;
-import org.bitly.repository.RecentShortenedUrlRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.bitly.cache.RecentRing;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.RecentUrl;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Latest shortened links, served from memory.
+ * <p>
+ * One ring of the last {@code recent.capacity} links is seeded from the table at startup and appended to on
+ * every shorten, so {@code /recent} is always current and never touches SQLite. Per-user rings of
+ * {@code recent.per-user.capacity} links are loaded on a user's first read, kept for at most
+ * {@code recent.per-user.max-users} users, and appended to while resident.
+ */
 @Service
 public class RecentShortenedUrlService {
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private final UrlBatchRepository urlBatchRepository;
+    private final RecentRing<RecentUrl> recent;
+    private final int perUserCapacity;
+    private final Cache<Long, RecentRing<RecentUrl>> userRings;
 
-    @Autowired
-    private RecentShortenedUrlRepository repository;
+    public RecentShortenedUrlService(UrlBatchRepository urlBatchRepository,
+                                     @Value("${recent.capacity:100}") int capacity,
+                                     @Value("${recent.per-user.capacity:20}") int perUserCapacity,
+                                     @Value("${recent.per-user.max-users:10000}") long maxUsers) {
+        this.urlBatchRepository = urlBatchRepository;
+        this.recent = new RecentRing<>(capacity);
+        this.perUserCapacity = perUserCapacity;
+        this.userRings = Caffeine.newBuilder().maximumSize(maxUsers).build();
+    }
 
-    @Transactional
-    public void refreshMaterializedView() {
-        entityManager.createNativeQuery("DROP TABLE IF EXISTS recent_shortened_urls").executeUpdate();
-        entityManager.createNativeQuery(
-                "CREATE TABLE recent_shortened_urls AS " +
-                        "SELECT * FROM url_shortener ORDER BY created_at DESC LIMIT 10"
-        ).executeUpdate();
+    // Before the web server starts, so no shorten can land ahead of the seeded rows
+    @PostConstruct
+    public void seed() {
+        fill(recent, urlBatchRepository.findRecent(null, recent.capacity()));
     }
 
+    public void record(String shortCode, String originalUrl, Long userId, LocalDateTime createdAt) {
+        // Millisecond precision, as stored in the table
+        RecentUrl url = new RecentUrl(shortCode, originalUrl, createdAt != null ? createdAt.truncatedTo(ChronoUnit.MILLIS) : null);
+        recent.add(url);
+        if (userId != null) {
+            // Waits for a load in progress, so the new link is not lost if the load read the table before it
+            userRings.asMap().computeIfPresent(userId, (id, ring) -> {
+                ring.add(url);
+                return ring;
+            });
+        }
+    }
 
-    public List<RecentShortenedUrl> getRecentUrls() {
-        return repository.findLatestUrls();
+    public void remove(String shortCode, Long userId) {
+        recent.removeIf(url -> url.shortCode().equals(shortCode));
+        if (userId != null) {
+            RecentRing<RecentUrl> ring = userRings.getIfPresent(userId);
+            if (ring != null) {
+                ring.removeIf(url -> url.shortCode().equals(shortCode));
+            }
+        }
+    }
+
+    public List<RecentUrl> getRecentUrls(int limit) {
+        return distinct(recent.latest(Math.max(0, limit)));
+    }
+
+    public List<RecentUrl> getRecentUrls(Long userId, int limit) {
+        RecentRing<RecentUrl> ring = userRings.get(userId, id -> {
+            RecentRing<RecentUrl> loaded = new RecentRing<>(perUserCapacity);
+            fill(loaded, urlBatchRepository.findRecent(id, perUserCapacity));
+            return loaded;
+        });
+        return distinct(ring.latest(Math.max(0, limit)));
     }
-}
 
+    public Map<String, Object> stats() {
+        return Map.of(
+                "capacity", recent.capacity(),
+                "perUserCapacity", perUserCapacity,
+                "cachedUsers", userRings.estimatedSize()
+        );
+    }
+
+    // Rows come newest first; the ring wants them oldest first
+    private static void fill(RecentRing<RecentUrl> ring, List<RecentUrl> newestFirst) {
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            ring.add(newestFirst.get(i));
+        }
+    }
+
+    // A link recorded while its user's ring was loading can appear twice
+    private static List<RecentUrl> distinct(List<RecentUrl> urls) {
+        Set<String> seen = new HashSet<>();
+        return urls.stream().filter(url -> seen.add(url.shortCode())).toList();
+    }
+}
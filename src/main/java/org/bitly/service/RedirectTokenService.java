@@ -0,0 +1,131 @@
+package org.bitly.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived proof that the caller already passed the password check of one protected short code, so
+ * repeat redirects cost an HMAC instead of a BCrypt verification.
+ * <p>
+ * A token is {@code <expiry epoch seconds>.<HMAC-SHA256>} over the short code, the expiry and the link's
+ * stored password hash. Changing the password changes the hash and so invalidates every token for the code;
+ * a deleted or expired link is not found before its token is looked at. Tokens live
+ * {@code redirect.token.ttl-seconds}. Without {@code redirect.token.secret} each node signs with its own random
+ * key, so a token only works on the node that issued it (and not after a restart).
+ */
+@Service
+public class RedirectTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedirectTokenService.class);
+
+    public static final String HEADER = "X-Redirect-Token";
+    private static final String COOKIE_PREFIX = "rt_";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RedirectTokenService(@Value("${redirect.token.enabled:true}") boolean enabled,
+                                @Value("${redirect.token.secret:}") String secret,
+                                @Value("${redirect.token.ttl-seconds:900}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.ttlSeconds = ttlSeconds;
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            if (enabled) {
+                logger.info("redirect.token.secret is not set; redirect tokens are only valid on this node");
+            }
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+        // Mac is not thread-safe; one per request thread
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    // One cookie per code: the code is a query parameter, so a cookie path cannot scope it. Custom codes may hold
+    // characters a cookie name cannot (space, ';', ','), so the name carries the code base64url-encoded.
+    public static String cookieName(String shortCode) {
+        return COOKIE_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(shortCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String issue(String shortCode, String passwordHash) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlSeconds;
+        issued.incrementAndGet();
+        return expiresAt + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(shortCode, expiresAt, passwordHash));
+    }
+
+    public boolean verify(String shortCode, String passwordHash, String token) {
+        if (!enabled || token == null || token.isEmpty()) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        try {
+            long expiresAt = Long.parseLong(token.substring(0, dot));
+            byte[] presented = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            if (expiresAt > System.currentTimeMillis() / 1000
+                    && MessageDigest.isEqual(presented, sign(shortCode, expiresAt, passwordHash))) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Malformed: same as a bad signature
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private byte[] sign(String shortCode, long expiresAt, String passwordHash) {
+        Mac mac = macs.get();
+        mac.update(shortCode.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) '\n');
+        mac.update(Long.toString(expiresAt).getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) '\n');
+        return mac.doFinal(passwordHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "enabled", enabled,
+                "ttlSeconds", ttlSeconds,
+                "issued", issued.get(),
+                "accepted", accepted.get(),
+                "rejected", rejected.get()
+        );
+    }
+}
@@ -1,16 +1,37 @@
 package org.bitly.service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.SetParams;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Service
 public class RedisCacheService {
 
-    private Jedis jedis;
+    private static final Logger logger = LoggerFactory.getLogger(RedisCacheService.class);
+
+    private static final long FAILURE_LOG_INTERVAL_MS = 30_000;
+
+    // Jedis connections are not thread-safe: every call borrows its own connection from the pool
+    private JedisPool pool;
 
     @Value("${spring.redis.host}")
     private String redisHost;
@@ -18,13 +39,31 @@ public class RedisCacheService {
     @Value("${spring.redis.port}")
     private int redisPort;
 
-    private static final int MAX_REQUESTS_PER_MINUTE = 100;
+    @Value("${spring.redis.timeout:2000}")
+    private int redisTimeoutMillis;
+
+    @Value("${spring.redis.pool.max-total:32}")
+    private int poolMaxTotal;
+
+    @Value("${spring.redis.pool.max-idle:16}")
+    private int poolMaxIdle;
+
+    @Value("${spring.redis.pool.min-idle:4}")
+    private int poolMinIdle;
+
+    @Value("${spring.redis.pool.max-wait-ms:50}")
+    private long poolMaxWaitMillis;
+
+    // Script source -> SHA1 digest, so each script is sent to the server once
+    private final Map<String, String> scriptShas = new ConcurrentHashMap<>();
 
-    private final Map<String, String> apiKeyToPlan = Map.of(
-            "api-key-free", "free",
-            "api-key-hobby", "hobby",
-            "api-key-enterprise", "enterprise"
-    );
+    private final LongAdder recordHits = new LongAdder();
+    private final LongAdder recordMisses = new LongAdder();
+    private final LongAdder recordErrors = new LongAdder();
+
+    // Cache calls fail soft; during an outage one warning per interval, not one line per request
+    private final AtomicLong lastFailureLog = new AtomicLong();
+    private final LongAdder unloggedFailures = new LongAdder();
 
     public RedisCacheService() {
         // Constructor should not use redisHost and redisPort yet
@@ -32,110 +71,117 @@ public class RedisCacheService {
 
     @PostConstruct
     public void init() {
-        System.out.println("Initializing Redis connection to " + redisHost + ":" + redisPort);
-        this.jedis = new Jedis(redisHost, redisPort);
+        logger.info("Initializing Redis connection pool to {}:{}", redisHost, redisPort);
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(poolMaxTotal);
+        config.setMaxIdle(poolMaxIdle);
+        config.setMinIdle(poolMinIdle);
+        // Fail fast when the pool is exhausted instead of queueing request threads behind Redis
+        config.setBlockWhenExhausted(true);
+        config.setMaxWait(Duration.ofMillis(poolMaxWaitMillis));
+        config.setTestWhileIdle(true);
+        this.pool = new JedisPool(config, redisHost, redisPort, redisTimeoutMillis);
     }
 
-    public String getCachedUrl(String shortCode) {
-        try {
-            String cachedUrl = jedis.get(shortCode);
-            System.out.println("getting from redis :: "+ cachedUrl);
-            return cachedUrl;
-        } catch (Exception e) {
-            System.out.println("Error During retrieval of url: " + e.getMessage());
-            return null;
+    @PreDestroy
+    public void close() {
+        if (pool != null) {
+            pool.close();
         }
     }
 
-    public void cacheUrl(String shortCode, String originalUrl, long ttlInSeconds) {
-        try {
-            jedis.set(shortCode, originalUrl);
-            jedis.expire(shortCode, (int) ttlInSeconds); // Custom TTL
-        } catch (Exception e) {
-            System.out.println("Error during caching the url: " + e.getMessage());
+    // Runs several commands in one round trip and returns their replies in order
+    public List<Object> pipelined(Consumer<Pipeline> commands) {
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
         }
     }
 
-    public boolean isAllowed(String ip, String path, int maxRequestsPerSec) {
-        String key = "rate:" + ip + ":" + path;
-        try {
-            long count = jedis.incr(key);
-            if (count == 1) {
-                jedis.expire(key, 1); // 1 second window
-            }
-            return count <= maxRequestsPerSec;
+    public byte[] getCachedRecord(String shortCode) {
+        try (Jedis jedis = pool.getResource()) {
+            byte[] record = jedis.get(shortCode.getBytes(StandardCharsets.UTF_8));
+            (record != null ? recordHits : recordMisses).increment();
+            return record;
         } catch (Exception e) {
-            System.out.println("Rate limit error: " + e.getMessage());
-            return true; // fallback to allow in case of Redis error
+            recordErrors.increment();
+            logFailure("read", shortCode, e);
+            return null;
         }
     }
 
-    public boolean isAllowedByApiKey(String apiKey, String path, int maxRequestsPerSec) {
-        String key = "rate:" + apiKey + ":" + path;
-        try {
-            long count = jedis.incr(key);
-            if (count == 1) {
-                jedis.expire(key, 1); // Set TTL of 1 second
-            }
-            return count <= maxRequestsPerSec;
+    public void cacheRecord(String shortCode, byte[] record, long ttlInSeconds) {
+        try (Jedis jedis = pool.getResource()) {
+            // SET ... EX: value and TTL in a single command
+            jedis.set(shortCode.getBytes(StandardCharsets.UTF_8), record, SetParams.setParams().ex(ttlInSeconds));
         } catch (Exception e) {
-            System.out.println("Rate limiting failed: " + e.getMessage());
-            return true; // Allow in case of Redis issues
+            logFailure("write", shortCode, e);
         }
     }
 
+    public void evictUrl(String shortCode) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.del(shortCode);
+        } catch (Exception e) {
+            logFailure("eviction", shortCode, e);
+        }
+    }
 
-    public boolean isAllowedByUserPlan(String apiKey, String path) {
-        String plan = apiKeyToPlan.getOrDefault(apiKey, "free");
-
-        int maxRequests;
-        int windowSeconds;
-
-        switch (plan) {
-            case "enterprise":
-                maxRequests = 100;
-                windowSeconds = 1;
-                break;
-            case "hobby":
-                maxRequests = 10;
-                windowSeconds = 1;
-                break;
-            case "free":
-            default:
-                maxRequests = 5;
-                windowSeconds = 60;
-                break;
+    private void logFailure(String operation, String shortCode, Exception e) {
+        long now = System.currentTimeMillis();
+        long last = lastFailureLog.get();
+        if (now - last > FAILURE_LOG_INTERVAL_MS && lastFailureLog.compareAndSet(last, now)) {
+            logger.warn("Redis cache {} of {} failed ({} more failures not logged since the last warning): {}",
+                    operation, shortCode, unloggedFailures.sumThenReset(), e.getMessage());
+        } else {
+            unloggedFailures.increment();
         }
+    }
 
-        String key = String.format("rate:%s:%s", apiKey, path);
-        try {
-            long count = jedis.incr(key);
-            if (count == 1) {
-                jedis.expire(key, windowSeconds);
+    // EVALSHA with the locally cached digest; a NOSCRIPT reply (server restarted or flushed) falls back to EVAL,
+    // which also puts the script back into the server's cache
+    public Object evalScript(String script, List<String> keys, List<String> args) {
+        try (Jedis jedis = pool.getResource()) {
+            String sha = scriptShas.computeIfAbsent(script, jedis::scriptLoad);
+            try {
+                return jedis.evalsha(sha, keys, args);
+            } catch (JedisNoScriptException e) {
+                return jedis.eval(script, keys, args);
             }
-            return count <= maxRequests;
-        } catch (Exception e) {
-            System.out.println("Redis rate limit error: " + e.getMessage());
-            return true; // fallback to allow if Redis is down
         }
     }
 
-    public long increment(String key, int ttlSeconds) {
-        long count = jedis.incr(key);
-        if (count == 1) {
-            jedis.expire(key, ttlSeconds);
+    public void publish(String channel, String message) {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.publish(channel, message);
         }
-        return count;
     }
 
-    public int ttl(String key) {
-        Long ttl = jedis.ttl(key);
-        return ttl > 0 ? ttl.intValue() : 0;
+    // Blocks until the subscriber unsubscribes or the connection drops. Uses its own connection, not one from
+    // the pool, so a long-lived subscription does not hold a pooled connection.
+    public void subscribe(JedisPubSub subscriber, String... channels) {
+        try (Jedis jedis = new Jedis(redisHost, redisPort, redisTimeoutMillis)) {
+            jedis.subscribe(subscriber, channels);
+        }
     }
 
+    public Map<String, Object> poolStats() {
+        return Map.of(
+                "active", pool.getNumActive(),
+                "idle", pool.getNumIdle(),
+                "waiters", pool.getNumWaiters(),
+                "maxTotal", poolMaxTotal,
+                "maxWaitMillis", poolMaxWaitMillis
+        );
+    }
 
-
-
+    // Lookups of redirect records (tombstones count as hits)
+    public Map<String, Object> recordCacheStats() {
+        return Map.of(
+                "hits", recordHits.sum(),
+                "misses", recordMisses.sum(),
+                "errors", recordErrors.sum()
+        );
+    }
 }
-
-
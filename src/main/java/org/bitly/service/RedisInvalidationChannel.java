@@ -0,0 +1,140 @@
+package org.bitly.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A Redis pub/sub channel of cache keys to drop on every node. {@link #publish} sends a key; a daemon thread
+ * per node stays subscribed and hands each received key to {@code onMessage} (the publishing node gets its own
+ * messages too). A node that is not subscribed can miss messages, so {@code onResync} runs whenever the
+ * subscription drops or is established, and callers should keep entries only briefly while
+ * {@link #isSubscribed()} is false.
+ * <p>
+ * Without Redis or with a blank channel name nothing is published and the caller's cache is node-local.
+ */
+public final class RedisInvalidationChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisInvalidationChannel.class);
+
+    private static final long RESUBSCRIBE_MILLIS = 1000;
+
+    @Nullable
+    private final RedisCacheService redisCacheService;
+    private final String channel;
+    private final Consumer<String> onMessage;
+    private final Runnable onResync;
+    private final JedisPubSub subscriber = new Subscriber();
+
+    private volatile boolean subscribed;
+    private volatile boolean running;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder subscriptionsLost = new LongAdder();
+
+    public RedisInvalidationChannel(@Nullable RedisCacheService redisCacheService, String channel,
+                                    Consumer<String> onMessage, Runnable onResync) {
+        this.redisCacheService = redisCacheService;
+        this.channel = channel == null ? "" : channel.trim();
+        this.onMessage = onMessage;
+        this.onResync = onResync;
+    }
+
+    public boolean isEnabled() {
+        return redisCacheService != null && !channel.isEmpty();
+    }
+
+    // False while a node with a channel is (re)connecting: it may be missing invalidations
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    public void start(String threadName) {
+        if (!isEnabled()) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void close() {
+        running = false;
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+    }
+
+    public void publish(String key) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            redisCacheService.publish(channel, key);
+            published.increment();
+        } catch (Exception e) {
+            logger.warn("Could not publish invalidation on {}: {}", channel, e.getMessage());
+        }
+    }
+
+    // Blocks in SUBSCRIBE; when the connection drops, resyncs and subscribes again
+    private void run() {
+        boolean warned = false;
+        while (running) {
+            try {
+                redisCacheService.subscribe(subscriber, channel);
+            } catch (Exception e) {
+                // Every lost subscription, but only the first of a run of failed reconnects
+                if (running && (subscribed || !warned)) {
+                    logger.warn("Not subscribed to invalidations on {}: {}", channel, e.getMessage());
+                    warned = true;
+                }
+            }
+            if (subscribed) {
+                subscribed = false;
+                subscriptionsLost.increment();
+                onResync.run();
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RESUBSCRIBE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class Subscriber extends JedisPubSub {
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // Anything cached while unsubscribed may have missed a message
+            onResync.run();
+            subscribed = true;
+        }
+
+        @Override
+        public void onMessage(String channel, String key) {
+            received.increment();
+            onMessage.accept(key);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "invalidationsSubscribed", subscribed,
+                "invalidationsPublished", published.sum(),
+                "invalidationsReceived", received.sum(),
+                "subscriptionsLost", subscriptionsLost.sum()
+        );
+    }
+}
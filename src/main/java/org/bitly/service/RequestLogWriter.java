@@ -0,0 +1,207 @@
+package org.bitly.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bitly.cache.MpscRingBuffer;
+import org.bitly.repository.RequestLogBatchRepository;
+import org.bitly.repository.RequestLogSink;
+import org.bitly.repository.RequestLogSink.LogEntry;
+import org.bitly.repository.SegmentedRequestLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous request log. Request threads only {@link #enqueue} an entry into a bounded lock-free
+ * ring buffer; one writer thread drains it and writes multi-row INSERTs of up to
+ * {@code requestlog.batch-size} entries, at least every {@code requestlog.flush-interval-ms}, into the
+ * {@code requestlog.sink}: {@code sqlite} (request_logs) or {@code segments} ({@link SegmentedRequestLog}).
+ * <p>
+ * When the buffer is full, {@code requestlog.overflow-policy} decides: {@code drop} the entry,
+ * {@code sample} (past 3/4 full keep 1 in {@code requestlog.sample-rate}, drop when full) or {@code block}
+ * the request thread for up to {@code requestlog.block-timeout-ms} before dropping.
+ */
+@Service
+public class RequestLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestLogWriter.class);
+
+    public enum OverflowPolicy {
+        DROP, SAMPLE, BLOCK;
+
+        public static OverflowPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final RequestLogSink sink;
+    private final MpscRingBuffer<LogEntry> buffer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+    private final long blockTimeoutNanos;
+    private final int sampleThreshold;
+
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    // Metrics
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile long lastBatchMillis;
+
+    @Autowired
+    public RequestLogWriter(RequestLogBatchRepository sqlite,
+                            SegmentedRequestLog segments,
+                            @Value("${requestlog.sink:sqlite}") String sink,
+                            @Value("${requestlog.capacity:8192}") int capacity,
+                            @Value("${requestlog.batch-size:500}") int batchSize,
+                            @Value("${requestlog.flush-interval-ms:200}") long flushIntervalMillis,
+                            @Value("${requestlog.overflow-policy:sample}") String overflowPolicy,
+                            @Value("${requestlog.sample-rate:10}") int sampleRate,
+                            @Value("${requestlog.block-timeout-ms:50}") long blockTimeoutMillis) {
+        this("segments".equalsIgnoreCase(sink.trim()) ? segments : sqlite,
+                capacity, batchSize, flushIntervalMillis, overflowPolicy, sampleRate, blockTimeoutMillis);
+    }
+
+    public RequestLogWriter(RequestLogSink sink, int capacity, int batchSize, long flushIntervalMillis,
+                            String overflowPolicy, int sampleRate, long blockTimeoutMillis) {
+        this.sink = sink;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.overflowPolicy = OverflowPolicy.parse(overflowPolicy);
+        this.sampleRate = Math.max(1, sampleRate);
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.sampleThreshold = capacity - capacity / 4;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::runWriter, "request-log-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    // Request thread: one small record and a CAS, unless the buffer is (nearly) full
+    public void enqueue(long timestampMillis, String method, String url, String userAgent, String ip) {
+        if (overflowPolicy == OverflowPolicy.SAMPLE && buffer.size() >= sampleThreshold) {
+            if (sampleCounter.incrementAndGet() % sampleRate != 0) {
+                sampledOut.increment();
+                return;
+            }
+        }
+
+        LogEntry entry = new LogEntry(timestampMillis, method, url, userAgent, ip);
+        if (buffer.offer(entry)) {
+            enqueued.increment();
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            long deadline = System.nanoTime() + blockTimeoutNanos;
+            wakeWriter();
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(100_000);
+                if (buffer.offer(entry)) {
+                    enqueued.increment();
+                    return;
+                }
+            }
+        }
+        dropped.increment();
+    }
+
+    private void wakeWriter() {
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                if (drain() < batchSize) {
+                    LockSupport.parkNanos(this, flushIntervalNanos);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Request log writer failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Writes one batch of at most batch-size entries and returns how many were taken from the buffer
+    public int drain() {
+        List<LogEntry> batch = new ArrayList<>(Math.min(batchSize, buffer.size()));
+        int count = buffer.drainTo(batch, batchSize);
+        if (count == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try {
+            sink.append(batch);
+            flushed.addAndGet(count);
+            batches.incrementAndGet();
+        } catch (RuntimeException e) {
+            // Request logs are not worth stalling the writer for: count the batch and move on
+            failedBatches.incrementAndGet();
+            dropped.add(count);
+            logger.error("Request log batch of {} entries failed: {}", count, e.getMessage());
+        }
+        lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (thread == null || !thread.isAlive()) {
+            while (drain() > 0) {
+                // flush whatever is left; drain() is single-consumer, so only once the writer has stopped
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "overflowPolicy", overflowPolicy.name().toLowerCase(),
+                "buffered", buffer.size(),
+                "capacity", buffer.capacity(),
+                "enqueued", enqueued.sum(),
+                "flushed", flushed.get(),
+                "dropped", dropped.sum(),
+                "sampledOut", sampledOut.sum(),
+                "batches", batches.get(),
+                "failedBatches", failedBatches.get(),
+                "lastBatchMillis", lastBatchMillis
+        );
+    }
+}
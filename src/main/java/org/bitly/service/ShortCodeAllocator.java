@@ -0,0 +1,74 @@
+package org.bitly.service;
+
+import org.bitly.repository.ShortCodeSequenceRepository;
+import org.bitly.util.ShortCodeScrambler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out collision-free short codes without asking the database whether a code exists.
+ * Ids come from blocks of {@code shortcode.allocator.block-size} reserved in {@code short_code_sequence},
+ * so nodes sharing a database never hand out the same id, and each id is scrambled into a base62 code.
+ * <p>
+ * {@code shortcode.allocator.key} is a secret: anyone who has it can turn codes back into ids and enumerate
+ * every link. It has no default and startup fails without it; set it through the environment
+ * ({@code SHORTCODE_ALLOCATOR_KEY}) or an external config file, the same on every node. Changing it only makes
+ * new codes follow a different permutation; codes that collide with existing ones are skipped.
+ */
+@Service
+public class ShortCodeAllocator {
+
+    private static final String SEQUENCE_NAME = "short_code";
+
+    private final ShortCodeSequenceRepository sequenceRepository;
+    private final ShortCodeScrambler scrambler;
+    private final long blockSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long end;
+
+    @Autowired
+    public ShortCodeAllocator(ShortCodeSequenceRepository sequenceRepository,
+                              @Value("${shortcode.length:6}") int codeLength,
+                              @Value("${shortcode.allocator.key:}") String key,
+                              @Value("${shortcode.allocator.block-size:10000}") long blockSize) {
+        this(sequenceRepository, codeLength, parseKey(key), blockSize);
+    }
+
+    public ShortCodeAllocator(ShortCodeSequenceRepository sequenceRepository, int codeLength, long key, long blockSize) {
+        this.sequenceRepository = sequenceRepository;
+        this.scrambler = new ShortCodeScrambler(codeLength, key);
+        this.blockSize = blockSize;
+    }
+
+    private static long parseKey(String key) {
+        if (key == null || key.isBlank()) {
+            throw new IllegalStateException("shortcode.allocator.key is not set; set SHORTCODE_ALLOCATOR_KEY to a random "
+                    + "64-bit integer, the same on every node");
+        }
+        try {
+            return Long.parseLong(key.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("shortcode.allocator.key must be a 64-bit integer", e);
+        }
+    }
+
+    public String nextCode() {
+        long id;
+        lock.lock();
+        try {
+            if (next >= end) {
+                next = sequenceRepository.reserveBlock(SEQUENCE_NAME, blockSize);
+                end = next + blockSize;
+            }
+            id = next++;
+        } finally {
+            lock.unlock();
+        }
+        return scrambler.encode(id);
+    }
+}
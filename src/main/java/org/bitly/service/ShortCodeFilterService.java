@@ -0,0 +1,185 @@
+package org.bitly.service;
+
+import jakarta.annotation.PreDestroy;
+import org.bitly.cache.BloomFilter;
+import org.bitly.repository.UrlBatchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Bloom filter over every live short code, consulted before any cache or database lookup.
+ * A "no" is definite, so probes for random codes are answered with a 404 without leaving the JVM.
+ * <p>
+ * Codes created on this node are added immediately; codes created by other nodes are picked up by an
+ * incremental {@code id > lastSeenId} scan every {@code shortcode.filter.refresh-interval-ms}.
+ * Until the filter is built every lookup is let through.
+ * <p>
+ * The snapshot written on shutdown records the last scanned id and the code of that row. It is only reused if the
+ * database still has that row with that code; a restored, replaced or recreated database gets a full rebuild,
+ * since codes at or below the snapshot's id would otherwise never reach the filter.
+ */
+@Service
+public class ShortCodeFilterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShortCodeFilterService.class);
+
+    // Leads the snapshot file; the first format started with the (non-negative) last id instead
+    private static final long SNAPSHOT_FORMAT = -2;
+
+    // The last scanned row; the code identifies this database when a snapshot is reloaded
+    private record Checkpoint(long id, String shortCode) {}
+
+    private final UrlBatchRepository urlBatchRepository;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final String snapshotPath;
+
+    private volatile BloomFilter filter;
+    private volatile Checkpoint lastSeen = new Checkpoint(0, "");
+
+    public ShortCodeFilterService(UrlBatchRepository urlBatchRepository,
+                                  @Value("${shortcode.filter.expected-insertions:10000000}") long expectedInsertions,
+                                  @Value("${shortcode.filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${shortcode.filter.snapshot-path:}") String snapshotPath) {
+        this.urlBatchRepository = urlBatchRepository;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.snapshotPath = snapshotPath;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        BloomFilter loaded = loadSnapshot();
+        BloomFilter building = loaded != null ? loaded : BloomFilter.create(expectedInsertions, falsePositiveRate);
+        Checkpoint from = loaded != null ? lastSeen : new Checkpoint(0, "");
+
+        lastSeen = scan(from, building);
+        filter = building;
+        logger.info("Short code filter ready in {} ms ({} codes, snapshot {})",
+                System.currentTimeMillis() - start, building.getInsertions(), loaded != null ? "loaded" : "not used");
+    }
+
+    @Scheduled(fixedDelayString = "${shortcode.filter.refresh-interval-ms:2000}")
+    public void refresh() {
+        BloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        lastSeen = scan(lastSeen, current);
+        if (current.getInsertions() > expectedInsertions) {
+            logger.warn("Short code filter holds {} codes (sized for {}); false-positive rate is now {}",
+                    current.getInsertions(), expectedInsertions, current.expectedFalsePositiveRate());
+        }
+    }
+
+    // Rows come in id order, so the last code handed over belongs to the returned max id
+    private Checkpoint scan(Checkpoint from, BloomFilter target) {
+        String[] lastCode = {from.shortCode()};
+        long lastId = urlBatchRepository.forEachShortCodeAfter(from.id(), code -> {
+            target.put(code);
+            lastCode[0] = code;
+        });
+        return new Checkpoint(lastId, lastCode[0]);
+    }
+
+    public boolean mightContain(String shortCode) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(shortCode);
+    }
+
+    public void add(String shortCode) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(shortCode);
+        }
+    }
+
+    @PreDestroy
+    public void saveSnapshot() {
+        BloomFilter current = filter;
+        if (current == null || snapshotPath.isBlank()) {
+            return;
+        }
+        Path target = Path.of(snapshotPath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            Checkpoint checkpoint = lastSeen;
+            out.writeLong(SNAPSHOT_FORMAT);
+            out.writeLong(checkpoint.id());
+            out.writeUTF(checkpoint.shortCode());
+            current.writeTo(out);
+        } catch (IOException e) {
+            logger.warn("Could not write short code filter snapshot: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not replace short code filter snapshot: {}", e.getMessage());
+        }
+    }
+
+    // A snapshot is only reused if it was built with the same sizing from this database; the scan then resumes
+    // after its last id
+    private BloomFilter loadSnapshot() {
+        if (snapshotPath.isBlank() || !Files.exists(Path.of(snapshotPath))) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(snapshotPath))))) {
+            if (in.readLong() != SNAPSHOT_FORMAT) {
+                logger.info("Short code filter snapshot has an older format, rebuilding");
+                return null;
+            }
+            Checkpoint checkpoint = new Checkpoint(in.readLong(), in.readUTF());
+            BloomFilter snapshot = BloomFilter.readFrom(in);
+            if (snapshot.getNumBits() != BloomFilter.optimalNumBits(expectedInsertions, falsePositiveRate)
+                    || snapshot.getNumHashes() != BloomFilter.optimalNumHashes(expectedInsertions, falsePositiveRate)) {
+                logger.info("Short code filter snapshot was built with different sizing, rebuilding");
+                return null;
+            }
+            long maxId = urlBatchRepository.maxId();
+            if (maxId < checkpoint.id()) {
+                logger.warn("Short code filter snapshot reaches id {} but the database ends at {}, rebuilding",
+                        checkpoint.id(), maxId);
+                return null;
+            }
+            if (checkpoint.id() > 0 && !checkpoint.shortCode().equals(urlBatchRepository.shortCodeAt(checkpoint.id()))) {
+                logger.warn("Short code filter snapshot was taken from a different database (row {} does not match), rebuilding",
+                        checkpoint.id());
+                return null;
+            }
+            lastSeen = checkpoint;
+            return snapshot;
+        } catch (IOException e) {
+            logger.warn("Could not read short code filter snapshot: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        BloomFilter current = filter;
+        if (current == null) {
+            return Map.of("ready", false);
+        }
+        return Map.of(
+                "ready", true,
+                "codes", current.getInsertions(),
+                "bits", current.getNumBits(),
+                "hashes", current.getNumHashes(),
+                "expectedFalsePositiveRate", current.expectedFalsePositiveRate(),
+                "lastSeenId", lastSeen.id()
+        );
+    }
+}
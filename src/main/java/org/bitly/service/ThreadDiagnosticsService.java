@@ -0,0 +1,131 @@
+package org.bitly.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports which execution mode requests run in ({@code spring.threads.virtual.enabled}) and, in virtual mode,
+ * streams JFR {@code jdk.VirtualThreadPinned} events so carrier pinning (a virtual thread blocking inside
+ * {@code synchronized} or native code) shows up at /health/threads with the frames that caused it.
+ */
+@Service
+public class ThreadDiagnosticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadDiagnosticsService.class);
+
+    private static final int MAX_PINNING_SITES = 20;
+
+    private final boolean virtualThreadsRequested;
+    private final long pinnedThresholdMs;
+    private final boolean virtualThreadsActive;
+
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final AtomicLong maxPinnedNanos = new AtomicLong();
+    private final LongAdder submitFailures = new LongAdder();
+    private final Map<String, LongAdder> pinningSites = new ConcurrentHashMap<>();
+
+    private RecordingStream recordingStream;
+
+    public ThreadDiagnosticsService(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsRequested,
+                                    @Value("${threads.pinned.threshold-ms:20}") long pinnedThresholdMs) {
+        this.virtualThreadsRequested = virtualThreadsRequested;
+        this.pinnedThresholdMs = pinnedThresholdMs;
+        // Spring Boot only switches Tomcat and the schedulers to virtual threads on Java 21+
+        this.virtualThreadsActive = virtualThreadsRequested && Runtime.version().feature() >= 21;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (virtualThreadsRequested && !virtualThreadsActive) {
+            logger.warn("spring.threads.virtual.enabled is set but Java {} has no virtual threads; serving on platform threads",
+                    Runtime.version().feature());
+        }
+        if (!virtualThreadsActive) {
+            return;
+        }
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable("jdk.VirtualThreadPinned")
+                    .withThreshold(Duration.ofMillis(pinnedThresholdMs))
+                    .withStackTrace();
+            recordingStream.enable("jdk.VirtualThreadSubmitFailed");
+            recordingStream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            recordingStream.onEvent("jdk.VirtualThreadSubmitFailed", event -> submitFailures.increment());
+            recordingStream.startAsync();
+            logger.info("Serving on virtual threads; reporting pinning longer than {} ms", pinnedThresholdMs);
+        } catch (RuntimeException e) {
+            logger.warn("Could not start pinning diagnostics: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        long nanos = event.getDuration().toNanos();
+        pinnedEvents.increment();
+        pinnedNanos.add(nanos);
+        maxPinnedNanos.accumulateAndGet(nanos, Math::max);
+
+        String site = pinningSite(event);
+        if (pinningSites.containsKey(site) || pinningSites.size() < MAX_PINNING_SITES) {
+            pinningSites.computeIfAbsent(site, key -> new LongAdder()).increment();
+        }
+    }
+
+    // First application or driver frame below the JDK internals, e.g. "org.sqlite.core.DB.executeBatch"
+    private static String pinningSite(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return "jdk";
+    }
+
+    public Map<String, Object> stats() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", virtualThreadsActive ? "virtual" : "platform");
+        stats.put("javaVersion", Runtime.version().feature());
+        stats.put("carrierParallelism", Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors()));
+        stats.put("platformThreads", threads.getThreadCount());
+        stats.put("peakPlatformThreads", threads.getPeakThreadCount());
+        if (virtualThreadsActive) {
+            stats.put("pinnedThresholdMs", pinnedThresholdMs);
+            stats.put("pinnedEvents", pinnedEvents.sum());
+            stats.put("pinnedTotalMillis", pinnedNanos.sum() / 1_000_000);
+            stats.put("pinnedMaxMillis", maxPinnedNanos.get() / 1_000_000);
+            stats.put("submitFailures", submitFailures.sum());
+            Map<String, Long> sites = new TreeMap<>();
+            pinningSites.forEach((site, count) -> sites.put(site, count.sum()));
+            stats.put("pinningSites", sites);
+        }
+        return stats;
+    }
+}
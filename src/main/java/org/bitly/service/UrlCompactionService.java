@@ -0,0 +1,170 @@
+package org.bitly.service;
+
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.ArchivedChunk;
+import org.bitly.repository.UrlBatchRepository.ArchivedUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves soft-deleted links, and links expired for more than {@code compaction.expired-grace-hours}, out of
+ * {@code url_shortener} into {@code url_shortener_archive}, so lookups and the short code index stop paying for
+ * dead rows.
+ * <p>
+ * Every {@code compaction.interval-ms} a run walks the table in id order from a checkpoint kept in the database,
+ * {@code compaction.chunk-size} ids per write, and stops after {@code compaction.max-rows-per-second} worth of
+ * rows, so it never holds the writer for long and picks up where it stopped after a restart. After a full pass
+ * it waits {@code compaction.pass-interval-ms} before starting over. Archived codes are evicted from Redis, the
+ * local cache, the recent rings and the all-time leaderboard.
+ */
+@Service
+public class UrlCompactionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlCompactionService.class);
+
+    static final String CHECKPOINT = "url_shortener";
+
+    private final UrlBatchRepository urlBatchRepository;
+    private final RedisCacheService redisCacheService;
+    private final LocalUrlCacheService localUrlCache;
+    private final RecentShortenedUrlService recentUrls;
+    private final ClickLeaderboardService clickLeaderboard;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long rowsPerRun;
+    private final long passIntervalMillis;
+    private final long expiredGraceHours;
+
+    // Not a monitor: a run blocks on the writer, and on virtual threads a monitor would pin the carrier meanwhile
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile long checkpoint;
+    private volatile long nextPassAt;
+    private volatile long lastPassCompletedAt;
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong archivedDeleted = new AtomicLong();
+    private final AtomicLong archivedExpired = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong chunkNanos = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public UrlCompactionService(UrlBatchRepository urlBatchRepository,
+                                RedisCacheService redisCacheService,
+                                LocalUrlCacheService localUrlCache,
+                                RecentShortenedUrlService recentUrls,
+                                ClickLeaderboardService clickLeaderboard,
+                                @Value("${compaction.enabled:true}") boolean enabled,
+                                @Value("${compaction.chunk-size:500}") int chunkSize,
+                                @Value("${compaction.max-rows-per-second:5000}") long maxRowsPerSecond,
+                                @Value("${compaction.interval-ms:1000}") long intervalMillis,
+                                @Value("${compaction.pass-interval-ms:3600000}") long passIntervalMillis,
+                                @Value("${compaction.expired-grace-hours:168}") long expiredGraceHours) {
+        this.urlBatchRepository = urlBatchRepository;
+        this.redisCacheService = redisCacheService;
+        this.localUrlCache = localUrlCache;
+        this.recentUrls = recentUrls;
+        this.clickLeaderboard = clickLeaderboard;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        // fixedDelay: the next run starts intervalMillis after this one ends, so this is an upper bound on the rate
+        this.rowsPerRun = Math.max(1, maxRowsPerSecond * intervalMillis / 1000);
+        this.passIntervalMillis = passIntervalMillis;
+        this.expiredGraceHours = expiredGraceHours;
+    }
+
+    @Scheduled(fixedDelayString = "${compaction.interval-ms:1000}", initialDelayString = "${compaction.interval-ms:1000}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    // One run: chunks until the row budget is used or the pass reaches the end of the table. Skipped while another
+    // run is in progress.
+    public void run() {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            runChunks();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void runChunks() {
+        if (System.currentTimeMillis() < nextPassAt) {
+            return;
+        }
+        long budget = rowsPerRun;
+        try {
+            while (budget > 0) {
+                long start = System.nanoTime();
+                ArchivedChunk chunk = SqliteWriteQueue.await(urlBatchRepository.archiveChunk(CHECKPOINT,
+                        (int) Math.min(chunkSize, budget), LocalDateTime.now().minusHours(expiredGraceHours)));
+                chunkNanos.addAndGet(System.nanoTime() - start);
+                chunks.incrementAndGet();
+                checkpoint = chunk.toId();
+                if (chunk.scanned() == 0) {
+                    passes.incrementAndGet();
+                    lastPassCompletedAt = System.currentTimeMillis();
+                    nextPassAt = lastPassCompletedAt + passIntervalMillis;
+                    return;
+                }
+                budget -= chunk.scanned();
+                scanned.addAndGet(chunk.scanned());
+                evict(chunk.archived());
+            }
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("URL compaction stopped at id {}, resuming next run: {}", checkpoint, e.getMessage());
+        }
+    }
+
+    // The rows are already gone from the table, so a failed eviction only leaves entries that answer 404 until they expire
+    private void evict(List<ArchivedUrl> archived) {
+        if (archived.isEmpty()) {
+            return;
+        }
+        List<String> shortCodes = archived.stream().map(ArchivedUrl::shortCode).toList();
+        for (ArchivedUrl url : archived) {
+            (url.deleted() ? archivedDeleted : archivedExpired).incrementAndGet();
+            localUrlCache.invalidate(url.shortCode());
+            recentUrls.remove(url.shortCode(), url.userId());
+        }
+        try {
+            redisCacheService.pipelined(pipeline -> shortCodes.forEach(pipeline::del));
+            clickLeaderboard.remove(shortCodes);
+        } catch (Exception e) {
+            logger.warn("Could not evict {} archived codes from Redis: {}", shortCodes.size(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long chunkCount = chunks.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("checkpoint", checkpoint);
+        stats.put("passes", passes.get());
+        stats.put("lastPassCompletedAt", lastPassCompletedAt);
+        stats.put("nextPassInMs", Math.max(0, nextPassAt - System.currentTimeMillis()));
+        stats.put("scanned", scanned.get());
+        stats.put("archivedDeleted", archivedDeleted.get());
+        stats.put("archivedExpired", archivedExpired.get());
+        stats.put("chunks", chunkCount);
+        stats.put("averageChunkMicros", chunkCount == 0 ? 0 : chunkNanos.get() / chunkCount / 1000);
+        stats.put("failures", failures.get());
+        return stats;
+    }
+}
@@ -0,0 +1,101 @@
+package org.bitly.service;
+
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.util.UrlNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills {@code url_fingerprint} for rows written before the column existed; new rows get it on insert.
+ * <p>
+ * Runs once after startup in the background, walking the table by primary key {@code fingerprint.backfill.chunk-size}
+ * ids at a time and pausing {@code fingerprint.backfill.pause-ms} between chunks so it does not crowd the writer.
+ * Safe to run on several nodes at once and to interrupt: it only fills rows that are still NULL.
+ */
+@Service
+public class UrlFingerprintBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlFingerprintBackfillService.class);
+
+    private final UrlBatchRepository urlBatchRepository;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    private volatile boolean running;
+    private volatile long lastId;
+    private volatile long completedAt;
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong backfilled = new AtomicLong();
+
+    public UrlFingerprintBackfillService(UrlBatchRepository urlBatchRepository,
+                                         @Value("${fingerprint.backfill.chunk-size:1000}") int chunkSize,
+                                         @Value("${fingerprint.backfill.pause-ms:20}") long pauseMillis) {
+        this.urlBatchRepository = urlBatchRepository;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread backfill = new Thread(() -> {
+            try {
+                backfill();
+            } catch (Exception e) {
+                logger.warn("URL fingerprint backfill stopped at id {}: {}", lastId, e.getMessage());
+            }
+        }, "url-fingerprint-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    public void backfill() throws InterruptedException {
+        if (!urlBatchRepository.hasMissingFingerprints()) {
+            completedAt = System.currentTimeMillis();
+            return;
+        }
+        running = true;
+        long start = System.currentTimeMillis();
+        try {
+            long afterId = 0;
+            while (true) {
+                Map<Long, Long> fingerprints = new LinkedHashMap<>();
+                long walkedTo = urlBatchRepository.forEachMissingFingerprint(afterId, chunkSize,
+                        (id, url) -> fingerprints.put(id, UrlNormalizer.fingerprint64(url != null ? url : "")));
+                if (walkedTo == afterId) {
+                    break;
+                }
+                if (!fingerprints.isEmpty()) {
+                    backfilled.addAndGet(SqliteWriteQueue.await(urlBatchRepository.setFingerprints(fingerprints)));
+                }
+                missing.addAndGet(fingerprints.size());
+                afterId = walkedTo;
+                lastId = walkedTo;
+                TimeUnit.MILLISECONDS.sleep(pauseMillis);
+            }
+            completedAt = System.currentTimeMillis();
+            logger.info("URL fingerprints backfilled for {} rows in {} ms", backfilled.get(), completedAt - start);
+        } finally {
+            running = false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        stats.put("lastId", lastId);
+        stats.put("missing", missing.get());
+        stats.put("backfilled", backfilled.get());
+        stats.put("completedAt", completedAt);
+        return stats;
+    }
+}
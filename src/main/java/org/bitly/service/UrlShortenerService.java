@@ -1,23 +1,29 @@
 package org.bitly.service;
 
 import jakarta.servlet.http.HttpServletRequest;
-import jakarta.transaction.Transactional;
+import org.bitly.cache.RedirectRecord;
 import org.bitly.entity.UrlMapping;
 import org.bitly.entity.User;
+import org.bitly.metrics.RequestTimeline;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.FingerprintMatch;
+import org.bitly.repository.UrlBatchRepository.UrlRow;
+import org.bitly.repository.SqliteWriteQueue;
 import org.bitly.repository.UrlRepository;
-import org.bitly.repository.UserRepository;
 import org.bitly.util.NUtil;
+import org.bitly.util.UrlNormalizer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.Nullable;
+import redis.clients.jedis.exceptions.JedisException;
 
 
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 public class UrlShortenerService {
@@ -26,124 +32,105 @@ public class UrlShortenerService {
     private UrlRepository urlRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private RedisCacheService redisCacheService;
 
     @Autowired
-    private RedisCacheService redisCacheService;
+    private LocalUrlCacheService localUrlCache;
+
+    @Autowired
+    private ClickBufferService clickBufferService;
 
-    private final Map<String, UrlMapping> urlCache = new ConcurrentHashMap<>();
+    @Autowired
+    private ShortCodeFilterService shortCodeFilter;
+
+    @Autowired
+    private ShortCodeAllocator shortCodeAllocator;
 
-    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-    private static final int SHORT_CODE_LENGTH = 6;
+    @Autowired
+    private BatchShortenService batchShortenService;
+
+    @Autowired
+    private ClickLeaderboardService clickLeaderboard;
+
+    @Autowired
+    private HeavyHittersService heavyHitters;
+
+    @Autowired
+    private RecentShortenedUrlService recentUrls;
+
+    @Autowired
+    private UrlBatchRepository urlBatchRepository;
+
+    private static final long REDIS_TTL_SECONDS = 3600;
+    private static final int MAX_ALLOCATION_ATTEMPTS = 10;
+    private static final int STREAM_PAGE_SIZE = 1000;
+    private static final int REUSE_CANDIDATES = 4;
 
     // Method to shorten the URL
     public String shortenUrlOld(String originalUrl) {
         // Check if the URL already exists in the database
-        Optional<UrlMapping> existingUrlMapping = urlRepository.findByOriginalUrl(originalUrl);
+        Optional<String> existingCode = findExistingCode(originalUrl, null);
 
-        if (existingUrlMapping.isPresent()) {
+        if (existingCode.isPresent()) {
             // If the URL already exists, return the existing short code
-            return existingUrlMapping.get().getShortCode();
+            return existingCode.get();
         } else {
-            // If the URL is not in the database, generate a new short code
-            String shortCode;
-            do {
-                shortCode = generateShortCode();
-            } while (urlRepository.findByShortCode(shortCode).isPresent()); // Ensure the short code is unique
-
-            // Save the new URL mapping
-            UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, 10L, null, null);
-            urlRepository.save(urlMapping);
-            return shortCode;
+            // If the URL is not in the database, save it under a newly allocated short code
+            UrlMapping saved = saveWithAllocatedCode(new UrlMapping(null, originalUrl, 10L, null, null));
+            heavyHitters.record(originalUrl);
+            recentUrls.record(saved.getShortCode(), originalUrl, saved.getUserId(), saved.getCreatedAt());
+            return saved.getShortCode();
         }
     }
 
-    public String shortenUrl(String originalUrl, String apiKey, @Nullable String customCode,
+    public String shortenUrl(String originalUrl, User user, @Nullable String customCode,
                              @Nullable LocalDateTime expiryDate, @Nullable String password) {
-        User user = userRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
-
-        String shortCode;
-        if (customCode != null && !customCode.isBlank()) {
-            if (urlRepository.findByShortCodeAndIsDeletedFalse(customCode).isPresent()) {
-                throw new RuntimeException("Custom short code is already taken");
+        // Opt-in per user: a plain link (no custom code, expiry or password) reuses the user's existing code
+        if (user.isReuseExistingCodes() && (customCode == null || customCode.isBlank()) && expiryDate == null
+                && (password == null || password.isBlank())) {
+            Optional<String> existingCode = findExistingCode(originalUrl, user.getId());
+            if (existingCode.isPresent()) {
+                return existingCode.get();
             }
-            shortCode = customCode;
-        } else {
-            do {
-                shortCode = generateShortCode();
-            } while (urlRepository.findByShortCodeAndIsDeletedFalse(shortCode).isPresent());
         }
 
         // Hash password if provided
         String hashedPassword = (password != null && !password.isBlank()) ?  NUtil.hashPassword(password): null;
 
-        UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, user.getId(), expiryDate, hashedPassword);
+        UrlMapping urlMapping = new UrlMapping(customCode, originalUrl, user.getId(), expiryDate, hashedPassword);
 
-        // Store hashed password if provided
-        if (password != null && !password.isBlank()) {
-            urlMapping.setPassword(NUtil.hashPassword(password));
+        if (customCode != null && !customCode.isBlank()) {
+            // The unique index has the last word: a deleted or archived code, or a concurrent insert, is also taken
+            if (urlRepository.findByShortCodeAndIsDeletedFalse(customCode).isPresent()
+                    || !SqliteWriteQueue.await(urlBatchRepository.insertUrls(List.of(urlMapping)))[0]) {
+                throw new RuntimeException("Custom short code is already taken");
+            }
+        } else {
+            saveWithAllocatedCode(urlMapping);
         }
 
-        urlRepository.save(urlMapping);
+        String shortCode = urlMapping.getShortCode();
+        shortCodeFilter.add(shortCode);
+        localUrlCache.invalidate(shortCode); // drop a cached "not found" for this code
+        heavyHitters.record(originalUrl);
+        recentUrls.record(shortCode, originalUrl, user.getId(), urlMapping.getCreatedAt());
         return shortCode;
     }
 
 
 
+    public static final String BATCH_THROUGHPUT_ATTRIBUTE = "batchRowsPerSecond";
+
     public List<Map<String, String>> shortenUrls(List<Map<String, String>> urlRequests, HttpServletRequest httpRequest) {
         User user = (User) httpRequest.getAttribute("authenticatedUser");
 
-        List<Map<String, String>> results = new ArrayList<>();
-
-        for (Map<String, String> request : urlRequests) {
-            String originalUrl = request.get("originalUrl");
-            String customCode = request.get("customCode");  // Allow custom short code
-            String password = request.get("password");  // Optional password field
-            LocalDateTime expiryDate = request.containsKey("expiry_date") ?
-                    LocalDateTime.parse(request.get("expiry_date")) : null;
-
-            String shortCode;
-            if (customCode != null && !customCode.isBlank()) {
-                // Validate if custom code is already taken
-                if (urlRepository.findByShortCodeAndIsDeletedFalse(customCode).isPresent()) {
-                    results.add(Map.of(
-                            "originalUrl", originalUrl,
-                            "error", "Custom short code '" + customCode + "' is already taken"
-                    ));
-                    continue; // Skip saving this entry
-                }
-                shortCode = customCode;
-            } else {
-                // Generate a random short code if none is provided
-                do {
-                    shortCode = generateShortCode();
-                } while (urlRepository.findByShortCodeAndIsDeletedFalse(shortCode).isPresent());
-            }
-
-            // Hash password if provided
-            String hashedPassword = (password != null && !password.isBlank()) ?  NUtil.hashPassword(password): null;
-
-            // Save mapping
-            UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, user.getId(), expiryDate, hashedPassword);
-            urlRepository.save(urlMapping);
-
-            results.add(Map.of(
-                    "originalUrl", originalUrl,
-                    "shortCode", shortCode,
-                    "expiry_date", expiryDate != null ? expiryDate.toString() : "Never",
-                    "password_protected", hashedPassword != null ? "Yes" : "No"
-            ));
-        }
-
-        return results;
+        BatchShortenService.BatchResult result = batchShortenService.shorten(urlRequests, user.getId());
+        httpRequest.setAttribute(BATCH_THROUGHPUT_ATTRIBUTE, result.rowsPerSecond());
+        return result.results();
     }
 
 
-    public void updateExpiry(String shortCode, String apiKey, LocalDateTime newExpiryDate) {
-        User user = userRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
-
+    public void updateExpiry(String shortCode, User user, LocalDateTime newExpiryDate) {
         UrlMapping urlMapping = urlRepository.findByShortCodeAndIsDeletedFalse(shortCode)
                 .orElseThrow(() -> new RuntimeException("Short code not found"));
 
@@ -154,13 +141,9 @@ public class UrlShortenerService {
 
         // Update expiry date
         urlMapping.setExpiryDate(newExpiryDate);
-
-
-        // 🧠 Recalculate TTL in seconds
-        long secondsToExpire = Duration.between(LocalDateTime.now(), newExpiryDate).getSeconds();
-        redisCacheService.cacheUrl(shortCode, urlMapping.getOriginalUrl(), secondsToExpire);
-
-        urlRepository.save(urlMapping);
+        SqliteWriteQueue.await(urlBatchRepository.updateExpiry(shortCode, newExpiryDate));
+        cacheRedirectRecord(shortCode, RedirectRecord.of(urlMapping));
+        localUrlCache.invalidateEverywhere(shortCode);
     }
 
 
@@ -175,47 +158,77 @@ public class UrlShortenerService {
     }
 
 
-    // Method to generate a random short code
-    private String generateShortCode() {
-        Random random = new Random();
-        StringBuilder sb = new StringBuilder(SHORT_CODE_LENGTH);
-        for (int i = 0; i < SHORT_CODE_LENGTH; i++) {
-            sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+    // One integer lookup on the URL fingerprint index; comparing the normalized URLs rules out a hash collision
+    private Optional<String> findExistingCode(String originalUrl, @Nullable Long userId) {
+        String normalized = UrlNormalizer.normalize(originalUrl);
+        return urlBatchRepository.findByFingerprint(UrlNormalizer.fingerprint64(originalUrl), userId, REUSE_CANDIDATES).stream()
+                .filter(match -> UrlNormalizer.normalize(match.originalUrl()).equals(normalized))
+                .map(FingerprintMatch::shortCode)
+                .findFirst();
+    }
+
+    // Allocated codes never collide with each other, so there is no existence check. They can still match a
+    // custom code or one generated before the allocator existed; the unique index rejects those and the next id is used.
+    private UrlMapping saveWithAllocatedCode(UrlMapping urlMapping) {
+        for (int attempt = 1; ; attempt++) {
+            urlMapping.setShortCode(shortCodeAllocator.nextCode());
+            if (SqliteWriteQueue.await(urlBatchRepository.insertUrls(List.of(urlMapping)))[0]) {
+                return urlMapping;
+            }
+            if (attempt >= MAX_ALLOCATION_ATTEMPTS) {
+                throw new RuntimeException("Could not allocate a short code");
+            }
         }
-        return sb.toString();
     }
 
     public boolean deleteShortCode(String shortCode) {
         Optional<UrlMapping> urlMapping = urlRepository.findByShortCode(shortCode);
         if (urlMapping.isPresent()) {
-            urlRepository.delete(urlMapping.get());
+            SqliteWriteQueue.await(urlBatchRepository.delete(shortCode));
+            recentUrls.remove(shortCode, urlMapping.get().getUserId());
             return true;
         }
         return false;  // Short code not found
     }
 
-    @Transactional
+    // Buffered in memory and written in batches by ClickBufferService
     public void incrementClick(String shortCode){
-         urlRepository.incrementClickCount(shortCode);
+         clickBufferService.record(shortCode);
     }
 
-    public List<UrlMapping> getAllUrls() {
-        return urlRepository.findAll();
+    // Keyset pagination on id: pass the last id of the previous page (0 for the first); userId null for all rows
+    public List<UrlRow> getUrlPage(@Nullable Long userId, long afterId, int limit) {
+        return urlBatchRepository.findPage(userId, afterId, limit);
+    }
+
+    // Every row after afterId in id order, read one page at a time so memory and SQLite read locks stay bounded
+    public void forEachUrl(@Nullable Long userId, long afterId, Consumer<UrlRow> consumer) {
+        List<UrlRow> page;
+        do {
+            page = urlBatchRepository.findPage(userId, afterId, STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).id();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
     }
 
+    // Approximate counts from the shared heavy-hitters sketch, not a GROUP BY over the table
     public List<Map<String, Object>> getTop10MostShortenedUrls() {
-        Pageable pageable = PageRequest.of(0, 10);  // Create a Pageable object
-        List<Object[]> results = urlRepository.findTop10MostShortenedUrls(pageable);
-
-        List<Map<String, Object>> topUrls = new ArrayList<>();
-        for (Object[] row : results) {
-            Map<String, Object> data = new HashMap<>();
-            data.put("originalUrl", row[0]);
-            data.put("shortenedCount", row[1]);
-            topUrls.add(data);
-        }
+        return heavyHitters.top(10);
+    }
 
-        return topUrls;
+    // Served from the incrementally maintained leaderboard; the table sort is only a fallback for all-time
+    public List<Map<String, Object>> getTopClickedUrls(String window) {
+        ClickLeaderboardService.Window parsed = ClickLeaderboardService.Window.parse(window);
+        try {
+            return clickLeaderboard.top(parsed, 10);
+        } catch (JedisException | DataAccessException e) {
+            if (parsed != ClickLeaderboardService.Window.ALL) {
+                throw new RuntimeException("Leaderboard unavailable for window: " + window);
+            }
+            return getTop10MostClickedUrls();
+        }
     }
 
     public List<Map<String, Object>> getTop10MostClickedUrls() {
@@ -230,11 +243,7 @@ public class UrlShortenerService {
         )).toList();
     }
 
-    @Transactional
-    public boolean deleteUrl(String shortCode, String apiKey, String password) {
-        User user = userRepository.findByApiKey(apiKey)
-                .orElseThrow(() -> new RuntimeException("Invalid API Key"));
-
+    public boolean deleteUrl(String shortCode, User user, String password) {
         UrlMapping urlMapping = urlRepository.findByShortCodeAndIsDeletedFalse(shortCode)
                 .orElseThrow(() -> new RuntimeException("Short code not found"));
 
@@ -256,42 +265,65 @@ public class UrlShortenerService {
 
         // Soft delete by marking as deleted
         urlMapping.setDeleted(true);
-        urlRepository.save(urlMapping);
+        SqliteWriteQueue.await(urlBatchRepository.softDelete(shortCode));
+        // Leave a tombstone so other nodes answer 404 from Redis instead of querying the database
+        redisCacheService.cacheRecord(shortCode, RedirectRecord.of(urlMapping).encode(), REDIS_TTL_SECONDS);
+        localUrlCache.invalidateEverywhere(shortCode);
+        recentUrls.remove(shortCode, user.getId());
 
         return true;
     }
 
-//    public Optional<UrlMapping> getUrlMapping(String shortCode) {
-//        // First check cache
-//        if (urlCache.containsKey(shortCode)) {
-//            return Optional.of(urlCache.get(shortCode));
-//        }
-//
-//        // Else Fetch Database
-//        Optional<UrlMapping> urlMappingOpt = urlRepository.findByShortCodeAndIsDeletedFalse(shortCode);
-//
-//        // Cache it if found
-//        urlMappingOpt.ifPresent(mapping -> urlCache.put(shortCode, mapping));
-//
-//        return urlMappingOpt;
-//    }
-
-
-    // Using Redis
+    // Bloom filter -> Local L1 cache -> Redis -> Database
     public Optional<UrlMapping> getUrlMapping(String shortCode) {
-        // First check Redis
-        String originalUrl = redisCacheService.getCachedUrl(shortCode);
-        if (originalUrl != null) {
-            return Optional.of(new UrlMapping(shortCode, originalUrl, null, null, null));
+        // Definitely unknown: answer without a lookup (and without filling the L1 cache with misses)
+        if (!shortCodeFilter.mightContain(shortCode)) {
+            return Optional.empty();
+        }
+        // The local cache lookup; on a miss the redis and db.read spans nest inside it
+        int span = RequestTimeline.begin("lookup");
+        try {
+            return localUrlCache.get(shortCode, this::loadUrlMapping);
+        } finally {
+            RequestTimeline.end(span);
         }
+    }
 
-        // Else Fetch Database
-        Optional<UrlMapping> urlMappingOpt = urlRepository.findByShortCodeAndIsDeletedFalse(shortCode);
+    private Optional<UrlMapping> loadUrlMapping(String shortCode) {
+        // First check Redis; a decodable record carries password, expiry and owner, so no DB query is needed
+        int span = RequestTimeline.begin("redis");
+        RedirectRecord record = RedirectRecord.decode(redisCacheService.getCachedRecord(shortCode));
+        RequestTimeline.end(span);
+
+        if (record == null) {
+            // Else Fetch Database
+            span = RequestTimeline.begin("db.read");
+            Optional<UrlMapping> urlMappingOpt;
+            try {
+                urlMappingOpt = urlRepository.findByShortCodeAndIsDeletedFalse(shortCode);
+            } finally {
+                RequestTimeline.end(span);
+            }
+            if (urlMappingOpt.isEmpty()) {
+                return Optional.empty();
+            }
+            record = RedirectRecord.of(urlMappingOpt.get());
+            cacheRedirectRecord(shortCode, record);
+        }
 
-        // Cache it if found
-        urlMappingOpt.ifPresent(mapping -> redisCacheService.cacheUrl(shortCode, mapping.getOriginalUrl(), 3600));
+        return record.isLive() ? Optional.of(record.toUrlMapping(shortCode)) : Optional.empty();
+    }
 
-        return urlMappingOpt;
+    private void cacheRedirectRecord(String shortCode, RedirectRecord record) {
+        long ttl = REDIS_TTL_SECONDS;
+        if (record.expiryEpochMillis() != null) {
+            ttl = Math.min(ttl, (record.expiryEpochMillis() - System.currentTimeMillis()) / 1000);
+        }
+        if (ttl > 0) {
+            redisCacheService.cacheRecord(shortCode, record.encode(), ttl);
+        } else {
+            redisCacheService.evictUrl(shortCode);
+        }
     }
 
 
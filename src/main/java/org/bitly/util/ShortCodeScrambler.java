@@ -0,0 +1,107 @@
+package org.bitly.util;
+
+/**
+ * Reversible mapping from sequential ids to unguessable fixed-width base62 codes.
+ * <p>
+ * A keyed 4-round Feistel network permutes 36-bit values; cycle-walking keeps the result inside
+ * [0, 62^length), so every id below {@link #capacity()} maps to exactly one code and two ids never collide.
+ */
+public class ShortCodeScrambler {
+
+    public static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private static final int HALF_BITS = 18;
+    private static final long HALF_MASK = (1L << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+
+    private final int length;
+    private final long capacity;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    public ShortCodeScrambler(int length, long key) {
+        this.length = length;
+        long capacity = 1;
+        for (int i = 0; i < length; i++) {
+            capacity *= CHARACTERS.length();
+        }
+        if (capacity > (1L << (2 * HALF_BITS))) {
+            throw new IllegalArgumentException("Code length " + length + " does not fit the 36-bit permutation");
+        }
+        this.capacity = capacity;
+
+        long state = key;
+        for (int i = 0; i < ROUNDS; i++) {
+            state = mix(state + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = state;
+        }
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public String encode(long id) {
+        return toBase62(scramble(id));
+    }
+
+    public long scramble(long id) {
+        if (id < 0 || id >= capacity) {
+            throw new IllegalStateException("Short code space exhausted");
+        }
+        long value = id;
+        do {
+            value = permute(value);
+        } while (value >= capacity);
+        return value;
+    }
+
+    public long unscramble(long value) {
+        long id = value;
+        do {
+            id = inverse(id);
+        } while (id >= capacity);
+        return id;
+    }
+
+    private long permute(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ roundFunction(right, roundKeys[round]);
+            left = right;
+            right = next;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private long inverse(long value) {
+        long left = value >>> HALF_BITS;
+        long right = value & HALF_MASK;
+        for (int round = ROUNDS - 1; round >= 0; round--) {
+            long previous = right ^ roundFunction(left, roundKeys[round]);
+            right = left;
+            left = previous;
+        }
+        return (left << HALF_BITS) | right;
+    }
+
+    private static long roundFunction(long half, long roundKey) {
+        return mix(half ^ roundKey) & HALF_MASK;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private String toBase62(long value) {
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = CHARACTERS.charAt((int) (value % CHARACTERS.length()));
+            value /= CHARACTERS.length();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,53 @@
+package org.bitly.util;
+
+import org.bitly.cache.BloomFilter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+// Canonical form of a URL for counting and de-duplication, and its 64-bit fingerprint
+public class UrlNormalizer {
+
+    private UrlNormalizer() {
+        throw new IllegalArgumentException("It is a utility class.");
+    }
+
+    // Lower-cases scheme and host, drops default ports and the fragment, and gives an empty path "/".
+    // Anything that does not parse as a URI is only trimmed.
+    public static String normalize(String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+                return trimmed;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : uri.getRawAuthority();
+            StringBuilder normalized = new StringBuilder(trimmed.length()).append(scheme).append("://");
+            if (uri.getRawUserInfo() != null) {
+                normalized.append(uri.getRawUserInfo()).append('@');
+            }
+            normalized.append(host);
+            if (port != -1) {
+                normalized.append(':').append(port);
+            }
+            String path = uri.getRawPath();
+            normalized.append(path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null) {
+                normalized.append('?').append(uri.getRawQuery());
+            }
+            return normalized.toString();
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+    }
+
+    public static long fingerprint64(String url) {
+        return BloomFilter.hash64(normalize(url));
+    }
+}
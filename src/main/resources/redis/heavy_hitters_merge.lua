@@ -0,0 +1,47 @@
+-- Merges one node's Count-Min Sketch delta into the shared sketch and re-scores its candidate URLs.
+--
+-- KEYS[1]  hash of sketch counters (field = flat cell index)
+-- KEYS[2]  sorted set of candidate fingerprints scored by their estimate
+-- KEYS[3]  hash of fingerprint -> sample URL
+-- ARGV     depth, capacity, number of delta cells, then (cell, delta) pairs,
+--          then per candidate: fingerprint, url, depth cell indices
+--
+-- Returns the total count added to the shared sketch so far.
+
+local depth = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local cells = tonumber(ARGV[3])
+
+local i = 4
+for _ = 1, cells do
+    redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+    redis.call('HINCRBY', KEYS[1], 'total', ARGV[i + 1])
+    i = i + 2
+end
+
+while i <= #ARGV do
+    local fingerprint, url = ARGV[i], ARGV[i + 1]
+    local fields = {}
+    for row = 1, depth do
+        fields[row] = ARGV[i + 1 + row]
+    end
+    local estimate
+    for _, value in ipairs(redis.call('HMGET', KEYS[1], unpack(fields))) do
+        local count = tonumber(value) or 0
+        if estimate == nil or count < estimate then
+            estimate = count
+        end
+    end
+    redis.call('ZADD', KEYS[2], estimate, fingerprint)
+    redis.call('HSETNX', KEYS[3], fingerprint, url)
+    i = i + 2 + depth
+end
+
+-- Keep the best `capacity` candidates
+local evicted = redis.call('ZRANGE', KEYS[2], 0, -capacity - 1)
+if #evicted > 0 then
+    redis.call('ZREMRANGEBYRANK', KEYS[2], 0, -capacity - 1)
+    redis.call('HDEL', KEYS[3], unpack(evicted))
+end
+
+return tonumber(redis.call('HGET', KEYS[1], 'total') or '0')
@@ -0,0 +1,136 @@
+-- Evaluates every rate limit that applies to one request in a single atomic call.
+--
+-- KEYS[i]  state key of rule i
+-- ARGV[1]  unique request id (sliding-log member)
+-- ARGV     then per rule: algorithm, limit, window in ms
+--
+-- Either every rule admits the request and each of them consumes one unit, or nothing is consumed.
+-- Every key written gets a TTL in the same call, so no key is ever left without one.
+--
+-- Returns {allowed, then per rule: allowed, remaining, reset_ms, retry_ms}
+--   reset_ms  until the rule's full quota is available again
+--   retry_ms  until the rule would admit one more request (0 if it admits now)
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local request_id = ARGV[1]
+
+local rules = {}
+local all_allowed = true
+
+-- Pass 1: read state and decide, without consuming
+for i = 1, #KEYS do
+    local key = KEYS[i]
+    local rule = {
+        algorithm = ARGV[2 + (i - 1) * 3],
+        limit = tonumber(ARGV[3 + (i - 1) * 3]),
+        window = tonumber(ARGV[4 + (i - 1) * 3])
+    }
+
+    if rule.algorithm == 'token_bucket' then
+        -- Bucket of `limit` tokens refilled continuously at limit/window per ms
+        local state = redis.call('HMGET', key, 'tokens', 'ts')
+        local tokens = tonumber(state[1]) or rule.limit
+        local ts = tonumber(state[2]) or now
+        rule.rate = rule.limit / rule.window
+        rule.tokens = math.min(rule.limit, tokens + math.max(0, now - ts) * rule.rate)
+        rule.allowed = rule.tokens >= 1
+
+    elseif rule.algorithm == 'sliding_log' then
+        -- Exact: one sorted-set entry per admitted request inside the window
+        redis.call('ZREMRANGEBYSCORE', key, '-inf', now - rule.window)
+        rule.count = redis.call('ZCARD', key)
+        rule.allowed = rule.count < rule.limit
+
+    else
+        -- sliding_counter: current fixed window plus the previous one weighted by its remaining overlap
+        local index = math.floor(now / rule.window)
+        local state = redis.call('HMGET', key, 'w', 'c', 'p')
+        local stored = tonumber(state[1])
+        local current, previous = tonumber(state[2]) or 0, tonumber(state[3]) or 0
+        if stored == index - 1 then
+            previous, current = current, 0
+        elseif stored ~= index then
+            previous, current = 0, 0
+        end
+        rule.index, rule.current, rule.previous = index, current, previous
+        rule.elapsed = now - index * rule.window
+        rule.estimate = previous * (rule.window - rule.elapsed) / rule.window + current
+        rule.allowed = rule.estimate + 1 <= rule.limit
+    end
+
+    if not rule.allowed then
+        all_allowed = false
+    end
+    rules[i] = rule
+end
+
+-- Pass 2: consume (only if every rule admitted the request), persist with TTLs and report
+local result = { all_allowed and 1 or 0 }
+for i = 1, #KEYS do
+    local key, rule = KEYS[i], rules[i]
+    local limit, window = rule.limit, rule.window
+    local remaining, reset, retry
+
+    if rule.algorithm == 'token_bucket' then
+        local tokens = rule.tokens
+        if all_allowed then
+            tokens = tokens - 1
+        end
+        redis.call('HSET', key, 'tokens', tokens, 'ts', now)
+        redis.call('PEXPIRE', key, window) -- an idle bucket is full again after one window
+        remaining = math.floor(tokens)
+        reset = math.ceil((limit - tokens) / rule.rate)
+        retry = tokens >= 1 and 0 or math.ceil((1 - tokens) / rule.rate)
+
+    elseif rule.algorithm == 'sliding_log' then
+        local count = rule.count
+        if all_allowed then
+            redis.call('ZADD', key, now, request_id)
+            count = count + 1
+        end
+        if count > 0 then
+            redis.call('PEXPIRE', key, window)
+            local newest = redis.call('ZRANGE', key, -1, -1, 'WITHSCORES')
+            reset = tonumber(newest[2]) + window - now
+        else
+            reset = 0
+        end
+        remaining = math.max(0, limit - count)
+        if count < limit then
+            retry = 0
+        else
+            -- The entry whose expiry brings the count back under the limit
+            local entry = redis.call('ZRANGE', key, count - limit, count - limit, 'WITHSCORES')
+            retry = tonumber(entry[2]) + window - now
+        end
+
+    else
+        local current = rule.current
+        if all_allowed then
+            current = current + 1
+        end
+        redis.call('HSET', key, 'w', rule.index, 'c', current, 'p', rule.previous)
+        redis.call('PEXPIRE', key, window * 2)
+        local left = window - rule.elapsed
+        local estimate = rule.previous * left / window + current
+        remaining = math.max(0, math.floor(limit - estimate))
+        reset = current > 0 and left + window or left
+        if estimate + 1 <= limit then
+            retry = 0
+        elseif current + 1 <= limit then
+            -- Within this window, once enough of the previous window's weight has decayed
+            retry = math.ceil(left - (limit - 1 - current) * window / rule.previous)
+        else
+            -- Next window, once this window's count (then "previous") has decayed enough
+            retry = math.ceil(left + window * (1 - (limit - 1) / current))
+        end
+    end
+
+    result[#result + 1] = (rule.allowed and 1 or 0)
+    result[#result + 1] = remaining
+    result[#result + 1] = math.max(0, reset)
+    result[#result + 1] = math.max(0, retry)
+end
+
+return result
@@ -0,0 +1,42 @@
+-- Leases tokens from (or returns them to) global token buckets, for nodes that rate-limit locally.
+--
+-- KEYS[i]  bucket key of rule i
+-- ARGV     per rule: limit, window in ms, tokens (> 0 take up to that many, < 0 give back that many)
+--
+-- Same bucket state as token_bucket in rate_limit.lua: a hash of refilled tokens and the time of the last refill.
+-- Returns per rule: granted, tokens left in the global bucket, reset_ms (until full), retry_ms (until 1 token)
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local result = {}
+for i = 1, #KEYS do
+    local key = KEYS[i]
+    local limit = tonumber(ARGV[1 + (i - 1) * 3])
+    local window = tonumber(ARGV[2 + (i - 1) * 3])
+    local requested = tonumber(ARGV[3 + (i - 1) * 3])
+
+    local rate = limit / window
+    local state = redis.call('HMGET', key, 'tokens', 'ts')
+    local tokens = tonumber(state[1]) or limit
+    local ts = tonumber(state[2]) or now
+    tokens = math.min(limit, tokens + math.max(0, now - ts) * rate)
+
+    local granted = 0
+    if requested > 0 then
+        granted = math.min(requested, math.floor(tokens))
+        tokens = tokens - granted
+    else
+        tokens = math.min(limit, tokens - requested)
+    end
+
+    redis.call('HSET', key, 'tokens', tokens, 'ts', now)
+    redis.call('PEXPIRE', key, window)
+
+    result[#result + 1] = granted
+    result[#result + 1] = math.floor(tokens)
+    result[#result + 1] = math.ceil((limit - tokens) / rate)
+    result[#result + 1] = tokens >= 1 and 0 or math.ceil((1 - tokens) / rate)
+end
+
+return result
@@ -0,0 +1,109 @@
+package org.bitly;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.bitly.controller.AdminController;
+import org.bitly.entity.User;
+import org.bitly.interceptor.AdminInterceptor;
+import org.bitly.repository.UserRepository;
+import org.bitly.service.ApiKeyPrincipalService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@ExtendWith(MockitoExtension.class)
+class AdminControllerTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private ApiKeyPrincipalService principals;
+    private MockMvc mockMvc;
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(1L);
+        user.setApiKey("key-1");
+        user.setTier("hobby");
+        principals = new ApiKeyPrincipalService(userRepository, 100, 300, 30);
+
+        AdminController controller = new AdminController();
+        ReflectionTestUtils.setField(controller, "principals", principals);
+        // Same mapping as WebConfig
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .addMappedInterceptors(new String[]{"/internal/**"}, new AdminInterceptor("admin-token"))
+                .build();
+    }
+
+    @Test
+    void testChangesRequireTheAdminToken() throws Exception {
+        mockMvc.perform(post("/internal/api-keys/key-1/block"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(put("/internal/api-keys/key-1/tier").param("tier", "enterprise")
+                        .header(AdminInterceptor.HEADER, "wrong"))
+                .andExpect(status().isUnauthorized());
+
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testBlockingAndUnblockingApplyToTheCachedPrincipal() throws Exception {
+        when(userRepository.findByApiKey("key-1")).thenReturn(Optional.of(user));
+        when(userRepository.updateBlocked(1L, true)).thenReturn(CompletableFuture.completedFuture(true));
+        when(userRepository.updateBlocked(1L, false)).thenReturn(CompletableFuture.completedFuture(true));
+        Assertions.assertFalse(principals.isBlocked("key-1"));
+
+        mockMvc.perform(post("/internal/api-keys/key-1/block").header(AdminInterceptor.HEADER, "admin-token"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.blocked").value(true));
+        verify(userRepository).updateBlocked(1L, true);
+        Assertions.assertTrue(principals.isBlocked("key-1"));
+
+        mockMvc.perform(delete("/internal/api-keys/key-1/block").header(AdminInterceptor.HEADER, "admin-token"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.blocked").value(false));
+        verify(userRepository).updateBlocked(1L, false);
+        Assertions.assertFalse(principals.isBlocked("key-1"));
+    }
+
+    @Test
+    void testTierChangeIsValidatedAndDropsTheCachedPrincipal() throws Exception {
+        when(userRepository.findByApiKey("key-1")).thenReturn(Optional.of(user));
+        when(userRepository.updateTier(1L, "enterprise")).thenReturn(CompletableFuture.completedFuture(true));
+        principals.resolve("key-1");
+
+        mockMvc.perform(put("/internal/api-keys/key-1/tier").param("tier", "platinum")
+                        .header(AdminInterceptor.HEADER, "admin-token"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/internal/api-keys/key-1/tier").param("tier", "Enterprise")
+                        .header(AdminInterceptor.HEADER, "admin-token"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tier").value("enterprise"));
+
+        verify(userRepository).updateTier(1L, "enterprise");
+        Assertions.assertEquals("enterprise", principals.resolve("key-1").orElseThrow().getTier());
+        // Resolve, the tier change itself, and the reload after the cached entry was dropped
+        verify(userRepository, times(3)).findByApiKey("key-1");
+    }
+
+    @Test
+    void testUnknownKeyIsNotFound() throws Exception {
+        when(userRepository.findByApiKey("nope")).thenReturn(Optional.empty());
+
+        mockMvc.perform(post("/internal/api-keys/nope/block").header(AdminInterceptor.HEADER, "admin-token"))
+                .andExpect(status().isNotFound());
+        verify(userRepository, never()).updateBlocked(anyLong(), anyBoolean());
+    }
+}
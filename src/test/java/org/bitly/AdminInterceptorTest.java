@@ -0,0 +1,40 @@
+package org.bitly;
+
+import org.bitly.interceptor.AdminInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class AdminInterceptorTest {
+
+    @Test
+    void testWithoutConfiguredTokenEveryRequestIsRefused() throws Exception {
+        AdminInterceptor interceptor = new AdminInterceptor("");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/internal/request-logs");
+        request.addHeader(AdminInterceptor.HEADER, "");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Assertions.assertFalse(interceptor.preHandle(request, response, null));
+        Assertions.assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    void testOnlyTheConfiguredTokenIsAccepted() throws Exception {
+        AdminInterceptor interceptor = new AdminInterceptor("s3cret-admin");
+
+        MockHttpServletResponse missing = new MockHttpServletResponse();
+        Assertions.assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/internal/request-logs"), missing, null));
+        Assertions.assertEquals(401, missing.getStatus());
+
+        MockHttpServletRequest wrong = new MockHttpServletRequest("GET", "/internal/request-logs");
+        wrong.addHeader(AdminInterceptor.HEADER, "s3cret-admiN");
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        Assertions.assertFalse(interceptor.preHandle(wrong, rejected, null));
+        Assertions.assertEquals(401, rejected.getStatus());
+
+        MockHttpServletRequest right = new MockHttpServletRequest("GET", "/internal/request-logs");
+        right.addHeader(AdminInterceptor.HEADER, "s3cret-admin");
+        Assertions.assertTrue(interceptor.preHandle(right, new MockHttpServletResponse(), null));
+    }
+}
@@ -0,0 +1,117 @@
+package org.bitly;
+
+import org.bitly.entity.User;
+import org.bitly.repository.UserRepository;
+import org.bitly.service.ApiKeyPrincipalService;
+import org.bitly.service.RedisCacheService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ApiKeyPrincipalServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private ApiKeyPrincipalService principals;
+
+    @BeforeEach
+    void setUp() {
+        principals = new ApiKeyPrincipalService(userRepository, 100, 300, 30);
+    }
+
+    private User user(String apiKey, String tier) {
+        User user = new User();
+        user.setId(1L);
+        user.setApiKey(apiKey);
+        user.setTier(tier);
+        return user;
+    }
+
+    @Test
+    void testKeyIsResolvedOnceAndThenServedFromCache() {
+        User user = user("key-1", "hobby");
+        when(userRepository.findByApiKey("key-1")).thenReturn(Optional.of(user));
+
+        Assertions.assertSame(user, principals.resolve("key-1").orElseThrow());
+        Assertions.assertSame(user, principals.resolve("key-1").orElseThrow());
+        Assertions.assertSame(user, principals.resolve("key-1").orElseThrow());
+
+        verify(userRepository, times(1)).findByApiKey("key-1");
+    }
+
+    @Test
+    void testUnknownKeyIsCachedAndBlankKeyNeverQueried() {
+        when(userRepository.findByApiKey("nope")).thenReturn(Optional.empty());
+
+        Assertions.assertTrue(principals.resolve("nope").isEmpty());
+        Assertions.assertTrue(principals.resolve("nope").isEmpty());
+        Assertions.assertTrue(principals.resolve(" ").isEmpty());
+        Assertions.assertTrue(principals.resolve(null).isEmpty());
+
+        verify(userRepository, times(1)).findByApiKey("nope");
+    }
+
+    @Test
+    void testTierChangeDropsCachedPrincipal() {
+        User cached = user("key-1", "hobby");
+        User reloaded = user("key-1", "enterprise");
+        when(userRepository.findByApiKey("key-1"))
+                .thenReturn(Optional.of(cached)).thenReturn(Optional.of(cached)).thenReturn(Optional.of(reloaded));
+        when(userRepository.updateTier(cached.getId(), "enterprise")).thenReturn(CompletableFuture.completedFuture(true));
+
+        principals.resolve("key-1");
+        principals.updateTier("key-1", "enterprise");
+
+        verify(userRepository).updateTier(cached.getId(), "enterprise");
+        Assertions.assertEquals("enterprise", principals.resolve("key-1").orElseThrow().getTier());
+        verify(userRepository, times(3)).findByApiKey("key-1");
+    }
+
+    @Test
+    void testBlockingKeyDropsCachedPrincipal() {
+        User cached = user("key-1", "hobby");
+        User reloaded = user("key-1", "hobby");
+        reloaded.setBlocked(true);
+        // Resolve, the block itself, then the reload after the cached entry was dropped
+        when(userRepository.findByApiKey("key-1"))
+                .thenReturn(Optional.of(cached)).thenReturn(Optional.of(cached)).thenReturn(Optional.of(reloaded));
+        when(userRepository.updateBlocked(cached.getId(), true)).thenReturn(CompletableFuture.completedFuture(true));
+        principals.resolve("key-1");
+
+        Assertions.assertFalse(principals.isBlocked("key-1"));
+        principals.block("key-1");
+        Assertions.assertTrue(principals.isBlocked("key-1"));
+
+        verify(userRepository).updateBlocked(cached.getId(), true);
+        verify(userRepository, times(3)).findByApiKey("key-1");
+    }
+
+    @Test
+    void testChangesArePublishedToOtherNodes() {
+        RedisCacheService redis = mock(RedisCacheService.class);
+        ApiKeyPrincipalService broadcasting = new ApiKeyPrincipalService(userRepository, redis, "principal-invalidations", 100, 300, 30);
+        User cached = user("key-1", "hobby");
+        when(userRepository.findByApiKey("key-1")).thenReturn(Optional.of(cached));
+        when(userRepository.updateTier(cached.getId(), "enterprise")).thenReturn(CompletableFuture.completedFuture(true));
+
+        broadcasting.updateTier("key-1", "enterprise");
+
+        verify(redis).publish("principal-invalidations", "key-1");
+        Assertions.assertEquals(1L, broadcasting.stats().get("invalidationsPublished"));
+    }
+
+    @Test
+    void testBlacklistFileIsLoaded() {
+        Assertions.assertTrue(principals.isBlocked("malicious_key_123"));
+    }
+}
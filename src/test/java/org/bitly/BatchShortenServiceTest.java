@@ -0,0 +1,108 @@
+package org.bitly;
+
+import org.bitly.entity.UrlMapping;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.service.BatchShortenService;
+import org.bitly.service.HeavyHittersService;
+import org.bitly.service.RecentShortenedUrlService;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.ShortCodeAllocator;
+import org.bitly.service.ShortCodeFilterService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchShortenServiceTest {
+
+    @InjectMocks
+    private BatchShortenService batchShortenService;
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Mock
+    private ShortCodeAllocator shortCodeAllocator;
+
+    @Mock
+    private ShortCodeFilterService shortCodeFilter;
+
+    @Mock
+    private LocalUrlCacheService localUrlCache;
+
+    @Mock
+    private HeavyHittersService heavyHitters;
+
+    @Mock
+    private RecentShortenedUrlService recentUrls;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(batchShortenService, "hashThreads", 2);
+        ReflectionTestUtils.setField(batchShortenService, "insertChunkSize", 2);
+        batchShortenService.init();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchKeepsOrderAndPerItemErrors() {
+        List<Map<String, String>> requests = List.of(
+                Map.of("originalUrl", "https://a.com", "customCode", "taken1"),
+                Map.of("originalUrl", "https://b.com", "password", "secret"),
+                Map.of("originalUrl", "https://c.com", "customCode", "mine01"),
+                Map.of("originalUrl", "https://d.com", "customCode", "mine01")
+        );
+
+        when(urlBatchRepository.findExistingShortCodes(Set.of("taken1", "mine01"))).thenReturn(Set.of("taken1"));
+        when(shortCodeAllocator.nextCode()).thenReturn("gen001");
+        when(urlBatchRepository.insertUrls(anyList()))
+                .thenAnswer(invocation -> {
+                    List<UrlMapping> rows = invocation.getArgument(0);
+                    boolean[] saved = new boolean[rows.size()];
+                    java.util.Arrays.fill(saved, true);
+                    return CompletableFuture.completedFuture(saved);
+                });
+
+        BatchShortenService.BatchResult result = batchShortenService.shorten(requests, 1L);
+        List<Map<String, String>> results = result.results();
+
+        Assertions.assertEquals("Custom short code 'taken1' is already taken", results.get(0).get("error"));
+        Assertions.assertEquals("gen001", results.get(1).get("shortCode"));
+        Assertions.assertEquals("Yes", results.get(1).get("password_protected"));
+        Assertions.assertEquals("mine01", results.get(2).get("shortCode"));
+        Assertions.assertEquals("Custom short code 'mine01' is already taken", results.get(3).get("error"));
+
+        // Two rows to insert with a chunk size of 2: a single batch, no per-row lookups
+        verify(urlBatchRepository, times(1)).insertUrls(anyList());
+        verify(urlBatchRepository, times(1)).findExistingShortCodes(anySet());
+        Assertions.assertTrue(result.rowsPerSecond() > 0);
+    }
+
+    @Test
+    void testAllocatedCodeCollisionIsRetriedWithNextCode() {
+        List<Map<String, String>> requests = List.of(Map.of("originalUrl", "https://a.com"));
+
+        when(shortCodeAllocator.nextCode()).thenReturn("legacy", "fresh1");
+        when(urlBatchRepository.insertUrls(anyList()))
+                .thenReturn(CompletableFuture.completedFuture(new boolean[]{false}))
+                .thenReturn(CompletableFuture.completedFuture(new boolean[]{true}));
+
+        List<Map<String, String>> results = batchShortenService.shorten(requests, 1L).results();
+
+        Assertions.assertEquals("fresh1", results.get(0).get("shortCode"));
+        verify(shortCodeFilter).add("fresh1");
+        verify(shortCodeFilter, never()).add("legacy");
+    }
+}
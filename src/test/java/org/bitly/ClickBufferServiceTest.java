@@ -0,0 +1,100 @@
+package org.bitly;
+
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.ClickDelta;
+import org.bitly.service.ClickBufferService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClickBufferServiceTest {
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testClicksAreAggregatedIntoOneBatch() {
+        ClickBufferService buffer = new ClickBufferService(urlBatchRepository, 1000, 10000);
+
+        buffer.record("abc123");
+        buffer.record("abc123");
+        buffer.record("xyz789");
+        buffer.flush();
+
+        ArgumentCaptor<List<ClickDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(urlBatchRepository, times(1)).addClicks(captor.capture());
+
+        Map<String, Long> clicks = captor.getValue().stream()
+                .collect(Collectors.toMap(ClickDelta::shortCode, ClickDelta::clicks));
+        Assertions.assertEquals(Map.of("abc123", 2L, "xyz789", 1L), clicks);
+        Assertions.assertEquals(0L, buffer.stats().get("pendingClicks"));
+
+        // Nothing new to write
+        buffer.flush();
+        verifyNoMoreInteractions(urlBatchRepository);
+    }
+
+    @Test
+    void testFailedFlushKeepsClicksForRetry() {
+        ClickBufferService buffer = new ClickBufferService(urlBatchRepository, 1000, 10000);
+        doThrow(new RuntimeException("SQLITE_BUSY")).doNothing().when(urlBatchRepository).addClicks(anyList());
+
+        buffer.record("abc123");
+        buffer.flush();
+        Assertions.assertEquals(1L, buffer.stats().get("pendingClicks"));
+
+        buffer.flush();
+        Assertions.assertEquals(0L, buffer.stats().get("pendingClicks"));
+        Assertions.assertEquals(1L, buffer.stats().get("flushedClicks"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testClicksRacingWithIdleEntryRemovalAreNotLost() throws Exception {
+        ClickBufferService buffer = new ClickBufferService(urlBatchRepository, Integer.MAX_VALUE, Long.MAX_VALUE);
+        AtomicLong written = new AtomicLong();
+        doAnswer(invocation -> {
+            ((List<ClickDelta>) invocation.getArgument(0)).forEach(delta -> written.addAndGet(delta.clicks()));
+            return null;
+        }).when(urlBatchRepository).addClicks(anyList());
+
+        // Sparse clicks over many codes, so flushes keep retiring entries that are about to be clicked again
+        int threads = 4;
+        int clicksPerThread = 50_000;
+        List<Thread> clickers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread clicker = new Thread(() -> {
+                for (int i = 0; i < clicksPerThread; i++) {
+                    buffer.record("code" + ThreadLocalRandom.current().nextInt(64));
+                }
+            });
+            clickers.add(clicker);
+            clicker.start();
+        }
+        while (clickers.stream().anyMatch(Thread::isAlive)) {
+            buffer.flush();
+        }
+        for (Thread clicker : clickers) {
+            clicker.join();
+        }
+        buffer.flush();
+        buffer.flush();
+
+        Assertions.assertEquals((long) threads * clicksPerThread, written.get());
+        Assertions.assertEquals(0L, buffer.stats().get("pendingClicks"));
+    }
+}
@@ -0,0 +1,92 @@
+package org.bitly;
+
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.UrlSummary;
+import org.bitly.service.ClickBufferService;
+import org.bitly.service.ClickLeaderboardService;
+import org.bitly.service.RedisCacheService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.resps.Tuple;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClickLeaderboardServiceTest {
+
+    @Mock
+    private RedisCacheService redisCacheService;
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Mock
+    private Pipeline pipeline;
+
+    private ClickBufferService clickBuffer;
+    private ClickLeaderboardService leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        clickBuffer = new ClickBufferService(urlBatchRepository, 1000, 10000);
+        leaderboard = new ClickLeaderboardService(redisCacheService, urlBatchRepository, clickBuffer, 1000, 60_000);
+        leaderboard.subscribe();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushUpdatesAllTimeTotalsAndWindowBuckets() {
+        when(urlBatchRepository.findClickCounts(anyCollection())).thenReturn(Map.of("abc123", 42L));
+        when(redisCacheService.pipelined(any())).thenAnswer(invocation -> {
+            ((Consumer<Pipeline>) invocation.getArgument(0)).accept(pipeline);
+            return List.of();
+        });
+
+        clickBuffer.record("abc123");
+        clickBuffer.record("abc123");
+        clickBuffer.flush();
+
+        // All time gets the total from the table, the windows get the flushed delta
+        verify(pipeline).zadd(eq("leaderboard:clicks:all"), eq(42.0), eq("abc123"), any(ZAddParams.class));
+        verify(pipeline).zincrby(startsWith("leaderboard:clicks:hour:"), eq(2.0), eq("abc123"));
+        verify(pipeline).zincrby(startsWith("leaderboard:clicks:day:"), eq(2.0), eq("abc123"));
+        verify(pipeline).zremrangeByRank("leaderboard:clicks:all", 0, -1001);
+    }
+
+    @Test
+    void testTopReadsRankingAndCachesIt() {
+        when(redisCacheService.pipelined(any())).thenReturn(List.of(List.of(new Tuple("abc123", 42.0))));
+        LocalDateTime accessed = LocalDateTime.of(2025, 1, 1, 12, 0);
+        when(urlBatchRepository.findSummaries(List.of("abc123")))
+                .thenReturn(Map.of("abc123", new UrlSummary("abc123", "https://example.com", 42, accessed)));
+
+        List<Map<String, Object>> top = leaderboard.top(ClickLeaderboardService.Window.ALL, 10);
+        leaderboard.top(ClickLeaderboardService.Window.ALL, 10);
+
+        Assertions.assertEquals(1, top.size());
+        Assertions.assertEquals("abc123", top.get(0).get("shortCode"));
+        Assertions.assertEquals(42L, top.get(0).get("clickCount"));
+        Assertions.assertEquals(accessed, top.get(0).get("lastAccessedAt"));
+        verify(redisCacheService, times(1)).pipelined(any());
+        verify(urlBatchRepository, never()).findTopClickCounts(anyInt());
+    }
+
+    @Test
+    void testWindowParsing() {
+        Assertions.assertEquals(ClickLeaderboardService.Window.HOUR, ClickLeaderboardService.Window.parse("hour"));
+        Assertions.assertEquals(ClickLeaderboardService.Window.DAY, ClickLeaderboardService.Window.parse("24h"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ClickLeaderboardService.Window.parse("week"));
+    }
+}
@@ -0,0 +1,150 @@
+package org.bitly;
+
+import org.bitly.cache.CountMinSketch;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.service.HeavyHittersService;
+import org.bitly.service.RedisCacheService;
+import org.bitly.util.UrlNormalizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import redis.clients.jedis.Pipeline;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HeavyHittersServiceTest {
+
+    @Mock
+    private RedisCacheService redisCacheService;
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    private HeavyHittersService heavyHitters;
+
+    @BeforeEach
+    void setUp() {
+        heavyHitters = new HeavyHittersService(redisCacheService, urlBatchRepository, 5, 1024, 10);
+    }
+
+    @Test
+    void testNormalizedUrlsShareAFingerprint() {
+        Assertions.assertEquals("https://example.com/", UrlNormalizer.normalize(" HTTPS://Example.COM:443#top "));
+        Assertions.assertEquals("http://example.com:8080/a?b=1", UrlNormalizer.normalize("http://EXAMPLE.com:8080/a?b=1"));
+        Assertions.assertEquals(UrlNormalizer.fingerprint64("https://example.com"), UrlNormalizer.fingerprint64("https://EXAMPLE.com/"));
+        Assertions.assertNotEquals(UrlNormalizer.fingerprint64("https://example.com/a"), UrlNormalizer.fingerprint64("https://example.com/b"));
+    }
+
+    @Test
+    void testSketchStaysWithinErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(5, 1024);
+        Random random = new Random(42);
+        long[] counts = new long[5000];
+        for (int i = 0; i < 100_000; i++) {
+            int key = (int) Math.min(counts.length - 1, Math.abs(random.nextGaussian()) * 500);
+            counts[key]++;
+            sketch.add(UrlNormalizer.fingerprint64("https://example.com/" + key), 1);
+        }
+
+        long bound = (long) Math.ceil(sketch.errorRate() * sketch.getTotal());
+        int violations = 0;
+        for (int key = 0; key < counts.length; key++) {
+            long estimate = sketch.estimate(UrlNormalizer.fingerprint64("https://example.com/" + key));
+            Assertions.assertTrue(estimate >= counts[key], "never undercounts");
+            if (estimate - counts[key] > bound) {
+                violations++;
+            }
+        }
+        Assertions.assertTrue(violations <= counts.length * (1 - sketch.confidence()) * 2);
+    }
+
+    @Test
+    void testLocalTopIsServedWhenRedisIsDown() {
+        when(redisCacheService.pipelined(any())).thenThrow(new RuntimeException("Connection refused"));
+        for (int i = 0; i < 30; i++) {
+            heavyHitters.record("https://popular.example.com");
+        }
+        for (int i = 0; i < 20; i++) {
+            heavyHitters.record("https://Popular.example.com/"); // same URL once normalized
+            heavyHitters.record("https://other.example.com/" + i);
+        }
+
+        List<Map<String, Object>> top = heavyHitters.top(3);
+
+        Assertions.assertEquals("https://popular.example.com", top.get(0).get("originalUrl"));
+        Assertions.assertEquals(50L, top.get(0).get("shortenedCount"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSyncShipsDeltaOnceAndRetriesAfterFailure() {
+        heavyHitters.record("https://example.com/a");
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList()))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenReturn(1L);
+
+        heavyHitters.sync(); // fails: delta and candidate are kept
+        heavyHitters.sync();
+        heavyHitters.sync(); // nothing new
+
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisCacheService, times(2)).evalScript(anyString(), anyList(), args.capture());
+        List<String> shipped = args.getAllValues().get(1);
+        // depth, capacity, 5 delta cells of +1, then the candidate with its 5 cells
+        Assertions.assertEquals(List.of("5", "10", "5"), shipped.subList(0, 3));
+        Assertions.assertEquals(3 + 5 * 2 + 2 + 5, shipped.size());
+        Assertions.assertTrue(shipped.contains("https://example.com/a"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSeedShipsTheWholeTableInOneCall() {
+        when(redisCacheService.pipelined(any())).thenReturn(List.of("OK"));
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("https://example.com/a");
+            consumer.accept("https://example.com/a");
+            consumer.accept("https://example.com/b");
+            return null;
+        }).when(urlBatchRepository).forEachOriginalUrl(any());
+
+        heavyHitters.seedFromTable();
+
+        ArgumentCaptor<List<String>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisCacheService, times(1)).evalScript(anyString(), anyList(), args.capture());
+        Assertions.assertTrue(args.getValue().containsAll(List.of("https://example.com/a", "https://example.com/b")));
+        // Only the claim: nothing to release
+        verify(redisCacheService, times(1)).pipelined(any());
+        // Seeded counts are not shipped a second time by the periodic sync
+        heavyHitters.sync();
+        verify(redisCacheService, times(1)).evalScript(anyString(), anyList(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedSeedReleasesTheClaim() {
+        when(redisCacheService.pipelined(any())).thenReturn(List.of("OK"));
+        doThrow(new RuntimeException("SQLITE_BUSY")).when(urlBatchRepository).forEachOriginalUrl(any());
+
+        heavyHitters.seedFromTable();
+
+        // The claim, then its release
+        ArgumentCaptor<Consumer<Pipeline>> commands = ArgumentCaptor.forClass(Consumer.class);
+        verify(redisCacheService, times(2)).pipelined(commands.capture());
+        Pipeline pipeline = mock(Pipeline.class);
+        commands.getAllValues().get(1).accept(pipeline);
+        verify(pipeline).del("heavyhitters:seeded");
+        verify(redisCacheService, never()).evalScript(anyString(), anyList(), anyList());
+    }
+}
@@ -0,0 +1,87 @@
+package org.bitly;
+
+import org.bitly.service.LeasedRateLimiter;
+import org.bitly.service.RateLimitService;
+import org.bitly.service.RedisCacheService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LeasedRateLimiterTest {
+
+    @Mock
+    private RedisCacheService redisCacheService;
+
+    private LeasedRateLimiter limiter;
+
+    private final RateLimitService.Rule ipRule =
+            new RateLimitService.Rule("ip", "rate:ip:1.2.3.4:/api/urls/redirect", RateLimitService.Algorithm.TOKEN_BUCKET, 50, 1000);
+
+    @BeforeEach
+    void setUp() {
+        limiter = new LeasedRateLimiter(redisCacheService, true, 50, 0.1, 5000);
+    }
+
+    @Test
+    void testRequestsAreAdmittedFromLeasedChunk() {
+        // Chunk is capped at max-error x limit = 5 tokens
+        when(redisCacheService.evalScript(anyString(), anyList(), eq(List.of("50", "1000", "5"))))
+                .thenReturn(List.of(5L, 45L, 100L, 0L));
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(limiter.check(List.of(ipRule)).allowed());
+        }
+
+        verify(redisCacheService, times(1)).evalScript(anyString(), anyList(), anyList());
+    }
+
+    @Test
+    void testEmptyGlobalBucketDenies() {
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList())).thenReturn(List.of(0L, 0L, 1000L, 20L));
+
+        RateLimitService.Decision decision = limiter.check(List.of(ipRule));
+
+        Assertions.assertFalse(decision.allowed());
+        Assertions.assertEquals("ip", decision.rule().name());
+        Assertions.assertTrue(decision.retryAfterMillis() >= 20);
+
+        // Denied locally until the global bucket has a token again
+        Assertions.assertFalse(limiter.check(List.of(ipRule)).allowed());
+        verify(redisCacheService, times(1)).evalScript(anyString(), anyList(), anyList());
+    }
+
+    @Test
+    void testUnusedTokensAreReturnedOnSync() {
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList())).thenReturn(List.of(5L, 45L, 100L, 0L));
+        limiter.check(List.of(ipRule));
+
+        limiter.sync();
+
+        verify(redisCacheService).evalScript(anyString(), eq(List.of("rate:lease:" + ipRule.key())), eq(List.of("50", "1000", "-4")));
+    }
+
+    @Test
+    void testRedisFailureFallsBackToLocalLimit() {
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList())).thenThrow(new RuntimeException("Connection refused"));
+
+        int admitted = 0;
+        for (int i = 0; i < 60; i++) {
+            if (limiter.check(List.of(ipRule)).allowed()) {
+                admitted++;
+            }
+        }
+
+        // Enforced locally instead of failing open, and Redis is not retried on every request
+        Assertions.assertEquals(50, admitted);
+        verify(redisCacheService, times(1)).evalScript(anyString(), anyList(), anyList());
+    }
+}
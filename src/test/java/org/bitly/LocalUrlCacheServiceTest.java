@@ -0,0 +1,76 @@
+package org.bitly;
+
+import org.bitly.entity.UrlMapping;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.RedisCacheService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class LocalUrlCacheServiceTest {
+
+    private final LocalUrlCacheService cache = new LocalUrlCacheService(100, 60, 5);
+
+    @Test
+    void testHitAvoidsLoader() {
+        AtomicInteger loads = new AtomicInteger();
+        UrlMapping urlMapping = new UrlMapping("abc123", "https://example.com", 1L, null, null);
+
+        cache.get("abc123", code -> { loads.incrementAndGet(); return Optional.of(urlMapping); });
+        Optional<UrlMapping> result = cache.get("abc123", code -> { loads.incrementAndGet(); return Optional.empty(); });
+
+        Assertions.assertTrue(result.isPresent());
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1L, cache.stats().get("hits"));
+        Assertions.assertEquals(1L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void testNotFoundIsCachedUntilInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("nope42", code -> { loads.incrementAndGet(); return Optional.empty(); });
+        cache.get("nope42", code -> { loads.incrementAndGet(); return Optional.empty(); });
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1L, cache.stats().get("negativeHits"));
+
+        cache.invalidate("nope42");
+        cache.get("nope42", code -> { loads.incrementAndGet(); return Optional.empty(); });
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testExpiredLinkIsNotServedFromMemory() {
+        AtomicInteger loads = new AtomicInteger();
+        UrlMapping expired = new UrlMapping("old123", "https://example.com", 1L, LocalDateTime.now().minusMinutes(1), null);
+
+        cache.get("old123", code -> { loads.incrementAndGet(); return Optional.of(expired); });
+        cache.get("old123", code -> { loads.incrementAndGet(); return Optional.of(expired); });
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testInvalidateEverywherePublishesAndUnsubscribedCacheKeepsLinksBriefly() {
+        RedisCacheService redis = mock(RedisCacheService.class);
+        // Never subscribed (no subscriber thread started): links are kept for the negative TTL, here zero
+        LocalUrlCacheService broadcasting = new LocalUrlCacheService(redis, "url-invalidations", 100, 60, 0);
+        AtomicInteger loads = new AtomicInteger();
+        UrlMapping urlMapping = new UrlMapping("abc123", "https://example.com", 1L, null, null);
+
+        broadcasting.get("abc123", code -> { loads.incrementAndGet(); return Optional.of(urlMapping); });
+        broadcasting.get("abc123", code -> { loads.incrementAndGet(); return Optional.of(urlMapping); });
+        Assertions.assertEquals(2, loads.get());
+        Assertions.assertEquals(false, broadcasting.stats().get("invalidationsSubscribed"));
+
+        broadcasting.invalidateEverywhere("abc123");
+        verify(redis).publish("url-invalidations", "abc123");
+        Assertions.assertEquals(1L, broadcasting.stats().get("invalidationsPublished"));
+    }
+}
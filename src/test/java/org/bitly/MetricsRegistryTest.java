@@ -0,0 +1,56 @@
+package org.bitly;
+
+import org.bitly.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+class MetricsRegistryTest {
+
+    private static String scrape(MetricsRegistry registry) throws Exception {
+        StringWriter out = new StringWriter();
+        registry.writePrometheus(out);
+        return out.toString();
+    }
+
+    @Test
+    void testTimerWritesQuantilesSumAndCountPerLabelSet() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Timer ok = registry.timer("http_server_requests_seconds", "Latency", "route", "/a", "status", "2xx");
+        for (int i = 1; i <= 100; i++) {
+            ok.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        registry.timer("http_server_requests_seconds", "Latency", "route", "/a", "status", "5xx").record(TimeUnit.SECONDS.toNanos(2));
+
+        Assertions.assertSame(ok, registry.timer("http_server_requests_seconds", "Latency", "route", "/a", "status", "2xx"));
+        String text = scrape(registry);
+        Assertions.assertTrue(text.contains("# TYPE http_server_requests_seconds summary\n"));
+        Assertions.assertTrue(text.contains("http_server_requests_seconds_count{route=\"/a\",status=\"2xx\"} 100\n"));
+        Assertions.assertTrue(text.contains("http_server_requests_seconds_count{route=\"/a\",status=\"5xx\"} 1\n"));
+        Assertions.assertTrue(text.contains("http_server_requests_seconds_sum{route=\"/a\",status=\"2xx\"} 5.05\n"));
+        // 1% precision: the median of 1..100 ms lands within a bucket of 50 ms
+        Assertions.assertEquals(0.050, ok.quantileSeconds(0.5), 0.001);
+        Assertions.assertEquals(0.099, ok.quantileSeconds(0.99), 0.002);
+    }
+
+    @Test
+    void testCountersGaugesAndEscaping() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("cache_hits_total", "Hits", () -> 42, "cache", "local_url");
+        registry.counter("requests_total", "Requests", "path", "a\"b\\c").add(3);
+        registry.gauge("pool_active", "Active", () -> 1.5);
+        registry.gauge("pool_broken", "Unavailable source", () -> {
+            throw new IllegalStateException("Redis is down");
+        });
+
+        String text = scrape(registry);
+        Assertions.assertTrue(text.contains("cache_hits_total{cache=\"local_url\"} 42\n"));
+        Assertions.assertTrue(text.contains("requests_total{path=\"a\\\"b\\\\c\"} 3\n"));
+        Assertions.assertTrue(text.contains("pool_active 1.5\n"));
+        // A failing source drops its sample, not the scrape
+        Assertions.assertFalse(text.contains("\npool_broken "));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.gauge("cache_hits_total", "Hits", () -> 0));
+    }
+}
@@ -0,0 +1,95 @@
+package org.bitly;
+
+import org.bitly.service.RateLimitService;
+import org.bitly.service.RedisCacheService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RateLimitServiceTest {
+
+    @Mock
+    private RedisCacheService redisCacheService;
+
+    private RateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        rateLimitService = new RateLimitService(redisCacheService, true,
+                "token-bucket", "sliding-window-counter", "sliding-window-log");
+    }
+
+    @Test
+    void testRulesCoverIpKeyAndPlan() {
+        List<RateLimitService.Rule> rules = rateLimitService.rulesFor("1.2.3.4", "/api/urls/shorten", "key-1", "hobby");
+
+        Assertions.assertEquals(List.of("ip", "api-key", "plan"), rules.stream().map(RateLimitService.Rule::name).toList());
+        Assertions.assertEquals(RateLimitService.Algorithm.TOKEN_BUCKET, rules.get(0).algorithm());
+        Assertions.assertEquals(10, rules.get(0).limit());
+        Assertions.assertEquals(RateLimitService.Algorithm.SLIDING_WINDOW_COUNTER, rules.get(1).algorithm());
+        Assertions.assertEquals(RateLimitService.Algorithm.SLIDING_WINDOW_LOG, rules.get(2).algorithm());
+        Assertions.assertEquals(10, rules.get(2).limit());
+
+        // Anonymous request: only the IP limit applies
+        Assertions.assertEquals(1, rateLimitService.rulesFor("1.2.3.4", "/api/urls/redirect", null, null).size());
+    }
+
+    @Test
+    void testLimitMultiplierScalesEveryRule() {
+        RateLimitService scaled = new RateLimitService(redisCacheService, true,
+                "token-bucket", "sliding-window-counter", "sliding-window-log", 1000);
+
+        List<RateLimitService.Rule> rules = scaled.rulesFor("1.2.3.4", "/api/urls/redirect", "key-1", "enterprise");
+
+        Assertions.assertEquals(List.of(50_000L, 50_000L, 100_000L), rules.stream().map(RateLimitService.Rule::limit).toList());
+        Assertions.assertEquals(List.of(1000L, 60_000L, 1000L), rules.stream().map(RateLimitService.Rule::windowMillis).toList());
+    }
+
+    @Test
+    void testAllRulesGoOutInOneScriptCall() {
+        List<RateLimitService.Rule> rules = rateLimitService.rulesFor("1.2.3.4", "/api/urls/shorten", "key-1", "free");
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList()))
+                .thenReturn(List.of(1L, 1L, 9L, 100L, 0L, 1L, 7L, 60000L, 0L, 1L, 3L, 60000L, 0L));
+
+        RateLimitService.Decision decision = rateLimitService.check(rules);
+
+        verify(redisCacheService, times(1)).evalScript(anyString(),
+                eq(rules.stream().map(RateLimitService.Rule::key).toList()), argThat(args -> args.size() == 1 + 3 * 3));
+        Assertions.assertTrue(decision.allowed());
+        // Headers report the rule with the least quota left
+        Assertions.assertEquals("plan", decision.rule().name());
+        Assertions.assertEquals(3, decision.remaining());
+    }
+
+    @Test
+    void testDeniedRequestReportsDenyingRule() {
+        List<RateLimitService.Rule> rules = rateLimitService.rulesFor("1.2.3.4", "/api/urls/shorten", "key-1", "hobby");
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList()))
+                .thenReturn(List.of(0L, 1L, 5L, 500L, 0L, 0L, 0L, 90000L, 42000L, 1L, 8L, 1000L, 0L));
+
+        RateLimitService.Decision decision = rateLimitService.check(rules);
+
+        Assertions.assertFalse(decision.allowed());
+        Assertions.assertEquals("api-key", decision.rule().name());
+        Assertions.assertEquals(42000, decision.retryAfterMillis());
+    }
+
+    @Test
+    void testRedisFailureLetsRequestsThrough() {
+        when(redisCacheService.evalScript(anyString(), anyList(), anyList())).thenThrow(new RuntimeException("Connection refused"));
+
+        RateLimitService.Decision decision = rateLimitService.check(rateLimitService.rulesFor("1.2.3.4", "/api/urls/redirect", null, null));
+
+        Assertions.assertTrue(decision.allowed());
+        Assertions.assertNull(decision.rule());
+    }
+}
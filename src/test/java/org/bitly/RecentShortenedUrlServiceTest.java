@@ -0,0 +1,100 @@
+package org.bitly;
+
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.RecentUrl;
+import org.bitly.service.RecentShortenedUrlService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecentShortenedUrlServiceTest {
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    private RecentShortenedUrlService recentUrls;
+
+    private final LocalDateTime now = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        recentUrls = new RecentShortenedUrlService(urlBatchRepository, 5, 3, 100);
+    }
+
+    private static List<String> codes(List<RecentUrl> urls) {
+        return urls.stream().map(RecentUrl::shortCode).toList();
+    }
+
+    @Test
+    void testSeededFromTableThenAppendedNewestFirst() {
+        when(urlBatchRepository.findRecent(null, 5)).thenReturn(List.of(
+                new RecentUrl("c", "https://c.com", now), new RecentUrl("b", "https://b.com", now),
+                new RecentUrl("a", "https://a.com", now)));
+        recentUrls.seed();
+
+        recentUrls.record("d", "https://d.com", 1L, now);
+        recentUrls.record("e", "https://e.com", 1L, now);
+        recentUrls.record("f", "https://f.com", 1L, now);
+
+        Assertions.assertEquals(List.of("f", "e", "d", "c", "b"), codes(recentUrls.getRecentUrls(10)));
+        Assertions.assertEquals(List.of("f", "e"), codes(recentUrls.getRecentUrls(2)));
+
+        recentUrls.remove("e", 1L);
+        Assertions.assertEquals(List.of("f", "d", "c", "b"), codes(recentUrls.getRecentUrls(10)));
+    }
+
+    @Test
+    void testUserRingIsLoadedOnceAndKeptCurrent() {
+        when(urlBatchRepository.findRecent(7L, 3)).thenReturn(List.of(new RecentUrl("x", "https://x.com", now)));
+
+        Assertions.assertEquals(List.of("x"), codes(recentUrls.getRecentUrls(7L, 10)));
+        recentUrls.record("y", "https://y.com", 7L, now);
+        recentUrls.record("z", "https://z.com", 8L, now); // another user, not loaded
+
+        Assertions.assertEquals(List.of("y", "x"), codes(recentUrls.getRecentUrls(7L, 10)));
+        verify(urlBatchRepository, times(1)).findRecent(eq(7L), anyInt());
+        verify(urlBatchRepository, never()).findRecent(eq(8L), anyInt());
+    }
+
+    @Test
+    void testConcurrentWritersNeverReturnTornOrStaleEntries() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    recentUrls.record(thread + "-" + i, "https://example.com", null, now);
+                }
+            });
+        }
+        executor.shutdown();
+        List<String> violations = new ArrayList<>();
+        while (!executor.isTerminated()) {
+            List<RecentUrl> latest = recentUrls.getRecentUrls(5);
+            if (latest.size() > 5 || latest.stream().anyMatch(url -> url == null)) {
+                violations.add(latest.toString());
+            }
+        }
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Assertions.assertTrue(violations.isEmpty(), violations.toString());
+        // The newest entry is the last write of whichever thread finished last
+        List<String> latest = codes(recentUrls.getRecentUrls(5));
+        Assertions.assertEquals(5, latest.size());
+        Assertions.assertTrue(latest.get(0).endsWith("-9999"), latest.toString());
+    }
+}
@@ -0,0 +1,42 @@
+package org.bitly;
+
+import org.bitly.service.RedirectTokenService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RedirectTokenServiceTest {
+
+    private static final String HASH = "$2a$10$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234";
+
+    @Test
+    void testTokenIsBoundToCodeAndPasswordHash() {
+        RedirectTokenService tokens = new RedirectTokenService(true, "secret", 900);
+        String token = tokens.issue("prot01", HASH);
+
+        Assertions.assertTrue(tokens.verify("prot01", HASH, token));
+        Assertions.assertFalse(tokens.verify("prot02", HASH, token));
+        // New password, new hash: every earlier token is revoked
+        Assertions.assertFalse(tokens.verify("prot01", HASH.replace('a', 'b'), token));
+    }
+
+    @Test
+    void testExpiredTamperedOrForeignTokensAreRejected() {
+        RedirectTokenService tokens = new RedirectTokenService(true, "secret", 900);
+        String token = tokens.issue("prot01", HASH);
+        String expiry = token.substring(0, token.indexOf('.'));
+
+        Assertions.assertFalse(tokens.verify("prot01", HASH, new RedirectTokenService(true, "secret", 0).issue("prot01", HASH)));
+        Assertions.assertFalse(tokens.verify("prot01", HASH, (Long.parseLong(expiry) + 3600) + token.substring(expiry.length())));
+        Assertions.assertFalse(tokens.verify("prot01", HASH, new RedirectTokenService(true, "other", 900).issue("prot01", HASH)));
+        Assertions.assertFalse(tokens.verify("prot01", HASH, "not-a-token"));
+        Assertions.assertFalse(tokens.verify("prot01", HASH, null));
+    }
+
+    @Test
+    void testDisabledModeNeverAcceptsTokens() {
+        RedirectTokenService signer = new RedirectTokenService(true, "secret", 900);
+        RedirectTokenService disabled = new RedirectTokenService(false, "secret", 900);
+
+        Assertions.assertFalse(disabled.verify("prot01", HASH, signer.issue("prot01", HASH)));
+    }
+}
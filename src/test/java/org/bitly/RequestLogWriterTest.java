@@ -0,0 +1,117 @@
+package org.bitly;
+
+import org.bitly.cache.MpscRingBuffer;
+import org.bitly.repository.RequestLogSink;
+import org.bitly.service.RequestLogWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RequestLogWriterTest {
+
+    @Mock
+    private RequestLogSink repository;
+
+    private RequestLogWriter writer(int capacity, String policy) {
+        // Writer thread not started: the test drains explicitly
+        return new RequestLogWriter(repository, capacity, 4, 200, policy, 2, 1);
+    }
+
+    @Test
+    void testEntriesAreWrittenInBatches() {
+        RequestLogWriter writer = writer(16, "drop");
+        for (int i = 0; i < 6; i++) {
+            writer.enqueue(i, "POST", "/api/urls/shorten", "curl", "1.2.3.4");
+        }
+
+        Assertions.assertEquals(4, writer.drain());
+        Assertions.assertEquals(2, writer.drain());
+        Assertions.assertEquals(0, writer.drain());
+
+        verify(repository, times(2)).append(anyList());
+        Assertions.assertEquals(6L, writer.stats().get("flushed"));
+    }
+
+    @Test
+    void testDropPolicyCountsOverflow() {
+        RequestLogWriter writer = writer(4, "drop");
+        for (int i = 0; i < 10; i++) {
+            writer.enqueue(i, "POST", "/api/urls/shorten", "curl", "1.2.3.4");
+        }
+
+        Assertions.assertEquals(4L, writer.stats().get("enqueued"));
+        Assertions.assertEquals(6L, writer.stats().get("dropped"));
+    }
+
+    @Test
+    void testSamplePolicyThinsOutNearlyFullBuffer() {
+        RequestLogWriter writer = writer(8, "sample");
+        for (int i = 0; i < 20; i++) {
+            writer.enqueue(i, "POST", "/api/urls/shorten", "curl", "1.2.3.4");
+        }
+
+        // The first 6 go in; past 3/4 full every other entry is sampled out, then the buffer fills up
+        Assertions.assertEquals(8L, writer.stats().get("enqueued"));
+        Assertions.assertTrue((long) writer.stats().get("sampledOut") > 0);
+    }
+
+    @Test
+    void testFailedBatchIsCountedAsDropped() {
+        doThrow(new RuntimeException("SQLITE_BUSY")).when(repository).append(anyList());
+        RequestLogWriter writer = writer(16, "drop");
+        writer.enqueue(1, "DELETE", "/api/urls/delete", "curl", "1.2.3.4");
+
+        writer.drain();
+
+        Assertions.assertEquals(1L, writer.stats().get("failedBatches"));
+        Assertions.assertEquals(1L, writer.stats().get("dropped"));
+    }
+
+    @Test
+    void testRingBufferKeepsEveryElementFromConcurrentProducers() throws InterruptedException {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        while (seen.size() < producers * perProducer) {
+            batch.clear();
+            buffer.drainTo(batch, 256);
+            seen.addAll(batch);
+        }
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        Assertions.assertEquals(producers * perProducer, seen.size());
+        Assertions.assertEquals(0, buffer.size());
+    }
+}
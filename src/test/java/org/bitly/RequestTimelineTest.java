@@ -0,0 +1,80 @@
+package org.bitly;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bitly.metrics.MetricsRegistry;
+import org.bitly.metrics.RequestTimeline;
+import org.bitly.metrics.RequestTimelineFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class RequestTimelineTest {
+
+    @Test
+    void testPoolReusesTimelinesAndHandsOutFreshOnesWhenEmpty() {
+        RequestTimeline.Pool pool = new RequestTimeline.Pool(1);
+        RequestTimeline first = pool.acquire(System.nanoTime());
+        first.close(first.open("blacklist"));
+        RequestTimeline overflow = pool.acquire(System.nanoTime());
+        pool.release(first);
+        pool.release(overflow); // pool is full again: dropped
+
+        RequestTimeline again = pool.acquire(System.nanoTime());
+        Assertions.assertSame(first, again);
+        Assertions.assertEquals(0, again.size());
+        Assertions.assertEquals(1, pool.exhausted());
+        Assertions.assertEquals(0, pool.available());
+    }
+
+    @Test
+    void testSpansPastCapacityAreDroppedAndFormatted() {
+        RequestTimeline timeline = new RequestTimeline.Pool(1).acquire(System.nanoTime());
+        int handler = timeline.open("handler");
+        timeline.close(timeline.open("redis"));
+        for (int i = 2; i < RequestTimeline.CAPACITY + 3; i++) {
+            timeline.open("db.read");
+        }
+        timeline.close(handler);
+        timeline.close(handler); // closing twice keeps the first end
+
+        Assertions.assertEquals(RequestTimeline.CAPACITY, timeline.size());
+        Assertions.assertTrue(timeline.durationNanos(0) >= timeline.durationNanos(1));
+        String line = timeline.format("GET", "/api/urls/redirect", 302, 1_500_000);
+        Assertions.assertTrue(line.startsWith("request_timeline method=GET route=/api/urls/redirect status=302 total_us=1500 spans=handler="));
+        Assertions.assertTrue(line.contains(",db.read=") && line.contains("+?"));
+        Assertions.assertTrue(line.endsWith(" dropped=3"));
+    }
+
+    @Test
+    void testFilterBindsTimelineAndSetsResponseTimeHeader() throws Exception {
+        RequestTimelineFilter filter = new RequestTimelineFilter(new MetricsRegistry(), 4, 0, 1000);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/urls/redirect");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        List<String> seen = new ArrayList<>();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse res) throws IOException {
+                int span = RequestTimeline.begin("redis");
+                RequestTimeline.end(span);
+                RequestTimeline timeline = RequestTimeline.current();
+                seen.add(timeline.stage(0) + " " + (timeline.durationNanos(0) >= 0));
+                res.getWriter().write("ok");
+            }
+        }));
+
+        Assertions.assertEquals(List.of("redis true"), seen);
+        Assertions.assertTrue(response.getHeader(RequestTimelineFilter.RESPONSE_TIME_HEADER).matches("\\d+\\.\\d{3}ms"));
+        // Unbound after the request; spans outside a request are ignored
+        Assertions.assertNull(RequestTimeline.current());
+        Assertions.assertEquals(-1, RequestTimeline.begin("redis"));
+    }
+}
@@ -0,0 +1,93 @@
+package org.bitly;
+
+import org.bitly.repository.RequestLogSink.LogEntry;
+import org.bitly.repository.SegmentedRequestLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+class SegmentedRequestLogTest {
+
+    @TempDir
+    Path directory;
+
+    private SegmentedRequestLog log;
+
+    private SegmentedRequestLog open(int segmentBytes, long retentionHours) throws IOException {
+        log = new SegmentedRequestLog("segments", directory.toString(), segmentBytes, 256, retentionHours);
+        log.open();
+        return log;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private static List<LogEntry> entries(long fromMillis, int count) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new LogEntry(fromMillis + i, "POST", "/api/urls/shorten", i % 2 == 0 ? "curl" : null, "10.0.0." + (i % 255)));
+        }
+        return entries;
+    }
+
+    private List<LogEntry> read(long from, long to) {
+        List<LogEntry> result = new ArrayList<>();
+        log.read(from, to, Integer.MAX_VALUE, result::add);
+        return result;
+    }
+
+    @Test
+    void testReadsTimeRangeFromActiveSegment() throws IOException {
+        open(1 << 20, 168);
+        log.append(entries(1_000, 500));
+
+        List<LogEntry> range = read(1_100, 1_199);
+
+        Assertions.assertEquals(100, range.size());
+        Assertions.assertEquals(new LogEntry(1_100, "POST", "/api/urls/shorten", "curl", "10.0.0.100"), range.get(0));
+        Assertions.assertNull(range.get(1).userAgent());
+    }
+
+    @Test
+    void testRotatesBySizeAndReadsAcrossSegments() throws IOException {
+        open(4096, 168);
+        log.append(entries(1_000, 1_000));
+
+        Assertions.assertTrue((long) log.stats().get("rotations") > 5);
+        Assertions.assertEquals(1_000, read(0, Long.MAX_VALUE).size());
+        Assertions.assertEquals(301, read(1_200, 1_500).size());
+
+        // Sealed segments are read back from disk after a restart
+        log.close();
+        open(4096, 168);
+        Assertions.assertEquals(301, read(1_200, 1_500).size());
+    }
+
+    @Test
+    void testRetentionDeletesExpiredSegments() throws IOException {
+        open(4096, 0);
+        log.append(entries(1_000, 1_000));
+        int before = (int) log.stats().get("segments");
+
+        log.deleteExpired();
+
+        // Everything but the newest segment is past the cutoff
+        Assertions.assertEquals(1, (int) log.stats().get("segments"));
+        Assertions.assertEquals(before - 1, (long) log.stats().get("deletedSegments"));
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(2, files.count());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.bitly;
+
+import org.bitly.repository.ShortCodeSequenceRepository;
+import org.bitly.service.ShortCodeAllocator;
+import org.bitly.util.ShortCodeScrambler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ShortCodeAllocatorTest {
+
+    @Mock
+    private ShortCodeSequenceRepository sequenceRepository;
+
+    @Test
+    void testScramblerIsReversibleAndCollisionFree() {
+        ShortCodeScrambler scrambler = new ShortCodeScrambler(6, 42L);
+        Set<String> codes = new HashSet<>();
+
+        for (long id = 0; id < 100_000; id++) {
+            long scrambled = scrambler.scramble(id);
+            Assertions.assertTrue(scrambled < scrambler.capacity());
+            Assertions.assertEquals(id, scrambler.unscramble(scrambled));
+
+            String code = scrambler.encode(id);
+            Assertions.assertEquals(6, code.length());
+            Assertions.assertTrue(codes.add(code), "duplicate code " + code);
+        }
+    }
+
+    @Test
+    void testIdsComeFromReservedBlocks() {
+        when(sequenceRepository.reserveBlock("short_code", 2)).thenReturn(0L, 100L);
+        ShortCodeAllocator allocator = new ShortCodeAllocator(sequenceRepository, 6, 42L, 2);
+        ShortCodeScrambler scrambler = new ShortCodeScrambler(6, 42L);
+
+        Assertions.assertEquals(scrambler.encode(0), allocator.nextCode());
+        Assertions.assertEquals(scrambler.encode(1), allocator.nextCode());
+        // Block exhausted: the next id comes from a new reservation (e.g. after another node took 2..99)
+        Assertions.assertEquals(scrambler.encode(100), allocator.nextCode());
+
+        verify(sequenceRepository, times(2)).reserveBlock("short_code", 2);
+    }
+
+    @Test
+    void testMissingOrMalformedKeyFailsStartup() {
+        Assertions.assertThrows(IllegalStateException.class, () -> new ShortCodeAllocator(sequenceRepository, 6, "", 2));
+        Assertions.assertThrows(IllegalStateException.class, () -> new ShortCodeAllocator(sequenceRepository, 6, "secret", 2));
+        Assertions.assertDoesNotThrow(() -> new ShortCodeAllocator(sequenceRepository, 6, " -481560134067971255", 2));
+    }
+}
@@ -0,0 +1,95 @@
+package org.bitly;
+
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.service.ShortCodeFilterService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ShortCodeFilterServiceTest {
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @TempDir
+    Path dir;
+
+    private ShortCodeFilterService filter() {
+        return new ShortCodeFilterService(urlBatchRepository, 10_000, 0.01, dir.resolve("filter.bin").toString());
+    }
+
+    // Rows after `afterId` in id order; the scan returns the last id it saw
+    private void table(long afterId, long lastId, String... codes) {
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(1);
+            List.of(codes).forEach(consumer);
+            return lastId;
+        }).when(urlBatchRepository).forEachShortCodeAfter(eq(afterId), any());
+    }
+
+    // Builds from an empty table up to id 3 and writes the snapshot
+    private void snapshotOfThreeRows() {
+        table(0, 3, "aaa111", "bbb222", "ccc333");
+        ShortCodeFilterService original = filter();
+        original.build();
+        original.saveSnapshot();
+        reset(urlBatchRepository);
+    }
+
+    @Test
+    void testSnapshotOfThisDatabaseResumesAfterItsLastId() {
+        snapshotOfThreeRows();
+        when(urlBatchRepository.maxId()).thenReturn(4L);
+        when(urlBatchRepository.shortCodeAt(3)).thenReturn("ccc333");
+        table(3, 4, "ddd444");
+
+        ShortCodeFilterService restarted = filter();
+        restarted.build();
+
+        verify(urlBatchRepository, never()).forEachShortCodeAfter(eq(0L), any());
+        Assertions.assertTrue(restarted.mightContain("aaa111"));
+        Assertions.assertTrue(restarted.mightContain("ddd444"));
+        Assertions.assertEquals(4L, restarted.stats().get("lastSeenId"));
+    }
+
+    @Test
+    void testSnapshotAheadOfTheDatabaseIsRebuilt() {
+        snapshotOfThreeRows();
+        // Restored from a backup taken at id 2; its code at id 2 differs from the snapshot's rows
+        when(urlBatchRepository.maxId()).thenReturn(2L);
+        table(0, 2, "aaa111", "zzz999");
+
+        ShortCodeFilterService restarted = filter();
+        restarted.build();
+
+        Assertions.assertTrue(restarted.mightContain("zzz999"));
+        Assertions.assertEquals(2L, restarted.stats().get("lastSeenId"));
+    }
+
+    @Test
+    void testSnapshotOfAnotherDatabaseIsRebuilt() {
+        snapshotOfThreeRows();
+        // Recreated and refilled past the snapshot's id: row 3 now holds another code
+        when(urlBatchRepository.maxId()).thenReturn(5L);
+        when(urlBatchRepository.shortCodeAt(3)).thenReturn("new333");
+        table(0, 5, "new111", "new222", "new333", "new444", "new555");
+
+        ShortCodeFilterService restarted = filter();
+        restarted.build();
+
+        verify(urlBatchRepository, never()).forEachShortCodeAfter(eq(3L), any());
+        Assertions.assertTrue(restarted.mightContain("new111"));
+        Assertions.assertEquals(5L, restarted.stats().get("codes"));
+    }
+}
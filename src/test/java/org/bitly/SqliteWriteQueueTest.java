@@ -0,0 +1,121 @@
+package org.bitly;
+
+import org.bitly.repository.SqliteWriteQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class SqliteWriteQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private String url;
+    private SqliteWriteQueue writeQueue;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        url = "jdbc:sqlite:" + directory.resolve("test.db");
+        writeQueue = new SqliteWriteQueue(url, 5000, 2048, 0, "NORMAL", 64, 1000, 1000);
+        writeQueue.start();
+        writeQueue.execute(jdbc -> {
+            jdbc.execute("CREATE TABLE items (id INTEGER PRIMARY KEY, name TEXT UNIQUE NOT NULL)");
+            return null;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeQueue.close();
+    }
+
+    private JdbcTemplate reader() {
+        return new JdbcTemplate(new SingleConnectionDataSource(url, true));
+    }
+
+    @Test
+    void testDatabaseIsInWalMode() {
+        Assertions.assertEquals("wal", reader().queryForObject("PRAGMA journal_mode", String.class));
+    }
+
+    @Test
+    void testQueuedWritesShareOneCommit() throws Exception {
+        // Hold the writer inside an operation so the next writes queue up behind it
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = writeQueue.submit(jdbc -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Thread.sleep(100);
+
+        List<CompletableFuture<Integer>> inserts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String name = "item-" + i;
+            inserts.add(writeQueue.submit(jdbc -> jdbc.update("INSERT INTO items (name) VALUES (?)", name)));
+        }
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Integer> insert : inserts) {
+            Assertions.assertEquals(1, insert.get(5, TimeUnit.SECONDS));
+        }
+
+        Assertions.assertEquals(50, reader().queryForObject("SELECT COUNT(*) FROM items", Integer.class));
+        // The blocker committed alone, everything queued behind it in the next commit
+        Assertions.assertEquals(50, writeQueue.stats().get("largestBatch"));
+    }
+
+    @Test
+    void testFailingOperationIsRolledBackAlone() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        writeQueue.submit(jdbc -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Thread.sleep(100);
+
+        CompletableFuture<Integer> first = writeQueue.submit(jdbc -> jdbc.update("INSERT INTO items (name) VALUES ('a')"));
+        // Inserts one row, then fails on the duplicate: both statements must be undone
+        CompletableFuture<Integer> failing = writeQueue.submit(jdbc -> {
+            jdbc.update("INSERT INTO items (name) VALUES ('b')");
+            return jdbc.update("INSERT INTO items (name) VALUES ('a')");
+        });
+        CompletableFuture<Integer> last = writeQueue.submit(jdbc -> jdbc.update("INSERT INTO items (name) VALUES ('c')"));
+        release.countDown();
+
+        Assertions.assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, last.get(5, TimeUnit.SECONDS));
+        Assertions.assertThrows(RuntimeException.class, () -> SqliteWriteQueue.await(failing));
+        Assertions.assertEquals(List.of("a", "c"), reader().queryForList("SELECT name FROM items ORDER BY name", String.class));
+    }
+
+    @Test
+    void testSubmitFromInsideAnOperationRunsInline() {
+        int inserted = writeQueue.execute(jdbc -> {
+            jdbc.update("INSERT INTO items (name) VALUES ('outer')");
+            return SqliteWriteQueue.await(writeQueue.submit(inner -> inner.update("INSERT INTO items (name) VALUES ('inner')")));
+        });
+
+        Assertions.assertEquals(1, inserted);
+        Assertions.assertEquals(2, reader().queryForObject("SELECT COUNT(*) FROM items", Integer.class));
+    }
+}
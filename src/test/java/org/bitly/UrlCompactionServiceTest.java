@@ -0,0 +1,193 @@
+package org.bitly;
+
+import org.bitly.repository.SqliteWriteQueue;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.ArchivedChunk;
+import org.bitly.repository.UrlBatchRepository.ArchivedUrl;
+import org.bitly.service.ClickLeaderboardService;
+import org.bitly.service.LocalUrlCacheService;
+import org.bitly.service.RecentShortenedUrlService;
+import org.bitly.service.RedisCacheService;
+import org.bitly.service.UrlCompactionService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UrlCompactionServiceTest {
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Mock
+    private RedisCacheService redisCacheService;
+
+    @Mock
+    private LocalUrlCacheService localUrlCache;
+
+    @Mock
+    private RecentShortenedUrlService recentUrls;
+
+    @Mock
+    private ClickLeaderboardService clickLeaderboard;
+
+    @TempDir
+    Path directory;
+
+    // 1000 rows per run in chunks of 400
+    private UrlCompactionService compaction(long passIntervalMillis) {
+        return new UrlCompactionService(urlBatchRepository, redisCacheService, localUrlCache, recentUrls, clickLeaderboard,
+                true, 400, 1000, 1000, passIntervalMillis, 24);
+    }
+
+    private static CompletableFuture<ArchivedChunk> chunk(long fromId, long toId, int scanned, ArchivedUrl... archived) {
+        return CompletableFuture.completedFuture(new ArchivedChunk(fromId, toId, scanned, List.of(archived)));
+    }
+
+    @Test
+    void testRunStopsAtRowBudget() {
+        when(urlBatchRepository.archiveChunk(anyString(), anyInt(), any()))
+                .thenReturn(chunk(0, 400, 400)).thenReturn(chunk(400, 800, 400)).thenReturn(chunk(800, 1000, 200));
+
+        UrlCompactionService compaction = compaction(60_000);
+        compaction.run();
+
+        verify(urlBatchRepository, times(2)).archiveChunk(anyString(), eq(400), any());
+        verify(urlBatchRepository).archiveChunk(anyString(), eq(200), any());
+        Assertions.assertEquals(1000L, compaction.stats().get("scanned"));
+        Assertions.assertEquals(1000L, compaction.stats().get("checkpoint"));
+    }
+
+    @Test
+    void testEndOfTableFinishesPassAndWaitsForPassInterval() {
+        when(urlBatchRepository.archiveChunk(anyString(), anyInt(), any())).thenReturn(chunk(0, 10, 10)).thenReturn(chunk(10, 0, 0));
+
+        UrlCompactionService compaction = compaction(60_000);
+        compaction.run();
+        compaction.run(); // inside the pass interval: no work
+
+        verify(urlBatchRepository, times(2)).archiveChunk(anyString(), anyInt(), any());
+        Assertions.assertEquals(1L, compaction.stats().get("passes"));
+        Assertions.assertEquals(0L, compaction.stats().get("checkpoint"));
+    }
+
+    @Test
+    void testArchivedCodesAreEvictedEverywhere() {
+        when(urlBatchRepository.archiveChunk(anyString(), anyInt(), any()))
+                .thenReturn(chunk(0, 5, 5, new ArchivedUrl("gone01", 1L, true), new ArchivedUrl("gone02", null, false)))
+                .thenReturn(chunk(5, 0, 0));
+
+        UrlCompactionService compaction = compaction(60_000);
+        compaction.run();
+
+        verify(localUrlCache).invalidate("gone01");
+        verify(localUrlCache).invalidate("gone02");
+        verify(recentUrls).remove("gone01", 1L);
+        verify(redisCacheService).pipelined(any());
+        verify(clickLeaderboard).remove(List.of("gone01", "gone02"));
+        Assertions.assertEquals(1L, compaction.stats().get("archivedDeleted"));
+        Assertions.assertEquals(1L, compaction.stats().get("archivedExpired"));
+    }
+
+    @Test
+    void testOverlappingRunIsSkipped() throws Exception {
+        CompletableFuture<ArchivedChunk> pending = new CompletableFuture<>();
+        when(urlBatchRepository.archiveChunk(anyString(), anyInt(), any())).thenReturn(pending);
+
+        UrlCompactionService compaction = compaction(60_000);
+        Thread first = new Thread(compaction::run);
+        first.start();
+        verify(urlBatchRepository, timeout(5000)).archiveChunk(anyString(), anyInt(), any());
+
+        // The first run is still waiting on the writer
+        compaction.run();
+        verify(urlBatchRepository, times(1)).archiveChunk(anyString(), anyInt(), any());
+
+        pending.complete(new ArchivedChunk(0, 0, 0, List.of()));
+        first.join(5000);
+        Assertions.assertEquals(1L, compaction.stats().get("passes"));
+    }
+
+    @Test
+    void testFailedChunkIsCountedAndRetriedNextRun() {
+        when(urlBatchRepository.archiveChunk(anyString(), anyInt(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("SQLite write failed")))
+                .thenReturn(chunk(0, 0, 0));
+
+        UrlCompactionService compaction = compaction(60_000);
+        compaction.run();
+        compaction.run();
+
+        Assertions.assertEquals(1L, compaction.stats().get("failures"));
+        Assertions.assertEquals(1L, compaction.stats().get("passes"));
+    }
+
+    @Test
+    void testArchiveChunkMovesDeadRowsAndKeepsTheirCodesReserved() throws Exception {
+        String url = "jdbc:sqlite:" + directory.resolve("compaction.db");
+        SqliteWriteQueue writeQueue = new SqliteWriteQueue(url, 5000, 2048, 0, "NORMAL", 64, 1000, 1000);
+        writeQueue.start();
+        try {
+            JdbcTemplate reader = new JdbcTemplate(new SingleConnectionDataSource(url, true));
+            UrlBatchRepository repository = new UrlBatchRepository();
+            ReflectionTestUtils.setField(repository, "writeQueue", writeQueue);
+            ReflectionTestUtils.setField(repository, "jdbcTemplate", reader);
+            writeQueue.execute(jdbc -> {
+                jdbc.execute("CREATE TABLE url_shortener (id INTEGER PRIMARY KEY AUTOINCREMENT, original_url TEXT NOT NULL, " +
+                        "short_code TEXT UNIQUE NOT NULL, created_at TIMESTAMP, click_count INTEGER DEFAULT 0, " +
+                        "last_accessed_at TIMESTAMP, user_id INTEGER, is_deleted BOOLEAN DEFAULT FALSE, " +
+                        "expiry_date DATETIME NULL, password VARCHAR(255) NULL)");
+                return null;
+            });
+            repository.createArchiveTables();
+
+            LocalDateTime now = LocalDateTime.now();
+            Object[][] rows = {
+                    {"live01", 0, null}, {"dead01", 1, null}, {"old001", 0, now.minusDays(30)},
+                    {"new001", 0, now.minusHours(1)}, {"dead02", 1, null}
+            };
+            writeQueue.execute(jdbc -> {
+                for (Object[] row : rows) {
+                    jdbc.update("INSERT INTO url_shortener (original_url, short_code, user_id, is_deleted, expiry_date) " +
+                                    "VALUES ('https://example.com', ?, 7, ?, ?)",
+                            row[0], row[1], row[2] != null ? Timestamp.valueOf((LocalDateTime) row[2]) : null);
+                }
+                return null;
+            });
+
+            LocalDateTime expiredBefore = now.minusDays(1);
+            ArchivedChunk first = SqliteWriteQueue.await(repository.archiveChunk("test", 3, expiredBefore));
+            ArchivedChunk second = SqliteWriteQueue.await(repository.archiveChunk("test", 3, expiredBefore));
+            ArchivedChunk end = SqliteWriteQueue.await(repository.archiveChunk("test", 3, expiredBefore));
+
+            Assertions.assertEquals(List.of("dead01", "old001"), first.archived().stream().map(ArchivedUrl::shortCode).toList());
+            Assertions.assertEquals(3, first.toId());
+            // dead02 is the newest row, so it stays until something is inserted after it
+            Assertions.assertTrue(second.archived().isEmpty());
+            Assertions.assertEquals(0, end.scanned());
+            Assertions.assertEquals(List.of("live01", "new001", "dead02"),
+                    reader.queryForList("SELECT short_code FROM url_shortener ORDER BY id", String.class));
+            Assertions.assertEquals(2, reader.queryForObject("SELECT COUNT(*) FROM url_shortener_archive", Integer.class));
+
+            Assertions.assertEquals(Set.of("dead01", "live01"), repository.findExistingShortCodes(List.of("dead01", "live01", "free01")));
+        } finally {
+            writeQueue.close();
+        }
+    }
+}
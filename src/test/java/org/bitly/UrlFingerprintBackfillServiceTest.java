@@ -0,0 +1,62 @@
+package org.bitly;
+
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.service.UrlFingerprintBackfillService;
+import org.bitly.util.UrlNormalizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UrlFingerprintBackfillServiceTest {
+
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWalksChunksAndFillsOnlyMissingRows() throws InterruptedException {
+        when(urlBatchRepository.hasMissingFingerprints()).thenReturn(true);
+        when(urlBatchRepository.forEachMissingFingerprint(anyLong(), eq(2), any())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            BiConsumer<Long, String> consumer = invocation.getArgument(2);
+            if (afterId == 0) {
+                consumer.accept(1L, "HTTPS://Example.com");
+                consumer.accept(2L, "https://example.com/a");
+                return 2L;
+            }
+            if (afterId == 2) {
+                return 4L; // rows 3 and 4 already have a fingerprint
+            }
+            return afterId;
+        });
+        when(urlBatchRepository.setFingerprints(anyMap())).thenReturn(CompletableFuture.completedFuture(2));
+
+        UrlFingerprintBackfillService backfill = new UrlFingerprintBackfillService(urlBatchRepository, 2, 0);
+        backfill.backfill();
+
+        verify(urlBatchRepository, times(1)).setFingerprints(Map.of(
+                1L, UrlNormalizer.fingerprint64("https://example.com/"),
+                2L, UrlNormalizer.fingerprint64("https://example.com/a")));
+        Assertions.assertEquals(2L, backfill.stats().get("backfilled"));
+        Assertions.assertEquals(4L, backfill.stats().get("lastId"));
+    }
+
+    @Test
+    void testNothingMissingSkipsTheWalk() throws InterruptedException {
+        when(urlBatchRepository.hasMissingFingerprints()).thenReturn(false);
+
+        new UrlFingerprintBackfillService(urlBatchRepository, 1000, 0).backfill();
+
+        verify(urlBatchRepository, never()).forEachMissingFingerprint(anyLong(), anyInt(), any());
+    }
+}
@@ -1,5 +1,6 @@
 package org.bitly;
 
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -9,20 +10,23 @@ import jakarta.servlet.http.HttpServletRequest;
 import org.bitly.controller.UrlShortenerController;
 import org.bitly.entity.UrlMapping;
 import org.bitly.entity.User;
-import org.bitly.repository.UrlRepository;
-import org.bitly.repository.UserRepository;
+import org.bitly.repository.UrlBatchRepository.UrlRow;
+import org.bitly.service.RedirectTokenService;
 import org.bitly.service.RedisCacheService;
 import org.bitly.service.UrlShortenerService;
 import org.bitly.util.NUtil;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
@@ -32,6 +36,7 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @ExtendWith(MockitoExtension.class)
 class UrlShortenerControllerTest {
@@ -42,17 +47,18 @@ class UrlShortenerControllerTest {
     @Mock
     private UrlShortenerService urlShortenerService;  // Mock Service
 
-    @Mock
-    private UserRepository userRepository;
-
     @Mock
     private RedisCacheService redisCacheService;
 
-    @Mock
-    private UrlRepository urlRepository;
 
     private MockMvc mockMvc;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Injected into the controller for streamed responses
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    @Spy
+    private RedirectTokenService redirectTokens = new RedirectTokenService(true, "test-secret", 900);
+    // Resolved by AuthenticationInterceptor in the running app; set as a request attribute here
+    private final User user = new User();
 
     @BeforeEach
     void setUp() {
@@ -70,11 +76,12 @@ class UrlShortenerControllerTest {
                 "password", "securePass"
         );
 
-        when(urlShortenerService.shortenUrl(anyString(), anyString(), any(), any(), any())).thenReturn("myShort");
+        when(urlShortenerService.shortenUrl(anyString(), eq(user), any(), any(), any())).thenReturn("myShort");
 
         mockMvc.perform(post("/api/urls/shorten")
                         .contentType(MediaType.APPLICATION_JSON)
                         .header("X-API-KEY", "test-api-key")
+                        .requestAttr("authenticatedUser", user)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.shortCode").value("myShort"));
@@ -89,6 +96,7 @@ class UrlShortenerControllerTest {
         mockMvc.perform(post("/api/urls/shorten")
                         .contentType(MediaType.APPLICATION_JSON)
                         .header("X-API-KEY", "test-api-key")
+                        .requestAttr("authenticatedUser", user)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value("URL is required"));
@@ -100,12 +108,13 @@ class UrlShortenerControllerTest {
 
         Map<String, String> request = Map.of("url", "https://example.com");
 
-        when(urlShortenerService.shortenUrl(anyString(), anyString(), any(), any(), any()))
+        when(urlShortenerService.shortenUrl(anyString(), eq(user), any(), any(), any()))
                 .thenThrow(new RuntimeException("Custom short code is already taken"));
 
         mockMvc.perform(post("/api/urls/shorten")
                         .contentType(MediaType.APPLICATION_JSON)
                         .header("X-API-KEY", "test-api-key")
+                        .requestAttr("authenticatedUser", user)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value("Custom short code is already taken"));
@@ -153,10 +162,11 @@ class UrlShortenerControllerTest {
 
         // No exception means the update is successful
         Mockito.doNothing().when(urlShortenerService)
-                .updateExpiry(Mockito.eq(shortCode), Mockito.eq(apiKey), Mockito.any(LocalDateTime.class));
+                .updateExpiry(Mockito.eq(shortCode), Mockito.eq(user), Mockito.any(LocalDateTime.class));
 
         mockMvc.perform(MockMvcRequestBuilders.put("/api/urls/shorten/{shortCode}/expiry", shortCode)
-                        .param("apiKey", apiKey)
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user)
                         .param("expiryDate", expiryDate))
                 .andExpect(status().isOk())
                 .andExpect(content().string("Expiry date updated successfully."));
@@ -170,10 +180,11 @@ class UrlShortenerControllerTest {
 
         Mockito.doThrow(new RuntimeException("Unauthorized to update expiry date"))
                 .when(urlShortenerService)
-                .updateExpiry(Mockito.eq(shortCode), Mockito.eq(apiKey), Mockito.any(LocalDateTime.class));
+                .updateExpiry(Mockito.eq(shortCode), Mockito.eq(user), Mockito.any(LocalDateTime.class));
 
         mockMvc.perform(MockMvcRequestBuilders.put("/api/urls/shorten/{shortCode}/expiry", shortCode)
-                        .param("apiKey", apiKey)
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user)
                         .param("expiryDate", expiryDate))
                 .andExpect(status().isForbidden())
                 .andExpect(content().string("Unauthorized to update expiry date"));
@@ -275,15 +286,75 @@ class UrlShortenerControllerTest {
                 .andExpect(header().string("Location", originalUrl));
     }
 
+    @Test
+    public void testRedirectToOriginalUrl_TokenSkipsPasswordCheck() throws Exception {
+        String shortCode = "protectedCode";
+        String originalUrl = "https://example.com";
+        UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, 1L, null, NUtil.hashPassword("secure123"));
+
+        Mockito.when(urlShortenerService.getUrlMapping(shortCode)).thenReturn(Optional.of(urlMapping));
+
+        MvcResult first = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                        .param("code", shortCode)
+                        .param("password", "secure123"))
+                .andExpect(status().isFound())
+                .andExpect(cookie().exists(RedirectTokenService.cookieName(shortCode)))
+                .andExpect(cookie().httpOnly(RedirectTokenService.cookieName(shortCode), true))
+                .andReturn();
+        String token = first.getResponse().getHeader(RedirectTokenService.HEADER);
+
+        // No password: the cookie or the header from the first redirect is enough
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                        .param("code", shortCode)
+                        .cookie(first.getResponse().getCookie(RedirectTokenService.cookieName(shortCode))))
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", originalUrl));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                        .param("code", shortCode)
+                        .header(RedirectTokenService.HEADER, token))
+                .andExpect(status().isFound());
+
+        // A new password revokes the token
+        urlMapping.setPassword(NUtil.hashPassword("changed"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                        .param("code", shortCode)
+                        .header(RedirectTokenService.HEADER, token))
+                .andExpect(status().isUnauthorized());
+        verify(urlShortenerService, times(3)).incrementClick(shortCode);
+    }
+
+    @Test
+    public void testRedirectToOriginalUrl_TokenCookieForCodeWithSeparators() throws Exception {
+        String originalUrl = "https://example.com";
+        for (String shortCode : List.of("a;b", "x y", "c,d")) {
+            UrlMapping urlMapping = new UrlMapping(shortCode, originalUrl, 1L, null, NUtil.hashPassword("secure123"));
+            Mockito.when(urlShortenerService.getUrlMapping(shortCode)).thenReturn(Optional.of(urlMapping));
+
+            MvcResult first = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                            .param("code", shortCode)
+                            .param("password", "secure123"))
+                    .andExpect(status().isFound())
+                    .andExpect(header().string("Location", originalUrl))
+                    .andExpect(cookie().exists(RedirectTokenService.cookieName(shortCode)))
+                    .andReturn();
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/redirect")
+                            .param("code", shortCode)
+                            .cookie(first.getResponse().getCookie(RedirectTokenService.cookieName(shortCode))))
+                    .andExpect(status().isFound());
+        }
+    }
+
     @Test
     public void testDeleteShortCode_Success() throws Exception {
         String shortCode = "abc123";
         String apiKey = "testApiKey";
 
-        Mockito.when(urlShortenerService.deleteUrl(shortCode, apiKey, null)).thenReturn(true);
+        Mockito.when(urlShortenerService.deleteUrl(shortCode, user, null)).thenReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders.delete("/api/urls/delete/{shortCode}", shortCode)
-                        .header("X-API-KEY", apiKey))
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("Short code deleted successfully"));
     }
@@ -294,10 +365,11 @@ class UrlShortenerControllerTest {
         String apiKey = "testApiKey";
         String password = "correctPassword";
 
-        Mockito.when(urlShortenerService.deleteUrl(shortCode, apiKey, password)).thenReturn(true);
+        Mockito.when(urlShortenerService.deleteUrl(shortCode, user, password)).thenReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders.delete("/api/urls/delete/{shortCode}", shortCode)
                         .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user)
                         .param("password", password))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("Short code deleted successfully"));
@@ -309,10 +381,11 @@ class UrlShortenerControllerTest {
         String apiKey = "testApiKey";
         String wrongPassword = "wrongPassword";
 
-        Mockito.when(urlShortenerService.deleteUrl(shortCode, apiKey, wrongPassword)).thenReturn(false);
+        Mockito.when(urlShortenerService.deleteUrl(shortCode, user, wrongPassword)).thenReturn(false);
 
         mockMvc.perform(MockMvcRequestBuilders.delete("/api/urls/delete/{shortCode}", shortCode)
                         .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user)
                         .param("password", wrongPassword))
                 .andExpect(status().isForbidden())
                 .andExpect(jsonPath("$.error").value("Unauthorized or incorrect password for deletion"));
@@ -323,30 +396,47 @@ class UrlShortenerControllerTest {
         String shortCode = "abc123";
         String apiKey = "invalidApiKey";
 
-        Mockito.when(urlShortenerService.deleteUrl(shortCode, apiKey, null)).thenReturn(false);
+        Mockito.when(urlShortenerService.deleteUrl(shortCode, user, null)).thenReturn(false);
 
         mockMvc.perform(MockMvcRequestBuilders.delete("/api/urls/delete/{shortCode}", shortCode)
-                        .header("X-API-KEY", apiKey))
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user))
                 .andExpect(status().isForbidden())
                 .andExpect(jsonPath("$.error").value("Unauthorized or incorrect password for deletion"));
     }
 
+    private static UrlRow row(long id, String shortCode, String originalUrl, LocalDateTime expiryDate, boolean passwordProtected) {
+        LocalDateTime createdAt = LocalDateTime.of(2025, 1, 1, 12, 0);
+        return new UrlRow(id, shortCode, originalUrl, createdAt, 0, createdAt, 1L, false, expiryDate, passwordProtected);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamRows(Long userId, UrlRow... rows) {
+        doAnswer(invocation -> {
+            for (UrlRow row : rows) {
+                ((Consumer<UrlRow>) invocation.getArgument(2)).accept(row);
+            }
+            return null;
+        }).when(urlShortenerService).forEachUrl(eq(userId), eq(0L), any());
+    }
+
     @Test
     public void testGetAllUrls_Success() throws Exception {
         String apiKey = "testApiKey";
         User user = new User();
         user.setId(1L);
 
-        List<UrlMapping> urlMappings = List.of(
-                new UrlMapping("abc123", "http://example.com", user.getId(), null, "pwd"),
-                new UrlMapping("xyz789", "http://test.com", user.getId(), LocalDateTime.now().plusDays(10), "hashedPassword")
-        );
+        streamRows(user.getId(),
+                row(1, "abc123", "http://example.com", null, true),
+                row(2, "xyz789", "http://test.com", LocalDateTime.now().plusDays(10), true));
 
-        Mockito.when(userRepository.findByApiKey(apiKey)).thenReturn(Optional.of(user));
-        Mockito.when(urlRepository.findByUserIdAndIsDeletedFalse(user.getId())).thenReturn(urlMappings);
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
-                        .header("X-API-KEY", apiKey))
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.size()").value(2))
                 .andExpect(jsonPath("$[0].shortCode").value("abc123"))
@@ -363,10 +453,12 @@ class UrlShortenerControllerTest {
     public void testGetAllUrls_InvalidApiKey() throws Exception {
         String invalidApiKey = "invalidApiKey";
 
-        Mockito.when(userRepository.findByApiKey(invalidApiKey)).thenReturn(Optional.empty());
-
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
+        // No authenticatedUser attribute: the key did not resolve to a user
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
                         .header("X-API-KEY", invalidApiKey))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value("Invalid API Key"));
     }
@@ -377,14 +469,64 @@ class UrlShortenerControllerTest {
         User user = new User();
         user.setId(1L);
 
-        Mockito.when(userRepository.findByApiKey(apiKey)).thenReturn(Optional.of(user));
-        Mockito.when(urlRepository.findByUserIdAndIsDeletedFalse(user.getId())).thenReturn(Collections.emptyList());
+        streamRows(user.getId());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
+                        .header("X-API-KEY", apiKey)
+                        .requestAttr("authenticatedUser", user))
+                .andReturn();
 
-        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user")
-                        .header("X-API-KEY", apiKey))
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.size()").value(0)); // Expecting an empty list
     }
 
-}
+    @Test
+    public void testGetAllUrls_PageCarriesNextCursor() throws Exception {
+        User user = new User();
+        user.setId(1L);
 
+        // Asked for 2, the extra row means there is a next page
+        when(urlShortenerService.getUrlPage(1L, 10L, 3)).thenReturn(List.of(
+                row(11, "a", "http://a.com", null, false),
+                row(12, "b", "http://b.com", null, false),
+                row(13, "c", "http://c.com", null, false)));
+        when(urlShortenerService.getUrlPage(1L, 12L, 3)).thenReturn(List.of(row(13, "c", "http://c.com", null, false)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user?cursor=10&limit=2")
+                        .requestAttr("authenticatedUser", user))
+                .andExpect(status().isOk())
+                .andExpect(header().string(UrlShortenerController.NEXT_CURSOR_HEADER, "12"))
+                .andExpect(jsonPath("$.size()").value(2))
+                .andExpect(jsonPath("$[1].shortCode").value("b"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/user?cursor=12&limit=2")
+                        .requestAttr("authenticatedUser", user))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(UrlShortenerController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$.size()").value(1));
+    }
+
+    @Test
+    public void testGetAllUrls_StreamsNdjson() throws Exception {
+        streamRows(null,
+                row(1, "abc123", "http://example.com", null, false),
+                row(2, "xyz789", "http://test.com", null, true));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/urls/all?format=ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertEquals("xyz789", objectMapper.readTree(lines[1]).get("shortCode").asText());
+        Assertions.assertTrue(objectMapper.readTree(lines[1]).get("passwordProtected").asBoolean());
+        Assertions.assertFalse(lines[0].contains("\"password\""));
+    }
+
+}
@@ -1,18 +1,33 @@
 package org.bitly;
 
+import org.bitly.cache.RedirectRecord;
 import org.bitly.entity.UrlMapping;
+import org.bitly.entity.User;
+import org.bitly.repository.UrlBatchRepository;
+import org.bitly.repository.UrlBatchRepository.FingerprintMatch;
 import org.bitly.repository.UrlRepository;
+import org.bitly.service.ClickLeaderboardService;
+import org.bitly.service.LocalUrlCacheService;
 import org.bitly.service.RedisCacheService;
+import org.bitly.service.ShortCodeFilterService;
 import org.bitly.service.UrlShortenerService;
+import org.bitly.util.UrlNormalizer;
 import org.junit.jupiter.api.Assertions;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import static org.mockito.Mockito.*;
 
@@ -28,6 +43,26 @@ class UrlShortenerServiceTest {
     @Mock
     private UrlRepository urlRepository;
 
+    @Mock
+    private UrlBatchRepository urlBatchRepository;
+
+    @Mock
+    private LocalUrlCacheService localUrlCache;
+
+    @Mock
+    private ShortCodeFilterService shortCodeFilter;
+
+    @Mock
+    private ClickLeaderboardService clickLeaderboard;
+
+    @SuppressWarnings("unchecked")
+    private void bypassLocalCache(String shortCode) {
+        // Always fall through to the loader so the Redis/DB behaviour is what gets exercised
+        when(shortCodeFilter.mightContain(shortCode)).thenReturn(true);
+        when(localUrlCache.get(eq(shortCode), any()))
+                .thenAnswer(invocation -> ((Function<String, Optional<UrlMapping>>) invocation.getArgument(1)).apply(shortCode));
+    }
+
     @Test
     void testCachingBehavior() {
         String shortCode = "wUL6ha";
@@ -38,15 +73,16 @@ class UrlShortenerServiceTest {
         urlMapping.setOriginalUrl(originalUrl);
         urlMapping.setUserId(1L);
 
-        when(redisCacheService.getCachedUrl(shortCode)).thenReturn(null);
+        bypassLocalCache(shortCode);
+        when(redisCacheService.getCachedRecord(shortCode)).thenReturn(null);
         when(urlRepository.findByShortCodeAndIsDeletedFalse(shortCode)).thenReturn(Optional.of(urlMapping));
-        doNothing().when(redisCacheService).cacheUrl(shortCode, originalUrl, 3600);
 
         Optional<UrlMapping> result1 = urlShortenerService.getUrlMapping(shortCode);
         Assertions.assertTrue(result1.isPresent());
         Assertions.assertEquals(originalUrl, result1.get().getOriginalUrl());
+        verify(redisCacheService).cacheRecord(eq(shortCode), any(byte[].class), eq(3600L));
 
-        when(redisCacheService.getCachedUrl(shortCode)).thenReturn(originalUrl);
+        when(redisCacheService.getCachedRecord(shortCode)).thenReturn(RedirectRecord.of(urlMapping).encode());
 
         Optional<UrlMapping> result2 = urlShortenerService.getUrlMapping(shortCode);
         Assertions.assertTrue(result2.isPresent());
@@ -54,5 +90,88 @@ class UrlShortenerServiceTest {
 
         verify(urlRepository, times(1)).findByShortCodeAndIsDeletedFalse(shortCode);
     }
-}
 
+    @Test
+    void testCachedRecordKeepsPasswordAndSkipsDatabase() {
+        String shortCode = "prot12";
+        UrlMapping urlMapping = new UrlMapping(shortCode, "https://example.com", 1L,
+                LocalDateTime.now().plusDays(1), "$2a$10$hashedPasswordValue");
+
+        bypassLocalCache(shortCode);
+        when(redisCacheService.getCachedRecord(shortCode)).thenReturn(RedirectRecord.of(urlMapping).encode());
+
+        Optional<UrlMapping> result = urlShortenerService.getUrlMapping(shortCode);
+        Assertions.assertTrue(result.isPresent());
+        Assertions.assertEquals("$2a$10$hashedPasswordValue", result.get().getPassword());
+        Assertions.assertNotNull(result.get().getExpiryDate());
+        Assertions.assertEquals(1L, result.get().getUserId());
+
+        verify(urlRepository, never()).findByShortCodeAndIsDeletedFalse(shortCode);
+    }
+
+    @Test
+    void testExpiredOrDeletedCachedRecordIsNotFound() {
+        UrlMapping expired = new UrlMapping("old123", "https://example.com", 1L, LocalDateTime.now().minusHours(1), null);
+        UrlMapping deleted = new UrlMapping("del123", "https://example.com", 1L, null, null);
+        deleted.setDeleted(true);
+
+        bypassLocalCache("old123");
+        bypassLocalCache("del123");
+        when(redisCacheService.getCachedRecord("old123")).thenReturn(RedirectRecord.of(expired).encode());
+        when(redisCacheService.getCachedRecord("del123")).thenReturn(RedirectRecord.of(deleted).encode());
+
+        Assertions.assertTrue(urlShortenerService.getUrlMapping("old123").isEmpty());
+        Assertions.assertTrue(urlShortenerService.getUrlMapping("del123").isEmpty());
+        verify(urlRepository, never()).findByShortCodeAndIsDeletedFalse(anyString());
+    }
+
+    @Test
+    void testLegacyStringEntryIsReloadedFromDatabase() {
+        String shortCode = "legacy";
+        UrlMapping urlMapping = new UrlMapping(shortCode, "https://example.com", 1L, null, null);
+
+        bypassLocalCache(shortCode);
+        when(redisCacheService.getCachedRecord(shortCode)).thenReturn("https://example.com".getBytes(StandardCharsets.UTF_8));
+        when(urlRepository.findByShortCodeAndIsDeletedFalse(shortCode)).thenReturn(Optional.of(urlMapping));
+
+        Assertions.assertTrue(urlShortenerService.getUrlMapping(shortCode).isPresent());
+        verify(redisCacheService).cacheRecord(eq(shortCode), any(byte[].class), eq(3600L));
+    }
+
+    @Test
+    void testCodeRejectedByFilterSkipsAllLookups() {
+        when(shortCodeFilter.mightContain("zzzzzz")).thenReturn(false);
+
+        Assertions.assertTrue(urlShortenerService.getUrlMapping("zzzzzz").isEmpty());
+        verifyNoInteractions(localUrlCache, redisCacheService, urlRepository);
+    }
+
+    @Test
+    void testReuseReturnsExistingCodeForSameNormalizedUrl() {
+        User user = new User();
+        user.setId(7L);
+        user.setReuseExistingCodes(true);
+        long fingerprint = UrlNormalizer.fingerprint64("https://example.com/page");
+        // The first candidate shares the fingerprint but is another URL (a collision) and must be skipped
+        when(urlBatchRepository.findByFingerprint(eq(fingerprint), eq(7L), anyInt())).thenReturn(List.of(
+                new FingerprintMatch("clash1", "https://other.example/"),
+                new FingerprintMatch("same01", "https://example.com/page")));
+
+        Assertions.assertEquals("same01", urlShortenerService.shortenUrl("HTTPS://EXAMPLE.com:443/page#top", user, null, null, null));
+        verify(urlBatchRepository, never()).insertUrls(anyList());
+    }
+
+    @Test
+    void testTopClickedFallsBackToTheTableOnlyWhenRedisFails() {
+        when(clickLeaderboard.top(ClickLeaderboardService.Window.ALL, 10)).thenThrow(new JedisConnectionException("Connection refused"));
+        when(urlRepository.findTop10MostClickedUrls(any(Pageable.class)))
+                .thenReturn(List.<Object[]>of(new Object[]{"abc123", "https://example.com", 7L, null}));
+
+        List<Map<String, Object>> top = urlShortenerService.getTopClickedUrls("all");
+        Assertions.assertEquals("abc123", top.get(0).get("shortCode"));
+
+        // A bug is not hidden behind the fallback
+        when(clickLeaderboard.top(ClickLeaderboardService.Window.DAY, 10)).thenThrow(new IllegalStateException("bug"));
+        Assertions.assertThrows(IllegalStateException.class, () -> urlShortenerService.getTopClickedUrls("day"));
+    }
+}